@@ -0,0 +1,73 @@
+package com.ragflow.backend.llm;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OpenAiLLMClient#parseStreamLine} over a canned chat completion
+ * stream of {@code tokens} content chunks, as sent by OpenAI-compatible
+ * servers (one {@code data:} line per token, blank separator lines,
+ * a finish chunk and {@code [DONE]}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseParsingBenchmark {
+
+    @Param({ "500" })
+    public int tokens;
+
+    private OpenAiLLMClient client;
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        client = new OpenAiLLMClient(RestClient.builder());
+        lines = new ArrayList<>();
+        String prefix = "data: {\"id\":\"chatcmpl-9xQ2\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                + "\"model\":\"glm-4-flash\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"";
+        for (int t = 0; t < tokens; t++) {
+            lines.add(prefix + (t % 7 == 0 ? "检索" : " token" + t) + "\"},\"finish_reason\":null}]}");
+            lines.add("");
+        }
+        lines.add("data: {\"id\":\"chatcmpl-9xQ2\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                + "\"model\":\"glm-4-flash\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":812,\"completion_tokens\":" + tokens + "}}");
+        lines.add("");
+        lines.add("data: [DONE]");
+    }
+
+    /** Parses the whole stream and returns the number of content characters. */
+    @Benchmark
+    public int parseStream() throws JsonProcessingException {
+        int chars = 0;
+        for (String line : lines) {
+            OpenAiLLMClient.StreamChoice choice = client.parseStreamLine(line);
+            if (choice == OpenAiLLMClient.DONE) {
+                break;
+            }
+            if (choice != null && choice.getDelta() != null && choice.getDelta().getContent() != null) {
+                chars += choice.getDelta().getContent().length();
+            }
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ragflow.backend.pipeline;
+
+import com.ragflow.backend.pipeline.ingest.Chunker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** {@link Chunker#chunk} on multi-megabyte documents with the default chunk size and overlap. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ChunkerBenchmark {
+
+    private static final String[] WORDS = { "vector", "index", "retrieval", "chunk", "embedding", "query", "the",
+            "of", "and", "检索", "向量", "文档" };
+
+    @Param({ "1", "8" })
+    public int megabytes;
+
+    private Chunker chunker;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        chunker = new Chunker();
+        ReflectionTestUtils.setField(chunker, "chunkSize", 800);
+        ReflectionTestUtils.setField(chunker, "chunkOverlap", 120);
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder(megabytes << 20);
+        while (sb.length() < megabytes << 20) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            sb.append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public List<String> chunk() {
+        return chunker.chunk(text);
+    }
+}
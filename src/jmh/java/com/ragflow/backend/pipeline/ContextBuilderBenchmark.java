@@ -0,0 +1,68 @@
+package com.ragflow.backend.pipeline;
+
+import com.ragflow.backend.entity.ChunkEntity;
+import com.ragflow.backend.pipeline.query.ContextBuilder;
+import com.ragflow.backend.vectorstore.SearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** {@link ContextBuilder#buildContext} over {@code results} hits of 800-character chunks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextBuilderBenchmark {
+
+    @Param({ "5", "50" })
+    public int results;
+
+    @Param({ "4000", "100000" })
+    public int maxContextChars;
+
+    private ContextBuilder builder;
+    private List<SearchResult> hits;
+    private List<ChunkEntity> chunks;
+
+    @Setup
+    public void setUp() {
+        builder = new ContextBuilder(null);
+        ReflectionTestUtils.setField(builder, "maxContextChars", maxContextChars);
+        hits = new ArrayList<>(results);
+        chunks = new ArrayList<>(results);
+        String content = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(15).substring(0, 800);
+        for (long i = 0; i < results; i++) {
+            ChunkEntity chunk = new ChunkEntity();
+            chunk.setId(i);
+            chunk.setDocId(i / 5);
+            chunk.setCollection("default");
+            chunk.setContent(content);
+            chunks.add(chunk);
+            hits.add(new SearchResult(i, 1.0 - i * 0.01, Map.of("docId", i / 5, "docName", "doc-" + i / 5 + ".pdf")));
+        }
+        // Loaded chunks come back from the repository in id order, not rank order
+        Collections.reverse(chunks);
+    }
+
+    @Benchmark
+    public String buildContext() {
+        return builder.buildContext(hits, chunks);
+    }
+}
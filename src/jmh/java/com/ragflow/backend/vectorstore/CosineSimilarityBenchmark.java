@@ -0,0 +1,72 @@
+package com.ragflow.backend.vectorstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one cosine similarity: the dot product kernel selected by
+ * {@link VectorMath} (SIMD when the module is present), the scalar kernel,
+ * and the unnormalized form that divides by both norms on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class CosineSimilarityBenchmark {
+
+    @Param({ "384", "768", "1536" })
+    public int dim;
+
+    private float[] a;
+    private float[] b;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        a = new float[dim];
+        b = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            a[i] = (float) random.nextGaussian();
+            b[i] = (float) random.nextGaussian();
+        }
+        a = VectorMath.normalize(a);
+        b = VectorMath.normalize(b);
+    }
+
+    @Benchmark
+    public float dot() {
+        return VectorMath.dot(a, 0, b, 0, dim);
+    }
+
+    @Benchmark
+    public float scalarDot() {
+        return VectorMath.scalarDot(a, 0, b, 0, dim);
+    }
+
+    @Benchmark
+    public double cosineWithNorms() {
+        double dot = 0;
+        double na = 0;
+        double nb = 0;
+        for (int i = 0; i < dim; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / (Math.sqrt(na) * Math.sqrt(nb));
+    }
+}
@@ -0,0 +1,95 @@
+package com.ragflow.backend.vectorstore;
+
+import com.ragflow.backend.embedding.MockEmbeddingClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one {@link FaissVectorStore#search} over a flat collection of
+ * {@code n} mock embeddings, single- and multi-threaded scans included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Xmx4g" })
+public class FlatSearchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({ "10000", "100000" })
+    public int n;
+
+    @Param({ "384", "1536" })
+    public int dim;
+
+    @Param({ "5" })
+    public int topK;
+
+    private Path indexDir;
+    private FaissVectorStore store;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        indexDir = Files.createTempDirectory("jmh-flat");
+        store = new FaissVectorStore(new VectorStoreSettings(new StandardEnvironment()));
+        ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(store, "walEnabled", false);
+
+        MockEmbeddingClient embeddings = new MockEmbeddingClient();
+        ReflectionTestUtils.setField(embeddings, "dimension", dim);
+        int batch = 1000;
+        for (int from = 0; from < n; from += batch) {
+            List<String> texts = new ArrayList<>(batch);
+            for (int i = from; i < Math.min(n, from + batch); i++) {
+                texts.add("chunk-" + i);
+            }
+            List<float[]> vectors = embeddings.embedBatch(texts);
+            for (int i = 0; i < vectors.size(); i++) {
+                long id = from + i;
+                store.upsert("bench", id, vectors.get(i), Map.of("docId", id / 20, "docName", "doc-" + id / 20));
+            }
+        }
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = embeddings.embed("question-" + q);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.shutdown();
+        FileSystemUtils.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+        float[] query = queries[next++ & (QUERIES - 1)];
+        return store.search("bench", query, topK);
+    }
+}
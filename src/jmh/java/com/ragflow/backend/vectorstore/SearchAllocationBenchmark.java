@@ -0,0 +1,125 @@
+package com.ragflow.backend.vectorstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Brute-force top-K selection: the previous "score everything, sort, limit"
+ * pipeline versus the bounded primitive heap used by
+ * {@link FaissVectorStore#search}. Meant to be run with the GC profiler,
+ * whose {@code gc.alloc.rate.norm} counts the bytes allocated per query on
+ * every thread, the scan workers included:
+ * {@code -Djmh.args="SearchAllocationBenchmark -prof gc"}. The store scans on
+ * {@code workers} threads; 1 compares both strategies on one core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Xmx4g" })
+public class SearchAllocationBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({ "200000" })
+    public int n;
+
+    @Param({ "128" })
+    public int dim;
+
+    @Param({ "5" })
+    public int topK;
+
+    @Param({ "1" })
+    public int workers;
+
+    private FaissVectorStore store;
+    private FlatIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(11);
+        store = new FaissVectorStore(new VectorStoreSettings(new StandardEnvironment()));
+        ReflectionTestUtils.setField(store, "walEnabled", false);
+        ReflectionTestUtils.setField(store, "searchWorkers", workers);
+        Map<String, Object> meta = Map.of("docName", "bench");
+        for (long i = 0; i < n; i++) {
+            store.upsert("bench", i, randomVector(random, dim), meta);
+        }
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = randomVector(random, dim);
+        }
+        index = (FlatIndex) ((Map<?, ?>) ReflectionTestUtils.getField(store, "indexes")).get("bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public List<SearchResult> boundedHeap() {
+        return store.search("bench", queries[next++ & (QUERIES - 1)], topK);
+    }
+
+    @Benchmark
+    public List<SearchResult> sortAndLimit() {
+        return sortAndLimit(index, queries[next++ & (QUERIES - 1)], topK);
+    }
+
+    /** The selection strategy FaissVectorStore.search used before the bounded heap. */
+    static List<SearchResult> sortAndLimit(FlatIndex index, float[] query, int topK) {
+        int size = index.size();
+        int dim = index.dimension();
+        int rows = index.segmentRows();
+        float[] row = new float[dim];
+        List<SearchResult> all = new ArrayList<>(size);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            index.segments()[ordinal / rows].get(ordinal % rows, row, 0);
+            double dot = 0, n1 = 0, n2 = 0;
+            for (int i = 0; i < dim; i++) {
+                dot += query[i] * row[i];
+                n1 += query[i] * query[i];
+                n2 += row[i] * row[i];
+            }
+            all.add(new SearchResult(index.id(ordinal), dot / (Math.sqrt(n1) * Math.sqrt(n2)),
+                    index.metadata(ordinal)));
+        }
+        return all.stream()
+                .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
+                .limit(topK)
+                .collect(Collectors.toList());
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+}
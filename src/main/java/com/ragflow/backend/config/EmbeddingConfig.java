@@ -0,0 +1,77 @@
+package com.ragflow.backend.config;
+
+import com.ragflow.backend.embedding.BatchingEmbeddingClient;
+import com.ragflow.backend.embedding.CachingEmbeddingClient;
+import com.ragflow.backend.embedding.EmbeddingClient;
+import com.ragflow.backend.embedding.QueryEmbeddingCache;
+import com.ragflow.backend.repository.EmbeddingCacheRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Wraps the configured embedding provider (the bean qualified
+ * {@code "provider"}) in the client the services use. From the outside in:
+ * the in-memory query cache ({@code embedding.query-cache.*}), the persistent
+ * chunk cache ({@code embedding.cache.*}), the micro-batcher for single
+ * {@code embed} calls ({@code embedding.batching.*}), then the provider.
+ */
+@Configuration
+public class EmbeddingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingConfig.class);
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean persistentCacheEnabled;
+
+    @Value("${embedding.query-cache.enabled:true}")
+    private boolean queryCacheEnabled;
+
+    @Value("${embedding.query-cache.max-bytes:16777216}")
+    private long queryCacheMaxBytes;
+
+    @Value("${embedding.query-cache.ttl-ms:3600000}")
+    private long queryCacheTtlMs;
+
+    @Value("${embedding.query-cache.normalize:true}")
+    private boolean queryCacheNormalize;
+
+    /** Its own bean so it is shut down with the context and its counters can be reported. */
+    @Bean
+    @ConditionalOnProperty(name = "embedding.batching.enabled", havingValue = "true", matchIfMissing = true)
+    public BatchingEmbeddingClient embeddingBatcher(@Qualifier("provider") EmbeddingClient provider,
+            @Value("${embedding.batching.window-ms:2}") long windowMs,
+            @Value("${embedding.batching.max-batch:64}") int maxBatch,
+            @Value("${embedding.batching.max-concurrent-requests:4}") int maxConcurrentRequests) {
+        return new BatchingEmbeddingClient(provider, windowMs, maxBatch, maxConcurrentRequests);
+    }
+
+    @Bean
+    @Primary
+    public EmbeddingClient embeddingClient(@Qualifier("provider") EmbeddingClient provider,
+            ObjectProvider<BatchingEmbeddingClient> batcher, EmbeddingCacheRepository repository,
+            PlatformTransactionManager transactionManager) {
+        EmbeddingClient client = batcher.getIfAvailable();
+        if (client == null) {
+            client = provider;
+        }
+        if (persistentCacheEnabled) {
+            client = new CachingEmbeddingClient(client, repository, transactionManager);
+        }
+        if (queryCacheEnabled) {
+            client = new QueryEmbeddingCache(client, queryCacheMaxBytes, queryCacheTtlMs, queryCacheNormalize);
+        }
+        log.info("Embedding client: {} (model {}, batching {}, persistent cache {}, query cache {})",
+                provider.getClass().getSimpleName(), provider.getModel(),
+                batcher.getIfAvailable() != null ? "on" : "off", persistentCacheEnabled ? "on" : "off",
+                queryCacheEnabled ? "on" : "off");
+        return client;
+    }
+}
@@ -1,6 +1,7 @@
 package com.ragflow.backend.controller;
 
 import com.ragflow.backend.common.ApiResponse;
+import com.ragflow.backend.dto.BatchSearchReq;
 import com.ragflow.backend.dto.QueryReq;
 import com.ragflow.backend.dto.QueryResp;
 import com.ragflow.backend.entity.ChunkEntity;
@@ -39,4 +40,9 @@ public class ChatController {
     public ApiResponse<List<ChunkEntity>> search(@RequestBody QueryReq req) {
         return ApiResponse.success(chatService.searchOnly(req));
     }
+
+    @PostMapping("/search/batch")
+    public ApiResponse<List<List<ChunkEntity>>> searchBatch(@RequestBody BatchSearchReq req) {
+        return ApiResponse.success(chatService.searchOnlyBatch(req));
+    }
 }
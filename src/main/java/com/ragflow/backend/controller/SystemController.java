@@ -1,12 +1,23 @@
 package com.ragflow.backend.controller;
 
 import com.ragflow.backend.common.ApiResponse;
+import com.ragflow.backend.dto.EvaluateReq;
+import com.ragflow.backend.embedding.BatchingEmbeddingClient;
+import com.ragflow.backend.embedding.EmbeddingClient;
+import com.ragflow.backend.embedding.QueryEmbeddingCache;
+import com.ragflow.backend.vectorstore.FaissVectorStore;
+import com.ragflow.backend.vectorstore.IndexEvaluator;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -16,10 +27,46 @@ public class SystemController {
     @Value("${rag.max-file-size:10MB}")
     private String maxFileSize;
 
+    private final FaissVectorStore flatStore;
+    private final IndexEvaluator indexEvaluator;
+    private final EmbeddingClient embeddingClient;
+    private final ObjectProvider<BatchingEmbeddingClient> embeddingBatcher;
+
+    public SystemController(FaissVectorStore flatStore, IndexEvaluator indexEvaluator,
+            EmbeddingClient embeddingClient, ObjectProvider<BatchingEmbeddingClient> embeddingBatcher) {
+        this.flatStore = flatStore;
+        this.indexEvaluator = indexEvaluator;
+        this.embeddingClient = embeddingClient;
+        this.embeddingBatcher = embeddingBatcher;
+    }
+
     @GetMapping("/config")
     public ApiResponse<Map<String, Object>> getConfig() {
         Map<String, Object> config = new HashMap<>();
         config.put("maxFileSize", maxFileSize);
         return ApiResponse.success(config);
     }
+
+    @GetMapping("/vectorstore")
+    public ApiResponse<Map<String, Object>> getVectorStoreStats() {
+        return ApiResponse.success(flatStore.memoryStats());
+    }
+
+    @PostMapping("/vectorstore/evaluate")
+    public ApiResponse<Map<String, Object>> evaluateVectorStore(@RequestBody EvaluateReq req) throws IOException {
+        return ApiResponse.success(indexEvaluator.evaluate(req.getCollection(), req.getQueries(), req.getTopK(),
+                req.getQueryFile(), req.getModes(), req.getOverrides()));
+    }
+
+    @GetMapping("/embedding")
+    public ApiResponse<Map<String, Object>> getEmbeddingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", embeddingClient.getModel());
+        stats.put("dimension", embeddingClient.getDimension());
+        if (embeddingClient instanceof QueryEmbeddingCache queryCache) {
+            stats.put("queryCache", queryCache.stats());
+        }
+        embeddingBatcher.ifAvailable(batcher -> stats.put("batching", batcher.stats()));
+        return ApiResponse.success(stats);
+    }
 }
@@ -0,0 +1,33 @@
+package com.ragflow.backend.dto;
+
+import java.util.List;
+
+public class BatchSearchReq {
+    private String collection = "default";
+    private List<String> questions;
+    private int topK = 5;
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public void setCollection(String collection) {
+        this.collection = collection;
+    }
+
+    public List<String> getQuestions() {
+        return questions;
+    }
+
+    public void setQuestions(List<String> questions) {
+        this.questions = questions;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+}
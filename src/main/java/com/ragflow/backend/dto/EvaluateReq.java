@@ -0,0 +1,61 @@
+package com.ragflow.backend.dto;
+
+import java.util.List;
+import java.util.Map;
+
+public class EvaluateReq {
+    private String collection = "default";
+    private int queries = 200;
+    private int topK = 10;
+    private String queryFile;
+    private List<String> modes;
+    private Map<String, String> overrides;
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public void setCollection(String collection) {
+        this.collection = collection;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public void setQueries(int queries) {
+        this.queries = queries;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+
+    public String getQueryFile() {
+        return queryFile;
+    }
+
+    public void setQueryFile(String queryFile) {
+        this.queryFile = queryFile;
+    }
+
+    public List<String> getModes() {
+        return modes;
+    }
+
+    public void setModes(List<String> modes) {
+        this.modes = modes;
+    }
+
+    public Map<String, String> getOverrides() {
+        return overrides;
+    }
+
+    public void setOverrides(Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+}
@@ -47,4 +47,15 @@ public class QueryReq {
     public void setCollectionIds(java.util.List<String> collectionIds) {
         this.collectionIds = collectionIds;
     }
+
+    // Metadata key -> accepted values, e.g. {"docId": [3, 7]}; all keys must match
+    private java.util.Map<String, java.util.List<Object>> filter;
+
+    public java.util.Map<String, java.util.List<Object>> getFilter() {
+        return filter;
+    }
+
+    public void setFilter(java.util.Map<String, java.util.List<Object>> filter) {
+        this.filter = filter;
+    }
 }
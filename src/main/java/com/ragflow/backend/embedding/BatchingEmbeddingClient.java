@@ -0,0 +1,220 @@
+package com.ragflow.backend.embedding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent {@link #embed} calls into shared {@code embedBatch}
+ * requests to the provider. A dispatcher thread takes the first waiting text,
+ * then keeps collecting for up to {@code windowMillis} or until
+ * {@code maxBatch} texts, and hands the batch to one of
+ * {@code maxConcurrentRequests} sender threads; every caller blocks on its own
+ * future until the batch returns. While all senders are busy, new calls
+ * simply queue up, so batches grow with load instead of requests piling up.
+ * Identical texts in one batch are sent once.
+ * <p>
+ * If the batch request fails, every caller in it gets the failure.
+ * {@link #embedBatch} already is a batch and goes straight to the provider.
+ */
+public class BatchingEmbeddingClient implements EmbeddingClient, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingEmbeddingClient.class);
+
+    private record Pending(String text, CompletableFuture<float[]> result) {
+    }
+
+    private final EmbeddingClient delegate;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final Semaphore senderSlots;
+    private final ExecutorService senders;
+    private final Thread dispatcher;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    public BatchingEmbeddingClient(EmbeddingClient delegate, long windowMillis, int maxBatch,
+            int maxConcurrentRequests) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("embedding.batching.window-ms must not be negative");
+        }
+        if (maxBatch <= 0 || maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException(
+                    "embedding.batching.max-batch and max-concurrent-requests must be positive");
+        }
+        this.delegate = delegate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatch = maxBatch;
+        this.senderSlots = new Semaphore(maxConcurrentRequests);
+        AtomicInteger counter = new AtomicInteger();
+        // The semaphore caps batches in flight at the pool size, so the queue stays (nearly) empty
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "embedding-batch-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.senders = pool;
+        this.dispatcher = new Thread(this::dispatch, "embedding-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (closed) {
+            throw new IllegalStateException("Embedding batcher is shut down");
+        }
+        calls.incrementAndGet();
+        Pending pending = new Pending(text, new CompletableFuture<>());
+        queue.add(pending);
+        if (closed && queue.remove(pending)) {
+            throw new IllegalStateException("Embedding batcher is shut down");
+        }
+        try {
+            return pending.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Embedding failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        return delegate.embedBatch(texts);
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public String getModel() {
+        return delegate.getModel();
+    }
+
+    /** Calls coalesced, provider requests sent and failed, mean and largest batch. */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long sent = requests.get();
+        stats.put("calls", calls.get());
+        stats.put("requests", sent);
+        stats.put("failedRequests", failedRequests.get());
+        stats.put("meanBatch", sent == 0 ? 0.0 : calls.get() / (double) sent);
+        stats.put("largestBatch", largestBatch.get());
+        stats.put("queued", queue.size());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        senders.shutdown();
+        fail(drain(), new IllegalStateException("Embedding batcher is shut down"));
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            List<Pending> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                // Waiting for a free sender lets more calls join this batch
+                senderSlots.acquire();
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                fail(batch, new IllegalStateException("Embedding batcher is shut down"));
+                return;
+            }
+            try {
+                senders.execute(() -> {
+                    try {
+                        send(batch);
+                    } finally {
+                        senderSlots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                senderSlots.release();
+                fail(batch, new IllegalStateException("Embedding batcher is shut down"));
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        // Distinct texts in arrival order, each with everyone waiting for it
+        Map<String, List<Pending>> distinct = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            distinct.computeIfAbsent(p.text(), t -> new ArrayList<>(1)).add(p);
+        }
+        requests.incrementAndGet();
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+        try {
+            List<String> texts = new ArrayList<>(distinct.keySet());
+            List<float[]> vectors = delegate.embedBatch(texts);
+            if (vectors.size() != texts.size()) {
+                throw new IllegalStateException("Embedding provider returned " + vectors.size()
+                        + " vectors for " + texts.size() + " texts");
+            }
+            int i = 0;
+            for (List<Pending> waiting : distinct.values()) {
+                float[] vector = vectors.get(i++);
+                for (int w = 0; w < waiting.size(); w++) {
+                    waiting.get(w).result().complete(w == 0 ? vector : vector.clone());
+                }
+            }
+            log.debug("Embedded {} queued texts in one request ({} distinct)", batch.size(), texts.size());
+        } catch (Throwable t) {
+            failedRequests.incrementAndGet();
+            fail(batch, t);
+        }
+    }
+
+    private List<Pending> drain() {
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        return rest;
+    }
+
+    private static void fail(List<Pending> batch, Throwable cause) {
+        for (Pending p : batch) {
+            p.result().completeExceptionally(cause);
+        }
+    }
+}
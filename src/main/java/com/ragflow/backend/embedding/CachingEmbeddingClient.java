@@ -0,0 +1,161 @@
+package com.ragflow.backend.embedding;
+
+import com.ragflow.backend.entity.EmbeddingCacheEntity;
+import com.ragflow.backend.repository.EmbeddingCacheRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed embedding cache in front of the configured provider,
+ * persisted in the {@code embedding_cache} table. Entries are keyed by
+ * (model, dimension, SHA-256 of the text), so re-indexing an unchanged
+ * document, or boilerplate shared by many files, costs no API calls; changing
+ * the model or dimension simply misses.
+ * <p>
+ * Only {@link #embedBatch} (document chunks) goes through the cache; single
+ * {@link #embed} calls are questions and are passed straight through. Texts
+ * repeated within one batch are embedded once. Failing to read or write the
+ * cache never fails the embedding itself.
+ * <p>
+ * Cache reads and writes run in their own transactions, never in the
+ * caller's: document indexing embeds inside its {@code @Transactional}
+ * method, and a failed cache write must not mark the whole indexing
+ * transaction rollback-only. Entries are written with an idempotent
+ * {@code MERGE ... KEY}, so texts a concurrent run already stored are not a
+ * constraint violation; writes are serialized in the client, since two
+ * merges of the same new key racing in the embedded database would still
+ * collide on the unique index.
+ */
+public class CachingEmbeddingClient implements EmbeddingClient {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingEmbeddingClient.class);
+
+    /** Hashes per lookup query, to keep the IN list of the select bounded. */
+    static final int LOOKUP_BATCH = 500;
+
+    private final EmbeddingClient delegate;
+    private final EmbeddingCacheRepository repository;
+    private final TransactionTemplate transactions;
+
+    public CachingEmbeddingClient(EmbeddingClient delegate, EmbeddingCacheRepository repository,
+            PlatformTransactionManager transactionManager) {
+        this.delegate = delegate;
+        this.repository = repository;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.transactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return delegate.embed(text);
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        String model = getModel();
+        int dimension = getDimension();
+        List<String> hashes = new ArrayList<>(texts.size());
+        // Distinct texts by hash, in first-seen order
+        Map<String, String> distinct = new LinkedHashMap<>();
+        for (String text : texts) {
+            String hash = ContentHash.sha256(text);
+            hashes.add(hash);
+            distinct.putIfAbsent(hash, text);
+        }
+
+        Map<String, float[]> vectors = lookup(model, dimension, new ArrayList<>(distinct.keySet()));
+        List<String> missingHashes = new ArrayList<>();
+        List<String> missingTexts = new ArrayList<>();
+        for (Map.Entry<String, String> e : distinct.entrySet()) {
+            if (!vectors.containsKey(e.getKey())) {
+                missingHashes.add(e.getKey());
+                missingTexts.add(e.getValue());
+            }
+        }
+
+        if (!missingTexts.isEmpty()) {
+            List<float[]> embedded = delegate.embedBatch(missingTexts);
+            if (embedded.size() != missingTexts.size()) {
+                throw new IllegalStateException("Embedding provider returned " + embedded.size()
+                        + " vectors for " + missingTexts.size() + " texts");
+            }
+            for (int i = 0; i < embedded.size(); i++) {
+                vectors.put(missingHashes.get(i), embedded.get(i));
+            }
+            store(model, dimension, missingHashes, embedded);
+        }
+        log.info("Embedded {} texts: {} distinct, {} from cache", texts.size(), distinct.size(),
+                distinct.size() - missingHashes.size());
+
+        List<float[]> result = new ArrayList<>(texts.size());
+        for (String hash : hashes) {
+            // Copies, so callers normalizing in place cannot corrupt a vector shared by duplicates
+            result.add(vectors.get(hash).clone());
+        }
+        return result;
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public String getModel() {
+        return delegate.getModel();
+    }
+
+    private Map<String, float[]> lookup(String model, int dimension, List<String> hashes) {
+        Map<String, float[]> found = new HashMap<>();
+        try {
+            for (int from = 0; from < hashes.size(); from += LOOKUP_BATCH) {
+                List<String> slice = hashes.subList(from, Math.min(hashes.size(), from + LOOKUP_BATCH));
+                List<EmbeddingCacheEntity> entries = transactions.execute(
+                        status -> repository.findByModelAndDimensionAndContentHashIn(model, dimension, slice));
+                for (EmbeddingCacheEntity entry : entries) {
+                    found.put(entry.getContentHash(), decode(entry.getVector()));
+                }
+            }
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Embedding cache lookup failed, embedding {} texts without it", hashes.size(), e);
+        }
+        return found;
+    }
+
+    private synchronized void store(String model, int dimension, List<String> hashes, List<float[]> embedded) {
+        try {
+            transactions.executeWithoutResult(status -> {
+                for (int i = 0; i < hashes.size(); i++) {
+                    repository.merge(model, dimension, hashes.get(i), encode(embedded.get(i)));
+                }
+            });
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Failed to store {} embeddings in the cache", hashes.size(), e);
+        }
+    }
+
+    static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
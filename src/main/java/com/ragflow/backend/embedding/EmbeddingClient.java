@@ -8,4 +8,7 @@ public interface EmbeddingClient {
     List<float[]> embedBatch(List<String> texts);
 
     int getDimension();
+
+    /** Identifies the model producing the vectors, e.g. to key cached embeddings. */
+    String getModel();
 }
@@ -0,0 +1,126 @@
+package com.ragflow.backend.embedding;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Streaming decoder for OpenAI-style {@code /embeddings} responses. Numbers are
+ * read token by token straight into a {@code float[]} sized for the expected
+ * dimension, so no {@code List<Double>} (one boxed value per dimension) is
+ * built. An {@code embedding} given as a string is the base64 of little-endian
+ * float32 values ({@code encoding_format: base64}); both forms may be mixed.
+ * <p>
+ * Vectors are placed by their {@code index} field, so a server answering out
+ * of order is handled; every index in {@code [0, expected)} must occur
+ * exactly once. Items without {@code index} take their position in the array.
+ */
+final class EmbeddingResponseParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private EmbeddingResponseParser() {
+    }
+
+    static float[][] parse(InputStream body, int expected, int dimension) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            return parse(parser, expected, dimension);
+        }
+    }
+
+    private static float[][] parse(JsonParser parser, int expected, int dimension) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalStateException("Embedding response is not a JSON object");
+        }
+        float[][] vectors = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                vectors = readData(parser, expected, dimension);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (vectors == null) {
+            throw new IllegalStateException("Empty response from OpenAI Embedding API");
+        }
+        return vectors;
+    }
+
+    private static float[][] readData(JsonParser parser, int expected, int dimension) throws IOException {
+        float[][] vectors = new float[expected][];
+        int position = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int index = -1;
+            float[] vector = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    index = parser.getIntValue();
+                } else if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                    vector = readFloats(parser, dimension);
+                } else if ("embedding".equals(field) && value == JsonToken.VALUE_STRING) {
+                    vector = decodeBase64(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (index < 0) {
+                index = position;
+            }
+            position++;
+            if (vector == null) {
+                throw new IllegalStateException("Embedding " + index + " has no vector");
+            }
+            if (index >= expected) {
+                throw new IllegalStateException("Embedding API returned index " + index + " for " + expected
+                        + " texts");
+            }
+            if (vectors[index] != null) {
+                throw new IllegalStateException("Embedding API returned index " + index + " twice");
+            }
+            vectors[index] = vector;
+        }
+        if (position != expected) {
+            throw new IllegalStateException("Embedding API returned " + position + " vectors for " + expected
+                    + " texts");
+        }
+        return vectors;
+    }
+
+    /** Reads a JSON number array; the buffer is sized for the configured dimension and trimmed if it differs. */
+    private static float[] readFloats(JsonParser parser, int dimension) throws IOException {
+        float[] v = new float[Math.max(1, dimension)];
+        int n = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                throw new IllegalStateException("Unexpected " + token + " in embedding vector");
+            }
+            if (n == v.length) {
+                v = Arrays.copyOf(v, v.length * 2);
+            }
+            v[n++] = parser.getFloatValue();
+        }
+        return n == v.length ? v : Arrays.copyOf(v, n);
+    }
+
+    static float[] decodeBase64(String encoded) {
+        byte[] bytes = Base64.getDecoder().decode(encoded);
+        if (bytes.length % Float.BYTES != 0) {
+            throw new IllegalStateException("Base64 embedding of " + bytes.length + " bytes is not float32");
+        }
+        float[] v = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v);
+        return v;
+    }
+}
@@ -1,5 +1,6 @@
 package com.ragflow.backend.embedding;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
@@ -9,6 +10,7 @@ import java.util.List;
 import java.util.Random;
 
 @Service
+@Qualifier("provider")
 @ConditionalOnProperty(name = "embedding.provider", havingValue = "mock", matchIfMissing = true)
 public class MockEmbeddingClient implements EmbeddingClient {
 
@@ -34,6 +36,11 @@ public class MockEmbeddingClient implements EmbeddingClient {
         return dimension;
     }
 
+    @Override
+    public String getModel() {
+        return "mock";
+    }
+
     private float[] generateVector(String text) {
         // Deterministic vector based on text hash for testing
         Random random = new Random(text.hashCode());
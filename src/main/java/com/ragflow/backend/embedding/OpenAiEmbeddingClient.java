@@ -1,23 +1,42 @@
 package com.ragflow.backend.embedding;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
+@Qualifier("provider")
 @ConditionalOnProperty(name = "embedding.provider", havingValue = "openai")
 public class OpenAiEmbeddingClient implements EmbeddingClient {
 
     private static final Logger log = LoggerFactory.getLogger(OpenAiEmbeddingClient.class);
 
+    private static final DefaultResponseErrorHandler ERROR_HANDLER = new DefaultResponseErrorHandler();
+
     private final RestClient restClient;
 
     @Value("${embedding.base-url}")
@@ -32,8 +51,41 @@ public class OpenAiEmbeddingClient implements EmbeddingClient {
     @Value("${embedding.dimension:1536}")
     private int dimension;
 
-    public OpenAiEmbeddingClient(RestClient.Builder builder) {
+    /** {@code encoding_format: base64}: float32 bytes instead of decimal text, about a quarter of the payload. */
+    private final boolean base64;
+
+    @Value("${embedding.batch.max-items:64}")
+    private int maxItems;
+
+    @Value("${embedding.batch.max-tokens:8000}")
+    private int maxTokens;
+
+    @Value("${embedding.batch.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${embedding.batch.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    private final ExecutorService senders;
+
+    public OpenAiEmbeddingClient(RestClient.Builder builder,
+            @Value("${embedding.batch.concurrency:4}") int concurrency,
+            @Value("${embedding.encoding-format:float}") String encodingFormat) {
+        if (!encodingFormat.equalsIgnoreCase("float") && !encodingFormat.equalsIgnoreCase("base64")) {
+            throw new IllegalArgumentException("embedding.encoding-format must be float or base64, got: "
+                    + encodingFormat);
+        }
+        this.base64 = encodingFormat.equalsIgnoreCase("base64");
         this.restClient = builder.build();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(Math.max(1, concurrency), Math.max(1, concurrency), 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "embedding-request-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.senders = pool;
     }
 
     @Override
@@ -41,38 +93,145 @@ public class OpenAiEmbeddingClient implements EmbeddingClient {
         return embedBatch(Collections.singletonList(text)).get(0);
     }
 
+    /**
+     * Embeds the texts in sub-batches of at most {@code embedding.batch.max-items}
+     * texts and about {@code max-tokens} estimated tokens, sent on up to
+     * {@code concurrency} threads shared by all callers. Vectors are returned in
+     * input order. A sub-batch that fails with a server error, a timeout or
+     * HTTP 429 is retried on its own, up to {@code max-retries} times with
+     * doubling backoff; other client errors fail at once.
+     */
     @Override
     public List<float[]> embedBatch(List<String> texts) {
+        List<List<String>> batches = split(texts, maxItems, maxTokens);
+        if (batches.size() <= 1) {
+            return batches.isEmpty() ? List.of() : requestWithRetry(batches.get(0), 1, 1);
+        }
+
+        List<Future<List<float[]>>> futures = new ArrayList<>(batches.size());
+        for (int b = 0; b < batches.size(); b++) {
+            List<String> batch = batches.get(b);
+            int number = b + 1;
+            futures.add(senders.submit(() -> requestWithRetry(batch, number, batches.size())));
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        try {
+            for (Future<List<float[]>> future : futures) {
+                vectors.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new RuntimeException("Embedding interrupted");
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Embedding failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        log.info("Embedded {} texts in {} requests", texts.size(), batches.size());
+        return vectors;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private List<float[]> requestWithRetry(List<String> batch, int number, int total) {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return request(batch);
+            } catch (Exception e) {
+                if (attempt >= maxRetries || !retryable(e)) {
+                    log.error("Embedding failed for batch {}/{} ({} texts)", number, total, batch.size(), e);
+                    throw new RuntimeException("Embedding failed: " + e.getMessage());
+                }
+                long backoff = retryBackoffMs << attempt;
+                log.warn("Embedding batch {}/{} failed ({}), retrying in {} ms", number, total, e.getMessage(),
+                        backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Embedding interrupted");
+                }
+            }
+        }
+    }
+
+    private List<float[]> request(List<String> texts) {
         Req req = new Req();
         req.setModel(modelName);
         req.setInput(texts);
+        if (base64) {
+            req.setEncodingFormat("base64");
+        }
 
-        try {
-            Resp resp = restClient.post()
-                    .uri(baseUrl + "/embeddings")
-                    .header("Authorization", "Bearer " + apiKey)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(req)
-                    .retrieve()
-                    .body(Resp.class);
-
-            if (resp == null || resp.getData() == null) {
-                throw new RuntimeException("Empty response from OpenAI Embedding API");
-            }
+        // Decoded while streaming; the default status handling is kept so failures stay retryable
+        float[][] vectors = restClient.post()
+                .uri(baseUrl + "/embeddings")
+                .header("Authorization", "Bearer " + apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(req)
+                .exchange((request, response) -> {
+                    if (ERROR_HANDLER.hasError(response)) {
+                        ERROR_HANDLER.handleError(response);
+                    }
+                    return EmbeddingResponseParser.parse(response.getBody(), texts.size(), dimension);
+                });
+        return Arrays.asList(vectors);
+    }
 
-            return resp.getData().stream()
-                    .map(d -> {
-                        float[] f = new float[d.getEmbedding().size()];
-                        for (int i = 0; i < d.getEmbedding().size(); i++)
-                            f[i] = d.getEmbedding().get(i).floatValue();
-                        return f;
-                    })
-                    .collect(Collectors.toList());
+    /** Server errors, rate limiting and I/O failures may pass; other 4xx responses will not. */
+    static boolean retryable(Exception e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            int status = clientError.getStatusCode().value();
+            return status == 429 || status == 408;
+        }
+        return e instanceof HttpServerErrorException || e instanceof ResourceAccessException;
+    }
 
-        } catch (Exception e) {
-            log.error("Embedding failed", e);
-            throw new RuntimeException("Embedding failed: " + e.getMessage());
+    /**
+     * Consecutive runs of texts within both limits; a single text over the
+     * token limit still gets a batch of its own (the server decides on it).
+     */
+    static List<List<String>> split(List<String> texts, int maxItems, int maxTokens) {
+        List<List<String>> batches = new ArrayList<>();
+        int from = 0;
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int t = estimateTokens(texts.get(i));
+            if (i > from && (i - from >= maxItems || tokens + t > maxTokens)) {
+                batches.add(texts.subList(from, i));
+                from = i;
+                tokens = 0;
+            }
+            tokens += t;
+        }
+        if (from < texts.size()) {
+            batches.add(texts.subList(from, texts.size()));
         }
+        return batches;
+    }
+
+    /**
+     * Rough token count without the model's tokenizer: about four characters
+     * per token for Latin text, one per CJK character.
+     */
+    static int estimateTokens(String text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isIdeographic(c) || (c >= 0x3040 && c <= 0x30FF) || (c >= 0xAC00 && c <= 0xD7AF)) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
     }
 
     @Override
@@ -80,9 +239,17 @@ public class OpenAiEmbeddingClient implements EmbeddingClient {
         return dimension;
     }
 
+    @Override
+    public String getModel() {
+        return modelName;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     static class Req {
         private String model;
         private List<String> input;
+        @JsonProperty("encoding_format")
+        private String encodingFormat;
 
         public String getModel() {
             return model;
@@ -99,38 +266,13 @@ public class OpenAiEmbeddingClient implements EmbeddingClient {
         public void setInput(List<String> input) {
             this.input = input;
         }
-    }
-
-    static class Resp {
-        private List<DataItem> data;
-
-        public List<DataItem> getData() {
-            return data;
-        }
 
-        public void setData(List<DataItem> data) {
-            this.data = data;
+        public String getEncodingFormat() {
+            return encodingFormat;
         }
 
-        static class DataItem {
-            private List<Double> embedding;
-            private int index;
-
-            public List<Double> getEmbedding() {
-                return embedding;
-            }
-
-            public void setEmbedding(List<Double> embedding) {
-                this.embedding = embedding;
-            }
-
-            public int getIndex() {
-                return index;
-            }
-
-            public void setIndex(int index) {
-                this.index = index;
-            }
+        public void setEncodingFormat(String encodingFormat) {
+            this.encodingFormat = encodingFormat;
         }
     }
 }
@@ -0,0 +1,157 @@
+package com.ragflow.backend.embedding;
+
+import java.text.Normalizer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory LRU cache of query embeddings in front of the rest of the
+ * embedding chain, so a repeated question is answered without an embedding
+ * round-trip. Only {@link #embed} (questions) is cached; {@link #embedBatch}
+ * (document chunks) is passed through to the persistent cache behind it.
+ * <p>
+ * The cache is bounded by an estimate of its heap footprint (vector, key and
+ * entry overhead) rather than an entry count, because the vector size depends
+ * on the model. Entries older than {@code ttlMillis} are dropped when they
+ * are read (0 keeps them until evicted). With {@code normalize}, questions are
+ * NFKC-normalized and their whitespace trimmed and collapsed before being
+ * both looked up and embedded, so variants that differ only in spacing or
+ * full-width characters share one entry and always get the same vector.
+ * <p>
+ * Concurrent misses for the same question may each call the provider once;
+ * the last result wins. Counters are reported by {@link #stats()}.
+ */
+public class QueryEmbeddingCache implements EmbeddingClient {
+
+    /** Rough per-entry cost of the map entry, key string and array headers. */
+    static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingClient delegate;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final boolean normalize;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    private record Entry(float[] vector, long createdAt, long bytes) {
+    }
+
+    public QueryEmbeddingCache(EmbeddingClient delegate, long maxBytes, long ttlMillis, boolean normalize) {
+        this(delegate, maxBytes, ttlMillis, normalize, System::currentTimeMillis);
+    }
+
+    QueryEmbeddingCache(EmbeddingClient delegate, long maxBytes, long ttlMillis, boolean normalize,
+            LongSupplier clock) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("embedding.query-cache.max-bytes must be positive");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("embedding.query-cache.ttl-ms must not be negative");
+        }
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.normalize = normalize;
+        this.clock = clock;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = normalize ? normalize(text) : text;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && ttlMillis > 0 && clock.getAsLong() - entry.createdAt() >= ttlMillis) {
+                remove(key, entry);
+                expirations++;
+                entry = null;
+            }
+            if (entry != null) {
+                hits++;
+                // A copy, so a caller normalizing in place cannot corrupt the cached vector
+                return entry.vector().clone();
+            }
+            misses++;
+        }
+
+        float[] vector = delegate.embed(key);
+        long size = ENTRY_OVERHEAD_BYTES + (long) vector.length * Float.BYTES + (long) key.length() * 2;
+        if (size <= maxBytes) {
+            synchronized (this) {
+                Entry previous = entries.put(key, new Entry(vector.clone(), clock.getAsLong(), size));
+                if (previous != null) {
+                    bytes -= previous.bytes();
+                }
+                bytes += size;
+                evictLeastRecentlyUsed();
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        return delegate.embedBatch(texts);
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public String getModel() {
+        return delegate.getModel();
+    }
+
+    /** Entries, estimated footprint, limits and hit/miss/eviction/expiration counts. */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("ttlMs", ttlMillis);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        long lookups = hits + misses;
+        stats.put("hitRatio", lookups == 0 ? 0.0 : hits / (double) lookups);
+        return stats;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized.strip()).replaceAll(" ");
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().bytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.bytes();
+    }
+}
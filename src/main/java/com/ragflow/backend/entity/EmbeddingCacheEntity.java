@@ -0,0 +1,84 @@
+package com.ragflow.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One cached embedding, keyed by model, dimension and the SHA-256 of the
+ * embedded text. The vector is stored as little-endian float32 bytes.
+ */
+@Entity
+@Table(name = "embedding_cache", uniqueConstraints = @UniqueConstraint(name = "uk_embedding_cache_key",
+        columnNames = { "model", "dimension", "contentHash" }))
+public class EmbeddingCacheEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String model;
+
+    private int dimension;
+
+    @Column(nullable = false, length = 64)
+    private String contentHash; // SHA-256, hex
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] vector;
+
+    private LocalDateTime createdAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(int dimension) {
+        this.dimension = dimension;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public byte[] getVector() {
+        return vector;
+    }
+
+    public void setVector(byte[] vector) {
+        this.vector = vector;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @PrePersist
+    public void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,361 @@
+package com.ragflow.backend.lexical;
+
+import com.ragflow.backend.vectorstore.SearchResult;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index with BM25 scoring over the chunks of one collection.
+ * <p>
+ * Chunks get dense ordinals in insertion order, so each term's posting list
+ * is append-only and stored compressed: per posting a varint gap to the
+ * previous ordinal followed by a varint term frequency, typically two or three
+ * bytes. Removing or re-adding a chunk tombstones its old ordinal; the dead
+ * postings are skipped when scoring and dropped by {@link #compact()}, which
+ * renumbers the ordinals without needing the chunk text again.
+ * <p>
+ * Readers share a read lock, writers take the write lock.
+ */
+final class LexicalIndex {
+
+    private static final int MAGIC = 0x424D3235; // "BM25"
+    private static final int VERSION = 1;
+
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<Long, Integer> chunkToOrdinal = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+
+    private long[] chunkIds = new long[64];
+    private long[] docIds = new long[64];
+    private String[] docNames = new String[64];
+    private int[] lengths = new int[64];
+    private int size;
+    private long liveLength;
+
+    /** Compressed posting list of one term. */
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int bytes;
+        int count;
+        int lastOrdinal = -1;
+
+        void append(int ordinal, int tf) {
+            if (bytes + 10 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, bytes + 10));
+            }
+            bytes = writeVarint(data, bytes, ordinal - lastOrdinal);
+            bytes = writeVarint(data, bytes, tf);
+            lastOrdinal = ordinal;
+            count++;
+        }
+    }
+
+    int liveCount() {
+        lock.readLock().lock();
+        try {
+            return chunkToOrdinal.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    double deadRatio() {
+        lock.readLock().lock();
+        try {
+            return size == 0 ? 0.0 : (size - chunkToOrdinal.size()) / (double) size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void add(long chunkId, long docId, String docName, String content) {
+        List<String> tokens = Tokenizer.tokenize(content);
+        Map<String, Integer> tf = new HashMap<>();
+        for (String token : tokens) {
+            tf.merge(token, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(chunkId);
+            int ordinal = size;
+            ensureCapacity(ordinal + 1);
+            chunkIds[ordinal] = chunkId;
+            docIds[ordinal] = docId;
+            docNames[ordinal] = docName;
+            lengths[ordinal] = tokens.size();
+            for (Map.Entry<String, Integer> e : tf.entrySet()) {
+                terms.computeIfAbsent(e.getKey(), t -> new Postings()).append(ordinal, e.getValue());
+            }
+            chunkToOrdinal.put(chunkId, ordinal);
+            liveLength += tokens.size();
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean remove(long chunkId) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(chunkId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeLocked(long chunkId) {
+        Integer ordinal = chunkToOrdinal.remove(chunkId);
+        if (ordinal == null) {
+            return false;
+        }
+        deleted.set(ordinal);
+        liveLength -= lengths[ordinal];
+        return true;
+    }
+
+    /**
+     * Returns the {@code topK} live chunks with the highest BM25 score for the
+     * query terms, best first. Stopwords are ignored, and a chunk is only
+     * returned if it matches at least one rare term: one found in a single
+     * chunk or whose IDF reaches {@code minTermIdf}, so sharing only common
+     * words is not a match.
+     */
+    List<SearchResult> search(String query, int topK, double minTermIdf) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(Tokenizer.tokenize(query)));
+        queryTerms.removeIf(Tokenizer::isStopword);
+        lock.readLock().lock();
+        try {
+            int live = chunkToOrdinal.size();
+            if (live == 0 || queryTerms.isEmpty() || topK <= 0) {
+                return new ArrayList<>();
+            }
+            float avgLength = Math.max(1f, liveLength / (float) live);
+            float[] scores = new float[size];
+            BitSet informative = new BitSet();
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (String term : queryTerms) {
+                Postings postings = terms.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                // Dead postings inflate df slightly until the next compaction
+                int df = Math.min(postings.count, live);
+                float idf = (float) Math.log(1 + (live - df + 0.5) / (df + 0.5));
+                boolean rare = df == 1 || idf >= minTermIdf;
+                byte[] data = postings.data;
+                int[] cursor = new int[1];
+                int ordinal = -1;
+                for (int p = 0; p < postings.count; p++) {
+                    ordinal += readVarint(data, cursor);
+                    int tf = readVarint(data, cursor);
+                    if (deleted.get(ordinal)) {
+                        continue;
+                    }
+                    float norm = K1 * (1 - B + B * lengths[ordinal] / avgLength);
+                    if (scores[ordinal] == 0f) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = ordinal;
+                    }
+                    scores[ordinal] += idf * tf * (K1 + 1) / (tf + norm);
+                    if (rare) {
+                        informative.set(ordinal);
+                    }
+                }
+            }
+
+            // Min-heap of the best topK ordinals, worst on top
+            PriorityQueue<Integer> best = new PriorityQueue<>((a, b) -> Float.compare(scores[a], scores[b]));
+            for (int i = 0; i < touchedCount; i++) {
+                if (!informative.get(touched[i])) {
+                    continue;
+                }
+                best.offer(touched[i]);
+                if (best.size() > topK) {
+                    best.poll();
+                }
+            }
+            int n = best.size();
+            int[] order = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                order[i] = best.poll();
+            }
+            List<SearchResult> results = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int o = order[i];
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("docId", docIds[o]);
+                metadata.put("chunkId", chunkIds[o]);
+                metadata.put("docName", docNames[o]);
+                results.add(new SearchResult(chunkIds[o], scores[o], metadata));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns a copy without tombstoned chunks, postings re-encoded against the new ordinals. */
+    LexicalIndex compact() {
+        lock.readLock().lock();
+        try {
+            LexicalIndex compacted = new LexicalIndex();
+            int[] remap = new int[size];
+            for (int o = 0; o < size; o++) {
+                if (deleted.get(o)) {
+                    remap[o] = -1;
+                    continue;
+                }
+                int n = compacted.size++;
+                compacted.ensureCapacity(n + 1);
+                compacted.chunkIds[n] = chunkIds[o];
+                compacted.docIds[n] = docIds[o];
+                compacted.docNames[n] = docNames[o];
+                compacted.lengths[n] = lengths[o];
+                compacted.chunkToOrdinal.put(chunkIds[o], n);
+                compacted.liveLength += lengths[o];
+                remap[o] = n;
+            }
+            int[] cursor = new int[1];
+            for (Map.Entry<String, Postings> e : terms.entrySet()) {
+                Postings source = e.getValue();
+                Postings target = null;
+                cursor[0] = 0;
+                int ordinal = -1;
+                for (int p = 0; p < source.count; p++) {
+                    ordinal += readVarint(source.data, cursor);
+                    int tf = readVarint(source.data, cursor);
+                    if (remap[ordinal] >= 0) {
+                        if (target == null) {
+                            target = new Postings();
+                        }
+                        target.append(remap[ordinal], tf);
+                    }
+                }
+                if (target != null) {
+                    compacted.terms.put(e.getKey(), target);
+                }
+            }
+            return compacted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int o = 0; o < size; o++) {
+                out.writeLong(chunkIds[o]);
+                out.writeLong(docIds[o]);
+                out.writeUTF(docNames[o] != null ? docNames[o] : "");
+                out.writeInt(lengths[o]);
+                out.writeBoolean(deleted.get(o));
+            }
+            out.writeInt(terms.size());
+            for (Map.Entry<String, Postings> e : terms.entrySet()) {
+                Postings postings = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeInt(postings.count);
+                out.writeInt(postings.lastOrdinal);
+                out.writeInt(postings.bytes);
+                out.write(postings.data, 0, postings.bytes);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static LexicalIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a BM25 index file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported BM25 index version " + version);
+        }
+        LexicalIndex index = new LexicalIndex();
+        int size = in.readInt();
+        index.ensureCapacity(size);
+        for (int o = 0; o < size; o++) {
+            index.chunkIds[o] = in.readLong();
+            index.docIds[o] = in.readLong();
+            index.docNames[o] = in.readUTF();
+            index.lengths[o] = in.readInt();
+            if (in.readBoolean()) {
+                index.deleted.set(o);
+            } else {
+                index.chunkToOrdinal.put(index.chunkIds[o], o);
+                index.liveLength += index.lengths[o];
+            }
+        }
+        index.size = size;
+        int termCount = in.readInt();
+        for (int t = 0; t < termCount; t++) {
+            String term = in.readUTF();
+            Postings postings = new Postings();
+            postings.count = in.readInt();
+            postings.lastOrdinal = in.readInt();
+            postings.bytes = in.readInt();
+            postings.data = new byte[Math.max(8, postings.bytes)];
+            in.readFully(postings.data, 0, postings.bytes);
+            index.terms.put(term, postings);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= chunkIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, chunkIds.length * 2);
+        chunkIds = Arrays.copyOf(chunkIds, capacity);
+        docIds = Arrays.copyOf(docIds, capacity);
+        docNames = Arrays.copyOf(docNames, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+    }
+
+    static int writeVarint(byte[] dst, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[pos++] = (byte) value;
+        return pos;
+    }
+
+    /** Reads a varint at {@code cursor[0]} and advances the cursor past it. */
+    static int readVarint(byte[] src, int[] cursor) {
+        int pos = cursor[0];
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = src[pos++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        cursor[0] = pos;
+        return value;
+    }
+}
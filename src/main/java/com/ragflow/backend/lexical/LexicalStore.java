@@ -0,0 +1,170 @@
+package com.ragflow.backend.lexical;
+
+import com.ragflow.backend.vectorstore.MetadataFilter;
+import com.ragflow.backend.vectorstore.SearchResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keyword (BM25) retrieval over chunk text, one {@link LexicalIndex} per
+ * collection, persisted as {@code <collection>.bm25} under
+ * {@code storage.index-dir}. Complements the vector store for exact terms
+ * such as error codes, SKUs and proper nouns, which embeddings tend to blur.
+ * <p>
+ * Indexes whose share of removed chunks reaches {@code lexical.compaction.dead-ratio}
+ * are compacted when they are saved.
+ */
+@Component
+public class LexicalStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LexicalStore.class);
+
+    @Value("${storage.index-dir:./data/index}")
+    private String indexDir;
+
+    @Value("${lexical.compaction.dead-ratio:0.2}")
+    private double compactionDeadRatio = 0.2;
+
+    @Value("${lexical.min-term-idf:0.6}")
+    private double minTermIdf = 0.6;
+
+    private final Map<String, LexicalIndex> indexes = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        load();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    public boolean contains(String collection) {
+        return indexes.containsKey(collection);
+    }
+
+    public synchronized void add(String collection, Long chunkId, Long docId, String docName, String content) {
+        indexes.computeIfAbsent(collection, c -> new LexicalIndex())
+                .add(chunkId, docId != null ? docId : 0L, docName, content);
+        dirty.add(collection);
+    }
+
+    public synchronized void delete(String collection, Collection<Long> chunkIds) {
+        LexicalIndex index = indexes.get(collection);
+        if (index == null) {
+            return;
+        }
+        for (Long chunkId : chunkIds) {
+            if (index.remove(chunkId)) {
+                dirty.add(collection);
+            }
+        }
+    }
+
+    public synchronized void dropCollection(String collection) {
+        indexes.remove(collection);
+        dirty.remove(collection);
+        try {
+            Files.deleteIfExists(Path.of(indexDir, collection + ".bm25"));
+        } catch (IOException e) {
+            log.error("Failed to delete BM25 index for collection: " + collection, e);
+        }
+    }
+
+    /**
+     * Returns the best {@code topK} chunks by BM25 score over all given
+     * collections, best first. The filter is checked against the
+     * {@code docId} / {@code docName} kept with every chunk. Only chunks
+     * sharing a rare term with the query are returned: one found in a single
+     * chunk, or with an IDF of at least {@code lexical.min-term-idf} (about:
+     * in at most half of the collection's chunks). Stopwords never count.
+     */
+    public List<SearchResult> search(Collection<String> collections, String query, int topK, MetadataFilter filter) {
+        // Over-fetch when filtering, since the filter is applied after scoring
+        int fetch = filter != null ? topK * 4 : topK;
+        List<SearchResult> all = new ArrayList<>();
+        for (String collection : collections) {
+            LexicalIndex index = indexes.get(collection);
+            if (index != null) {
+                all.addAll(index.search(query, fetch, minTermIdf));
+            }
+        }
+        return all.stream()
+                .filter(r -> filter == null || filter.matches(r.getMetadata()))
+                .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
+                .limit(topK)
+                .toList();
+    }
+
+    public synchronized void save() {
+        File dir = new File(indexDir);
+        if (!dir.exists())
+            dir.mkdirs();
+
+        for (String collection : new ArrayList<>(dirty)) {
+            dirty.remove(collection);
+            LexicalIndex index = indexes.get(collection);
+            if (index == null) {
+                continue;
+            }
+            try {
+                if (index.deadRatio() >= compactionDeadRatio) {
+                    // Writers synchronize on the store too, so nothing is lost in the swap
+                    index = index.compact();
+                    indexes.put(collection, index);
+                }
+                Path file = dir.toPath().resolve(collection + ".bm25");
+                Path tmp = dir.toPath().resolve(collection + ".bm25.tmp");
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                    index.write(out);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("Saved BM25 index for collection: {} ({} chunks)", collection, index.liveCount());
+            } catch (IOException e) {
+                dirty.add(collection);
+                log.error("Failed to save BM25 index for collection: " + collection, e);
+            }
+        }
+    }
+
+    public synchronized void load() {
+        File dir = new File(indexDir);
+        if (!dir.exists())
+            return;
+
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".bm25"));
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            String filename = file.getName();
+            String collection = filename.substring(0, filename.lastIndexOf("."));
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                LexicalIndex index = LexicalIndex.read(in);
+                indexes.put(collection, index);
+                log.info("Loaded BM25 index for collection: {} with {} chunks", collection, index.liveCount());
+            } catch (Exception e) {
+                log.error("Failed to load BM25 index from " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+}
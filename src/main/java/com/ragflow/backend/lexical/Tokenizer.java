@@ -0,0 +1,127 @@
+package com.ragflow.backend.lexical;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits text into index terms for {@link LexicalIndex}.
+ * <ul>
+ * <li>Runs of letters and digits become lower-cased terms; runs joined by
+ * {@code - _ . /} without spaces (error codes, SKUs, versions such as
+ * {@code ERR-4012}, {@code v1.2.3}) are also kept as one compound term, so an
+ * exact code ranks above documents that merely share its parts.</li>
+ * <li>Han, kana and Hangul text has no spaces, so every run is indexed as
+ * overlapping character bigrams ({@code 向量检索} becomes {@code 向量 量检 检索});
+ * a single character stays a unigram. Queries are tokenized the same way, so
+ * any word of two or more characters matches without a dictionary.</li>
+ * </ul>
+ * {@link #isStopword} names query terms that carry no meaning of their own
+ * (English function words, Chinese question words and particles); they are
+ * still indexed but ignored when a query is scored.
+ */
+public final class Tokenizer {
+
+    static final int MAX_TERM_LENGTH = 64;
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "about", "an", "and", "are", "as", "at", "be", "been", "but", "by", "can", "could", "did", "do",
+            "does", "for", "from", "had", "has", "have", "how", "i", "if", "in", "into", "is", "it", "its", "me",
+            "my", "no", "not", "of", "on", "or", "our", "should", "so", "than", "that", "the", "their", "them",
+            "then", "there", "these", "they", "this", "to", "was", "we", "were", "what", "when", "where", "which",
+            "who", "why", "will", "with", "would", "you", "your",
+            "的", "了", "是", "吗", "呢", "吧", "在", "和", "与", "我", "你", "他", "她", "它",
+            "什么", "么是", "是什", "怎么", "如何", "为什", "为何", "哪些", "哪个", "请问", "可以", "是否",
+            "我们", "你们", "他们", "这个", "那个", "的是");
+
+    private Tokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        StringBuilder compound = new StringBuilder();
+        int compoundParts = 0;
+        StringBuilder cjk = new StringBuilder();
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            int cp = text.codePointAt(i);
+            int next = i + Character.charCount(cp);
+            if (isCjk(cp)) {
+                compoundParts = flushWord(terms, word, compound, compoundParts);
+                compoundParts = flushCompound(terms, compound, compoundParts);
+                cjk.appendCodePoint(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                flushCjk(terms, cjk);
+                word.appendCodePoint(Character.toLowerCase(cp));
+            } else {
+                flushCjk(terms, cjk);
+                compoundParts = flushWord(terms, word, compound, compoundParts);
+                boolean joiner = (cp == '-' || cp == '_' || cp == '.' || cp == '/')
+                        && compoundParts > 0 && next < n && Character.isLetterOrDigit(text.codePointAt(next))
+                        && !isCjk(text.codePointAt(next));
+                if (joiner) {
+                    compound.appendCodePoint(cp);
+                } else {
+                    compoundParts = flushCompound(terms, compound, compoundParts);
+                }
+            }
+            i = next;
+        }
+        compoundParts = flushWord(terms, word, compound, compoundParts);
+        flushCompound(terms, compound, compoundParts);
+        flushCjk(terms, cjk);
+        return terms;
+    }
+
+    static boolean isStopword(String term) {
+        return STOPWORDS.contains(term);
+    }
+
+    static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static int flushWord(List<String> terms, StringBuilder word, StringBuilder compound, int parts) {
+        if (word.length() == 0) {
+            return parts;
+        }
+        addTerm(terms, word.toString());
+        compound.append(word);
+        word.setLength(0);
+        return parts + 1;
+    }
+
+    private static int flushCompound(List<String> terms, StringBuilder compound, int parts) {
+        if (parts > 1) {
+            addTerm(terms, compound.toString().toLowerCase(Locale.ROOT));
+        }
+        compound.setLength(0);
+        return 0;
+    }
+
+    private static void flushCjk(List<String> terms, StringBuilder cjk) {
+        if (cjk.length() == 0) {
+            return;
+        }
+        int[] cps = cjk.codePoints().toArray();
+        if (cps.length == 1) {
+            terms.add(new String(cps, 0, 1));
+        }
+        for (int i = 0; i + 1 < cps.length; i++) {
+            terms.add(new String(cps, i, 2));
+        }
+        cjk.setLength(0);
+    }
+
+    private static void addTerm(List<String> terms, String term) {
+        terms.add(term.length() > MAX_TERM_LENGTH ? term.substring(0, MAX_TERM_LENGTH) : term);
+    }
+}
@@ -1,6 +1,7 @@
 package com.ragflow.backend.llm;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
@@ -24,6 +25,9 @@ public class OpenAiLLMClient implements LLMClient {
 
     private static final Logger log = LoggerFactory.getLogger(OpenAiLLMClient.class);
 
+    /** Returned by {@link #parseStreamLine} for the end-of-stream sentinel. */
+    static final StreamChoice DONE = new StreamChoice();
+
     private final RestClient restClient;
     private final ObjectMapper objectMapper;
 
@@ -91,52 +95,32 @@ public class OpenAiLLMClient implements LLMClient {
                                 BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
 
                             String line;
-                            boolean completed = false;
                             while ((line = reader.readLine()) != null) {
-                                if (completed) {
-                                    break;
-                                }
-                                String trimmed = line.trim();
-                                if (trimmed.isEmpty() || trimmed.startsWith("event:")) {
+                                StreamChoice choice;
+                                try {
+                                    choice = parseStreamLine(line);
+                                } catch (Exception e) {
+                                    log.warn("Failed to parse chunk: {}, error: {}", line, e.getMessage());
                                     continue;
                                 }
-
-                                String data = trimmed;
-                                if (trimmed.startsWith("data:")) {
-                                    data = trimmed.substring(5).trim();
-                                }
-
-                                if (data.isEmpty()) {
+                                if (choice == null) {
                                     continue;
                                 }
-
-                                if ("[DONE]".equals(data)) {
+                                if (choice == DONE) {
                                     emitter.send(SseEmitter.event().name("done").data(""));
                                     emitter.complete();
-                                    completed = true;
                                     break;
                                 }
-
-                                try {
-                                    StreamResp chunk = objectMapper.readValue(data, StreamResp.class);
-                                    if (chunk.getChoices() != null && !chunk.getChoices().isEmpty()) {
-                                        StreamChoice choice = chunk.getChoices().get(0);
-                                        if (choice.getDelta() != null && choice.getDelta().getContent() != null
-                                                && !choice.getDelta().getContent().isEmpty()) {
-                                            emitter.send(SseEmitter.event()
-                                                    .name("message")
-                                                    .data(choice.getDelta().getContent()));
-                                        }
-                                        if (choice.getFinish_reason() != null
-                                                && !choice.getFinish_reason().isEmpty()) {
-                                            emitter.send(SseEmitter.event().name("done").data(""));
-                                            emitter.complete();
-                                            completed = true;
-                                            break;
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    log.warn("Failed to parse chunk: {}, error: {}", data, e.getMessage());
+                                if (choice.getDelta() != null && choice.getDelta().getContent() != null
+                                        && !choice.getDelta().getContent().isEmpty()) {
+                                    emitter.send(SseEmitter.event()
+                                            .name("message")
+                                            .data(choice.getDelta().getContent()));
+                                }
+                                if (choice.getFinish_reason() != null && !choice.getFinish_reason().isEmpty()) {
+                                    emitter.send(SseEmitter.event().name("done").data(""));
+                                    emitter.complete();
+                                    break;
                                 }
                             }
                         } catch (Exception e) {
@@ -156,6 +140,31 @@ public class OpenAiLLMClient implements LLMClient {
         }
     }
 
+    /**
+     * Parses one line of the completion event stream into its first choice.
+     * Returns null for lines that carry none (blank lines, {@code event:}
+     * lines, chunks without choices) and {@link #DONE} for the
+     * {@code [DONE]} sentinel.
+     */
+    StreamChoice parseStreamLine(String line) throws JsonProcessingException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("event:")) {
+            return null;
+        }
+        String data = trimmed.startsWith("data:") ? trimmed.substring(5).trim() : trimmed;
+        if (data.isEmpty()) {
+            return null;
+        }
+        if ("[DONE]".equals(data)) {
+            return DONE;
+        }
+        StreamResp chunk = objectMapper.readValue(data, StreamResp.class);
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return null;
+        }
+        return chunk.getChoices().get(0);
+    }
+
     static class Req {
         private String model;
         private double temperature;
@@ -0,0 +1,42 @@
+package com.ragflow.backend.pipeline.query;
+
+import com.ragflow.backend.vectorstore.SearchResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reciprocal rank fusion (Cormack et al.): a chunk scores
+ * {@code sum(1 / (k + rank))} over the rankings it appears in. Only ranks are
+ * used, so BM25 and cosine scores, which live on different scales, can be
+ * merged without calibration. The fused score only decides the order; each
+ * result keeps the score it had in the first ranking that contains it, so
+ * with the vector ranking passed first, vector hits keep their cosine.
+ */
+@Component
+public class RankFusion {
+
+    @Value("${rag.hybrid.rrf-k:60}")
+    private int k = 60;
+
+    public List<SearchResult> fuse(List<List<SearchResult>> rankings, int topK) {
+        Map<Long, SearchResult> first = new LinkedHashMap<>();
+        Map<Long, Double> fused = new HashMap<>();
+        for (List<SearchResult> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                SearchResult r = ranking.get(rank);
+                first.putIfAbsent(r.getChunkId(), r);
+                fused.merge(r.getChunkId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+        return first.values().stream()
+                .sorted((a, b) -> Double.compare(fused.get(b.getChunkId()), fused.get(a.getChunkId())))
+                .limit(topK)
+                .map(r -> new SearchResult(r.getChunkId(), r.getScore(), r.getMetadata()))
+                .toList();
+    }
+}
@@ -0,0 +1,28 @@
+package com.ragflow.backend.repository;
+
+import com.ragflow.backend.entity.EmbeddingCacheEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntity, Long> {
+    List<EmbeddingCacheEntity> findByModelAndDimensionAndContentHashIn(String model, int dimension,
+            Collection<String> contentHashes);
+
+    /**
+     * Stores the embedding unless its key is already cached; an existing row
+     * is overwritten with the same vector rather than failing the insert.
+     */
+    @Modifying
+    @Query(value = "MERGE INTO embedding_cache (model, dimension, content_hash, vector, created_at) "
+            + "KEY (model, dimension, content_hash) "
+            + "VALUES (:model, :dimension, :contentHash, :vector, CURRENT_TIMESTAMP)", nativeQuery = true)
+    int merge(@Param("model") String model, @Param("dimension") int dimension,
+            @Param("contentHash") String contentHash, @Param("vector") byte[] vector);
+}
@@ -1,13 +1,17 @@
 package com.ragflow.backend.service;
 
+import com.ragflow.backend.dto.BatchSearchReq;
 import com.ragflow.backend.dto.QueryReq;
 import com.ragflow.backend.dto.QueryResp;
 import com.ragflow.backend.embedding.EmbeddingClient;
 import com.ragflow.backend.entity.ChunkEntity;
+import com.ragflow.backend.lexical.LexicalStore;
 import com.ragflow.backend.llm.LLMClient;
 import com.ragflow.backend.pipeline.query.ContextBuilder;
 import com.ragflow.backend.pipeline.query.PromptBuilder;
+import com.ragflow.backend.pipeline.query.RankFusion;
 import com.ragflow.backend.repository.ChunkRepository;
+import com.ragflow.backend.vectorstore.MetadataFilter;
 import com.ragflow.backend.vectorstore.SearchResult;
 import com.ragflow.backend.vectorstore.VectorStore;
 import org.slf4j.Logger;
@@ -16,6 +20,9 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,6 +37,8 @@ public class ChatService {
     private final PromptBuilder promptBuilder;
     private final LLMClient llmClient;
     private final WebSearchService webSearchService;
+    private final LexicalStore lexicalStore;
+    private final RankFusion rankFusion;
 
     @org.springframework.beans.factory.annotation.Value("${rag.score-threshold:0.5}")
     private double defaultScoreThreshold;
@@ -37,9 +46,12 @@ public class ChatService {
     @org.springframework.beans.factory.annotation.Value("${websearch.fallback-enabled:true}")
     private boolean webSearchFallbackEnabled;
 
+    @org.springframework.beans.factory.annotation.Value("${rag.hybrid.enabled:true}")
+    private boolean hybridEnabled;
+
     public ChatService(EmbeddingClient embeddingClient, VectorStore vectorStore, ChunkRepository chunkRepo,
             ContextBuilder contextBuilder, PromptBuilder promptBuilder, LLMClient llmClient,
-            WebSearchService webSearchService) {
+            WebSearchService webSearchService, LexicalStore lexicalStore, RankFusion rankFusion) {
         this.embeddingClient = embeddingClient;
         this.vectorStore = vectorStore;
         this.chunkRepo = chunkRepo;
@@ -47,6 +59,8 @@ public class ChatService {
         this.promptBuilder = promptBuilder;
         this.llmClient = llmClient;
         this.webSearchService = webSearchService;
+        this.lexicalStore = lexicalStore;
+        this.rankFusion = rankFusion;
     }
 
     public QueryResp query(QueryReq req) {
@@ -68,21 +82,7 @@ public class ChatService {
                 targetCollections.add(req.getCollection());
             }
 
-            List<SearchResult> allResults = new ArrayList<>();
-            for (String collection : targetCollections) {
-                allResults.addAll(vectorStore.search(collection, queryVec, req.getTopK()));
-            }
-
-            results = allResults.stream()
-                    .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
-                    .limit(req.getTopK())
-                    .collect(Collectors.toList());
-
-            double threshold = req.getScoreThreshold() > 0 ? req.getScoreThreshold() : defaultScoreThreshold;
-
-            results = results.stream()
-                    .filter(r -> r.getScore() >= threshold)
-                    .collect(Collectors.toList());
+            results = retrieve(req, queryVec, targetCollections);
 
             List<Long> chunkIds = results.stream().map(SearchResult::getChunkId).collect(Collectors.toList());
             chunks = chunkRepo.findAllById(chunkIds);
@@ -175,15 +175,63 @@ public class ChatService {
         return resp;
     }
 
+    /**
+     * Vector hits above the score threshold, fused by rank with BM25 keyword
+     * hits when hybrid retrieval is on, so exact terms the embedding misses
+     * still find their chunks, even when no vector hit passes. The lexical
+     * side keeps out noise on its own: stopwords are ignored and a keyword hit
+     * must share a term that is rare in its collection, so a question that
+     * only shares common words with a chunk still falls back to web search.
+     */
+    private List<SearchResult> retrieve(QueryReq req, float[] queryVec, List<String> targetCollections) {
+        MetadataFilter filter = MetadataFilter.fromMap(req.getFilter());
+        double threshold = req.getScoreThreshold() > 0 ? req.getScoreThreshold() : defaultScoreThreshold;
+        List<SearchResult> vectorHits = vectorStore.search(targetCollections, queryVec, req.getTopK(), filter)
+                .stream()
+                .filter(r -> r.getScore() >= threshold)
+                .collect(Collectors.toList());
+        if (!hybridEnabled) {
+            return vectorHits;
+        }
+        List<SearchResult> keywordHits = lexicalStore.search(targetCollections, req.getQuestion(), req.getTopK(),
+                filter);
+        if (keywordHits.isEmpty()) {
+            return vectorHits;
+        }
+        return rankFusion.fuse(List.of(vectorHits, keywordHits), req.getTopK());
+    }
+
     public List<ChunkEntity> searchOnly(QueryReq req) {
         float[] queryVec = embeddingClient.embed(req.getQuestion());
 
-        List<SearchResult> results = vectorStore.search(req.getCollection(), queryVec, req.getTopK());
+        List<SearchResult> results = vectorStore.search(req.getCollection(), queryVec, req.getTopK(),
+                MetadataFilter.fromMap(req.getFilter()));
 
         List<Long> chunkIds = results.stream().map(SearchResult::getChunkId).collect(Collectors.toList());
         return chunkRepo.findAllById(chunkIds);
     }
 
+    /**
+     * Retrieval only, for many questions at once: the questions are embedded
+     * in one batch and the collection is scanned once for all of them. Returns
+     * the chunks of each question in rank order.
+     */
+    public List<List<ChunkEntity>> searchOnlyBatch(BatchSearchReq req) {
+        if (req.getQuestions() == null || req.getQuestions().isEmpty()) {
+            throw new IllegalArgumentException("questions must not be empty");
+        }
+        List<float[]> queryVecs = embeddingClient.embedBatch(req.getQuestions());
+        List<List<SearchResult>> results = vectorStore.searchBatch(req.getCollection(), queryVecs, req.getTopK());
+
+        Set<Long> chunkIds = results.stream().flatMap(List::stream).map(SearchResult::getChunkId)
+                .collect(Collectors.toSet());
+        Map<Long, ChunkEntity> chunks = chunkRepo.findAllById(chunkIds).stream()
+                .collect(Collectors.toMap(ChunkEntity::getId, c -> c));
+        return results.stream()
+                .map(list -> list.stream().map(r -> chunks.get(r.getChunkId())).filter(Objects::nonNull).toList())
+                .collect(Collectors.toList());
+    }
+
     public void queryStream(QueryReq req, org.springframework.web.servlet.mvc.method.annotation.SseEmitter emitter) {
         new Thread(() -> {
             try {
@@ -208,21 +256,7 @@ public class ChatService {
                         targetCollections.add(req.getCollection());
                     }
 
-                    List<SearchResult> allResults = new ArrayList<>();
-                    for (String collection : targetCollections) {
-                        allResults.addAll(vectorStore.search(collection, queryVec, req.getTopK()));
-                    }
-
-                    results = allResults.stream()
-                            .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
-                            .limit(req.getTopK())
-                            .collect(Collectors.toList());
-
-                    double threshold = req.getScoreThreshold() > 0 ? req.getScoreThreshold() : defaultScoreThreshold;
-
-                    results = results.stream()
-                            .filter(r -> r.getScore() >= threshold)
-                            .collect(Collectors.toList());
+                    results = retrieve(req, queryVec, targetCollections);
 
                     List<Long> chunkIds = results.stream().map(SearchResult::getChunkId).collect(Collectors.toList());
                     chunks = chunkRepo.findAllById(chunkIds);
@@ -2,9 +2,11 @@ package com.ragflow.backend.service;
 
 import com.ragflow.backend.dto.IndexResp;
 import com.ragflow.backend.dto.UploadResp;
+import com.ragflow.backend.embedding.ContentHash;
 import com.ragflow.backend.embedding.EmbeddingClient;
 import com.ragflow.backend.entity.ChunkEntity;
 import com.ragflow.backend.entity.DocumentEntity;
+import com.ragflow.backend.lexical.LexicalStore;
 import com.ragflow.backend.pipeline.ingest.Chunker;
 import com.ragflow.backend.pipeline.ingest.FileParser;
 import com.ragflow.backend.repository.ChunkRepository;
@@ -21,6 +23,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,23 +39,53 @@ public class DocService {
     private final Chunker chunker;
     private final EmbeddingClient embeddingClient;
     private final VectorStore vectorStore;
+    private final LexicalStore lexicalStore;
 
     @Value("${storage.upload-dir:./data/uploads}")
     private String uploadDir;
 
     public DocService(DocumentRepository docRepo, ChunkRepository chunkRepo, FileParser fileParser, Chunker chunker,
-            EmbeddingClient embeddingClient, VectorStore vectorStore) {
+            EmbeddingClient embeddingClient, VectorStore vectorStore, LexicalStore lexicalStore) {
         this.docRepo = docRepo;
         this.chunkRepo = chunkRepo;
         this.fileParser = fileParser;
         this.chunker = chunker;
         this.embeddingClient = embeddingClient;
         this.vectorStore = vectorStore;
+        this.lexicalStore = lexicalStore;
     }
 
     @jakarta.annotation.PostConstruct
     public void init() {
         cleanupDuplicates();
+        backfillLexicalIndex();
+    }
+
+    /** Builds the BM25 index of collections indexed before it existed. */
+    private void backfillLexicalIndex() {
+        try {
+            Map<Long, DocumentEntity> docs = new HashMap<>();
+            for (DocumentEntity doc : docRepo.findAll()) {
+                if (!lexicalStore.contains(doc.getCollection())) {
+                    docs.put(doc.getId(), doc);
+                }
+            }
+            if (docs.isEmpty()) {
+                return;
+            }
+            int count = 0;
+            for (ChunkEntity chunk : chunkRepo.findAll()) {
+                DocumentEntity doc = docs.get(chunk.getDocId());
+                if (doc != null) {
+                    lexicalStore.add(doc.getCollection(), chunk.getId(), doc.getId(), doc.getName(), chunk.getContent());
+                    count++;
+                }
+            }
+            lexicalStore.save();
+            log.info("Built BM25 index for {} existing chunks", count);
+        } catch (Exception e) {
+            log.error("BM25 index backfill failed", e);
+        }
     }
 
     private void cleanupDuplicates() {
@@ -75,6 +108,10 @@ public class DocService {
                     }
                 }
             }
+            if (deletedCount > 0) {
+                vectorStore.save();
+                lexicalStore.save();
+            }
             log.info("Duplicate cleanup finished. Removed {} duplicate documents.", deletedCount);
         } catch (Exception e) {
             log.error("Duplicate cleanup failed", e);
@@ -83,6 +120,8 @@ public class DocService {
 
     private void deleteDocPhysical(DocumentEntity doc) {
         List<ChunkEntity> chunks = chunkRepo.findByDocId(doc.getId());
+        vectorStore.delete(doc.getCollection(), chunkIds(chunks));
+        lexicalStore.delete(doc.getCollection(), chunkIds(chunks));
         chunkRepo.deleteAll(chunks);
         if (doc.getPath() != null && !doc.getPath().isEmpty()) {
             try {
@@ -94,6 +133,10 @@ public class DocService {
         docRepo.delete(doc);
     }
 
+    private static List<Long> chunkIds(List<ChunkEntity> chunks) {
+        return chunks.stream().map(ChunkEntity::getId).toList();
+    }
+
     @Transactional
     public UploadResp upload(MultipartFile file, String collection) throws IOException {
         String originalFilename = file.getOriginalFilename();
@@ -195,8 +238,9 @@ public class DocService {
 
             List<String> chunks = chunker.chunk(text);
 
+            // Vectors of the previous chunking would otherwise keep matching
             List<ChunkEntity> old = chunkRepo.findByDocId(docId);
-            chunkRepo.deleteAll(old);
+            List<VectorStore.Entry> entries = new ArrayList<>();
 
             if (!chunks.isEmpty()) {
                 List<float[]> vectors = embeddingClient.embedBatch(chunks);
@@ -210,7 +254,7 @@ public class DocService {
                     entity.setCollection(doc.getCollection());
                     entity.setChunkIndex(i);
                     entity.setContent(content);
-                    entity.setContentHash(String.valueOf(content.hashCode()));
+                    entity.setContentHash(ContentHash.sha256(content));
 
                     entity = chunkRepo.save(entity);
 
@@ -219,11 +263,18 @@ public class DocService {
                     metadata.put("chunkId", entity.getId());
                     metadata.put("docName", doc.getName());
 
-                    vectorStore.upsert(doc.getCollection(), entity.getId(), vec, metadata);
+                    entries.add(new VectorStore.Entry(entity.getId(), vec, metadata));
+                    lexicalStore.add(doc.getCollection(), entity.getId(), docId, doc.getName(), content);
                 }
             }
 
+            // Searches switch from the old chunks to the new ones in one step
+            vectorStore.replace(doc.getCollection(), chunkIds(old), entries);
+            lexicalStore.delete(doc.getCollection(), chunkIds(old));
+            chunkRepo.deleteAll(old);
+
             vectorStore.save();
+            lexicalStore.save();
 
             doc.setStatus(DocumentEntity.Status.INDEXED);
             docRepo.save(doc);
@@ -319,6 +370,8 @@ public class DocService {
             }
         }
         docRepo.deleteAll(docs);
+        vectorStore.dropCollection(name);
+        lexicalStore.dropCollection(name);
     }
 
     public DocumentEntity getDoc(Long docId) {
@@ -0,0 +1,124 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * 1-bit sign quantization of a {@link FlatIndex}: bit {@code i} of a row is set
+ * when dimension {@code i} of the normalized vector is positive, packed into
+ * {@code ceil(dimension / 64)} longs per row. The Hamming distance between two
+ * codes tracks the angle between the vectors, so a scan XORs the query code
+ * with each row and counts bits with {@link Long#bitCount}: one word per 64
+ * dimensions instead of 256 bytes of floats, i.e. 32x less memory to stream.
+ * The candidates it keeps are re-ranked with exact cosine by the owner.
+ * <p>
+ * Codes are a pure function of the stored vectors, so nothing is persisted:
+ * they are computed when a collection is opened and kept up to date on
+ * upsert. Laid out in segments parallel to the index segments; rows of a
+ * published snapshot are never rewritten.
+ */
+final class BinaryCodes {
+
+    private final int dimension;
+    private final int words;
+    private final int segmentRows;
+    private long[][] segments = new long[0][];
+    private volatile int size;
+
+    BinaryCodes(int dimension, int segmentRows) {
+        this.dimension = dimension;
+        this.words = (dimension + 63) >>> 6;
+        this.segmentRows = segmentRows;
+    }
+
+    /** Encodes rows {@code [0, index.size())}. */
+    static BinaryCodes encode(FlatIndex index) {
+        BinaryCodes codes = new BinaryCodes(index.dimension(), index.segmentRows());
+        float[] row = new float[index.dimension()];
+        int n = index.size();
+        for (int o = 0; o < n; o++) {
+            index.normalizedVector(o, row);
+            codes.set(o, row);
+        }
+        return codes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryBytes() {
+        long bytes = 0;
+        for (long[] s : segments) {
+            bytes += (long) s.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /** Encodes a vector at {@code ordinal}; publishes it if it extends the codes. */
+    void set(int ordinal, float[] vector) {
+        int s = ordinal / segmentRows;
+        if (s >= segments.length) {
+            long[][] grown = Arrays.copyOf(segments, s + 1);
+            grown[s] = new long[Math.min(segmentRows, 1024) * words];
+            segments = grown;
+        }
+        long[] seg = segments[s];
+        int base = (ordinal % segmentRows) * words;
+        if (base + words > seg.length) {
+            int rows = Math.min(segmentRows, Math.max(base / words + 1, seg.length / words * 2));
+            seg = Arrays.copyOf(seg, rows * words);
+            segments[s] = seg;
+        }
+        pack(vector, seg, base);
+        if (ordinal >= size) {
+            size = ordinal + 1;
+        }
+    }
+
+    /** The packed sign bits of a query. */
+    long[] prepare(float[] query) {
+        long[] code = new long[words];
+        pack(query, code, 0);
+        return code;
+    }
+
+    private void pack(float[] v, long[] dst, int offset) {
+        for (int w = 0; w < words; w++) {
+            long bits = 0;
+            int end = Math.min(dimension, (w + 1) << 6);
+            for (int i = w << 6; i < end; i++) {
+                if (v[i] > 0f) {
+                    bits |= 1L << i;
+                }
+            }
+            dst[offset + w] = bits;
+        }
+    }
+
+    /**
+     * Offers the live ordinals of {@code [from, to)} to {@code top} scored by
+     * {@code dimension - 2 * hamming}, which grows with cosine similarity.
+     */
+    void scan(long[] query, int from, int to, long[] deleted, TopK top) {
+        long[][] segs = segments;
+        int w = words;
+        for (int o = from; o < to; ) {
+            int s = o / segmentRows;
+            long[] seg = segs[s];
+            int base = s * segmentRows;
+            int end = Math.min(to, base + segmentRows);
+            for (int r = o - base; r < end - base; r++) {
+                if (deleted != null && Tombstones.contains(deleted, base + r)) {
+                    continue;
+                }
+                int off = r * w;
+                int hamming = 0;
+                for (int i = 0; i < w; i++) {
+                    hamming += Long.bitCount(query[i] ^ seg[off + i]);
+                }
+                top.offer(base + r, dimension - 2 * hamming);
+            }
+            o = end;
+        }
+    }
+}
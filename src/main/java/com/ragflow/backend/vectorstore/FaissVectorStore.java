@@ -1,20 +1,48 @@
 package com.ragflow.backend.vectorstore;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * A "Mock" FAISS implementation using simple in-memory vectors and Cosine
  * Similarity.
  * Persists to local file system to simulate a persistent index.
+ * Each collection is kept in a columnar {@link FlatIndex} (one contiguous
+ * float block plus primitive id/ordinal arrays) so scans stream through memory.
+ * Changes are appended to a per-collection {@link WriteAheadLog} and folded
+ * into the {@code .faiss} file by periodic checkpoints, so {@link #save()} only
+ * has to fsync what changed.
+ * Collections configured with {@code quantization: int8} additionally keep
+ * {@link Int8Codes} on the heap and serve their full-precision rows from the
+ * mapped {@code .faiss} file, which is only touched to rescore candidates.
+ * {@code quantization: binary} does the same with 1-bit sign codes
+ * ({@link BinaryCodes}) and always re-ranks. {@code quantization: float16}
+ * stores the rows themselves as half precision ({@link Float16}), halving
+ * both memory and file size without any calibration; float32 files of such a
+ * collection are converted when it is opened and rewritten on the next checkpoint.
+ * Searches run lock-free on an immutable {@link FlatIndex.Snapshot}, so
+ * indexing a document never blocks or skews a concurrent query, and
+ * {@link #replace} swaps a document's chunks in one published change.
+ * Deletes only tombstone rows; a background compactor rewrites a collection
+ * once its share of dead rows passes {@code vectorstore.compaction.dead-ratio}.
+ * Collections found on disk are only opened on first use; when the loaded ones
+ * exceed {@code vectorstore.memory.budget-bytes}, the least recently used are
+ * checkpointed and dropped from memory until they are needed again.
  * TODO: Replace with actual FAISS JNI bindings or standard vector DB client.
  */
 @Component
@@ -22,107 +50,820 @@ public class FaissVectorStore implements VectorStore {
 
     private static final Logger log = LoggerFactory.getLogger(FaissVectorStore.class);
 
+    /** Fraction of clamped int8 values above which a checkpoint re-calibrates the codes. */
+    private static final double INT8_RETRAIN_CLAMPED_RATIO = 0.01;
+
+    private static final int LOAD_LOCK_STRIPES = 64;
+
+    private final VectorStoreSettings settings;
+
     @Value("${storage.index-dir:./data/index}")
     private String indexDir;
 
-    // Collection -> ChunkId -> Entry
-    private final Map<String, Map<Long, VectorEntry>> indexes = new ConcurrentHashMap<>();
+    @Value("${vectorstore.wal.enabled:true}")
+    private boolean walEnabled = true;
+
+    @Value("${vectorstore.wal.fsync-interval-ms:50}")
+    private long walFsyncIntervalMs = 50;
+
+    @Value("${vectorstore.wal.checkpoint-bytes:67108864}")
+    private long walCheckpointBytes = 64L << 20;
+
+    @Value("${vectorstore.wal.checkpoint-interval-ms:60000}")
+    private long walCheckpointIntervalMs = 60_000;
+
+    @Value("${vectorstore.search.workers:0}")
+    private int searchWorkers = 0;
+
+    @Value("${vectorstore.search.segment-rows:16384}")
+    private int searchSegmentRows = 16384;
+
+    @Value("${vectorstore.search.max-workers-per-query:0}")
+    private int searchMaxWorkersPerQuery = 0;
+
+    @Value("${vectorstore.compaction.dead-ratio:0.2}")
+    private double compactionDeadRatio = 0.2;
+
+    @Value("${vectorstore.compaction.interval-ms:30000}")
+    private long compactionIntervalMs = 30_000;
+
+    @Value("${vectorstore.memory.budget-bytes:0}")
+    private long memoryBudgetBytes = 0;
+
+    private volatile ParallelScanner scanner;
+
+    // Collection -> columnar vector storage
+    private final Map<String, FlatIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Map<String, WriteAheadLog> wals = new ConcurrentHashMap<>();
+
+    // Collections with changes not yet contained in their .faiss file
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    // Collections with files in indexDir that are not loaded (not used yet, or evicted)
+    private final Set<String> onDisk = ConcurrentHashMap.newKeySet();
+
+    // Serializes loading, eviction and dropping per collection. Striped rather than one lock per
+    // collection, so dropped collections leave no lock behind; collections sharing a stripe just
+    // load one after the other.
+    private final Object[] loadLocks = Stream.generate(Object::new).limit(LOAD_LOCK_STRIPES).toArray();
+
+    // Collection -> tick of its last use, for least-recently-used eviction
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ScheduledExecutorService maintenance;
+
+    public FaissVectorStore(VectorStoreSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * A store serving {@code index} as {@code collection} from memory only:
+     * no files, WAL or maintenance tasks. Used to measure a copy of a
+     * collection under other settings; {@link #shutdown()} releases its scan
+     * threads.
+     */
+    static FaissVectorStore detached(VectorStoreSettings settings, String collection, FlatIndex index) {
+        FaissVectorStore store = new FaissVectorStore(settings);
+        store.walEnabled = false;
+        store.indexes.put(collection, index);
+        return store;
+    }
 
     @PostConstruct
     public void init() {
         this.load();
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vectorstore-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        if (walEnabled) {
+            maintenance.scheduleWithFixedDelay(this::syncWals, walFsyncIntervalMs, walFsyncIntervalMs,
+                    TimeUnit.MILLISECONDS);
+            maintenance.scheduleWithFixedDelay(this::checkpointLargeWals, walCheckpointIntervalMs,
+                    walCheckpointIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        maintenance.scheduleWithFixedDelay(this::compactCollections, compactionIntervalMs, compactionIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
+        if (scanner != null) {
+            scanner.close();
+        }
+        for (String collection : new ArrayList<>(dirty)) {
+            checkpoint(collection);
+        }
+        for (WriteAheadLog wal : wals.values()) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                log.warn("Failed to close WAL {}", wal.file(), e);
+            }
+        }
     }
 
     @Override
     public void upsert(String collection, Long chunkId, float[] vector, Map<String, Object> metadata) {
-        indexes.computeIfAbsent(collection, k -> new ConcurrentHashMap<>())
-                .put(chunkId, new VectorEntry(vector, metadata));
-        // Auto-save or periodic save could be implemented, here we rely on manual
-        // save() check or @PreDestroy
-        // For this minimal pipeline, we might want to save immediately or let the
-        // service call save()
+        while (true) {
+            FlatIndex index = acquire(collection, vector.length);
+            if (vector.length != index.dimension()) {
+                throw new IllegalArgumentException("Vector dimension " + vector.length
+                        + " does not match collection dimension " + index.dimension());
+            }
+            synchronized (index) {
+                if (indexes.get(collection) != index) {
+                    continue; // replaced by compaction or dropped meanwhile
+                }
+                if (walEnabled) {
+                    walFor(collection).appendUpsert(chunkId, vector, metadata);
+                }
+                index.upsert(chunkId, vector, metadata);
+                dirty.add(collection);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void delete(String collection, Collection<Long> chunkIds) {
+        replace(collection, chunkIds, List.of());
     }
 
+    /** Logs the whole change to the WAL, then publishes it to searches as one snapshot. */
     @Override
-    public List<SearchResult> search(String collection, float[] queryVector, int topK) {
-        Map<Long, VectorEntry> index = indexes.get(collection);
-        if (index == null || index.isEmpty()) {
+    public void replace(String collection, Collection<Long> deleteIds, List<Entry> entries) {
+        if (deleteIds.isEmpty() && entries.isEmpty()) {
+            return;
+        }
+        while (true) {
+            FlatIndex index = acquire(collection, entries.isEmpty() ? 0 : entries.get(0).vector().length);
+            if (index == null) {
+                return;
+            }
+            for (Entry e : entries) {
+                if (e.vector().length != index.dimension()) {
+                    throw new IllegalArgumentException("Vector dimension " + e.vector().length
+                            + " does not match collection dimension " + index.dimension());
+                }
+            }
+            synchronized (index) {
+                if (indexes.get(collection) != index) {
+                    continue; // replaced by compaction, evicted or dropped meanwhile
+                }
+                boolean changed = !entries.isEmpty();
+                if (walEnabled) {
+                    WriteAheadLog wal = walFor(collection);
+                    for (Long chunkId : deleteIds) {
+                        if (index.contains(chunkId)) {
+                            wal.appendDelete(chunkId);
+                        }
+                    }
+                    for (Entry e : entries) {
+                        wal.appendUpsert(e.chunkId(), e.vector(), e.metadata());
+                    }
+                }
+                if (index.apply(deleteIds, entries) > 0) {
+                    changed = true;
+                }
+                if (changed) {
+                    dirty.add(collection);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void dropCollection(String collection) {
+        WriteAheadLog wal;
+        synchronized (loadLock(collection)) {
+            FlatIndex index = indexes.get(collection);
+            if (index != null) {
+                synchronized (index) {
+                    indexes.remove(collection, index);
+                }
+            }
+            onDisk.remove(collection);
+            lastUsed.remove(collection);
+            dirty.remove(collection);
+            wal = wals.remove(collection);
+        }
+        try {
+            if (wal != null) {
+                wal.close();
+            }
+            for (String suffix : new String[] { ".faiss", ".sq8", ".wal" }) {
+                Files.deleteIfExists(Path.of(indexDir, collection + suffix));
+            }
+            log.info("Dropped collection: {}", collection);
+        } catch (IOException e) {
+            log.error("Failed to delete index files for collection: " + collection, e);
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(String collection, float[] queryVector, int topK, MetadataFilter filter) {
+        FlatIndex index = acquire(collection, 0);
+        if (index == null) {
             return Collections.emptyList();
         }
+        FlatIndex.Snapshot view = index.snapshot();
+        if (view.liveCount() == 0 || queryVector.length != view.dimension()) {
+            return Collections.emptyList();
+        }
+
+        if (filter != null) {
+            // Only the ordinals on the filter's posting lists are scored, exactly
+            OrdinalBitmap matches = index.postings(view).evaluate(filter);
+            TopK top = new TopK(Math.min(topK, matches.cardinality()));
+            view.scan(VectorMath.normalize(queryVector), matches, top);
+            return toResults(view, top);
+        }
 
-        // Brute-force Cosine Similarity
-        // PriorityQueue to keep topK, min-heap by score if we want largest k, actually
-        // simply sort list is easier for small dataset
+        Int8Codes codes = view.int8();
+        if (codes != null) {
+            return searchInt8(collection, view, codes, queryVector, topK);
+        }
+        BinaryCodes bits = view.binary();
+        if (bits != null) {
+            return searchBinary(collection, view, bits, queryVector, topK);
+        }
 
-        return index.entrySet().stream()
-                .map(e -> {
-                    double score = cosineSimilarity(queryVector, e.getValue().vector);
-                    return new SearchResult(e.getKey(), score, e.getValue().metadata);
-                })
-                .sorted((a, b) -> Double.compare(b.getScore(), a.getScore())) // Descending
-                .limit(topK)
-                .collect(Collectors.toList());
+        // Brute-force Cosine Similarity over slices scanned in parallel, each
+        // keeping only its current top-K in a primitive heap
+        float[] query = VectorMath.normalize(queryVector);
+        TopK top = scanner().scan(view.size(), topK, (from, to, local) -> view.scan(query, from, to, local));
+        return toResults(view, top);
     }
 
+    /**
+     * Scans the collection once for all queries: every slice of rows is
+     * scored tile by tile against blocks of queries (see
+     * {@link VectorSegment#scoreTiles}), keeping one top-K per query and
+     * participant. Int8 collections run the queries one by one.
+     */
+    @Override
+    public List<List<SearchResult>> searchBatch(String collection, List<float[]> queryVectors, int topK) {
+        FlatIndex index = acquire(collection, 0);
+        FlatIndex.Snapshot view = index != null ? index.snapshot() : null;
+        if (view == null || view.liveCount() == 0 || view.int8() != null || view.binary() != null
+                || queryVectors.size() <= 1) {
+            return VectorStore.super.searchBatch(collection, queryVectors, topK);
+        }
+        int[] positions = new int[queryVectors.size()];
+        List<float[]> valid = new ArrayList<>();
+        for (int i = 0; i < queryVectors.size(); i++) {
+            float[] q = queryVectors.get(i);
+            positions[i] = q.length == view.dimension() ? valid.size() : -1;
+            if (positions[i] >= 0) {
+                valid.add(VectorMath.normalize(q));
+            }
+        }
+        float[][] queries = valid.toArray(new float[0][]);
+        int n = view.size();
+        int k = Math.min(topK, n);
+        int sliceRows = Math.max(1, searchSegmentRows);
+        int slices = (n + sliceRows - 1) / sliceRows;
+        ParallelScanner scanner = scanner();
+        TopK[][] partials = new TopK[scanner.participants(slices)][queries.length];
+        for (TopK[] tops : partials) {
+            for (int q = 0; q < queries.length; q++) {
+                tops[q] = new TopK(k);
+            }
+        }
+        scanner.forEach(slices, (participant, slice) -> {
+            int from = slice * sliceRows;
+            view.scanBatch(queries, from, Math.min(n, from + sliceRows), partials[participant]);
+        });
+
+        List<List<SearchResult>> results = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            if (position < 0) {
+                results.add(Collections.emptyList());
+                continue;
+            }
+            TopK top = partials[0][position];
+            for (int p = 1; p < partials.length; p++) {
+                top.offerAll(partials[p][position]);
+            }
+            results.add(toResults(view, top));
+        }
+        return results;
+    }
+
+    private ParallelScanner scanner() {
+        ParallelScanner s = scanner;
+        if (s == null) {
+            synchronized (this) {
+                if (scanner == null) {
+                    int workers = searchWorkers > 0 ? searchWorkers : Runtime.getRuntime().availableProcessors();
+                    scanner = new ParallelScanner(workers, searchSegmentRows, searchMaxWorkersPerQuery);
+                }
+                s = scanner;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Scans the int8 codes for {@code topK * rescoreFactor} candidates and
+     * re-ranks them with exact cosine on the full-precision rows. Rows appended
+     * after the codes were last extended are scored exactly.
+     */
+    private List<SearchResult> searchInt8(String collection, FlatIndex.Snapshot index, Int8Codes codes,
+            float[] queryVector, int topK) {
+        int size = index.size();
+        int encoded = Math.min(codes.size(), size);
+        float[] query = VectorMath.normalize(queryVector);
+        int rescoreFactor = settings.int8RescoreFactor(collection);
+        int k = Math.min(topK, size);
+        Int8Codes.Query prepared = codes.prepare(query);
+        long[] dead = index.tombstones();
+        float[] scratch = new float[index.dimension()];
+        TopK top;
+        if (rescoreFactor <= 0) {
+            top = new TopK(k);
+            top.offerAll(scanner().scan(encoded, k, (from, to, local) -> codes.scan(prepared, from, to, dead, local)));
+        } else {
+            int candidateCount = (int) Math.max(1, Math.min((long) k * rescoreFactor, encoded));
+            TopK candidates = scanner().scan(encoded, candidateCount,
+                    (from, to, local) -> codes.scan(prepared, from, to, dead, local));
+            top = new TopK(k);
+            int n = candidates.drain();
+            for (int i = 0; i < n; i++) {
+                int ordinal = candidates.ordinalAt(i);
+                top.offer(ordinal, index.score(query, ordinal, scratch));
+            }
+        }
+        for (int ordinal = encoded; ordinal < size; ordinal++) {
+            if (index.isLive(ordinal)) {
+                top.offer(ordinal, index.score(query, ordinal, scratch));
+            }
+        }
+        return toResults(index, top);
+    }
+
+    /**
+     * Hamming-distance scan over the sign codes for {@code topK * rerankFactor}
+     * candidates, re-ranked with exact cosine on the full-precision rows.
+     */
+    private List<SearchResult> searchBinary(String collection, FlatIndex.Snapshot index, BinaryCodes codes,
+            float[] queryVector, int topK) {
+        int size = index.size();
+        int encoded = Math.min(codes.size(), size);
+        float[] query = VectorMath.normalize(queryVector);
+        long[] prepared = codes.prepare(query);
+        long[] dead = index.tombstones();
+        int k = Math.min(topK, size);
+        int candidateCount = (int) Math.max(1,
+                Math.min((long) k * settings.binaryRerankFactor(collection), encoded));
+        TopK candidates = scanner().scan(encoded, candidateCount,
+                (from, to, local) -> codes.scan(prepared, from, to, dead, local));
+        TopK top = new TopK(k);
+        float[] scratch = new float[index.dimension()];
+        int n = candidates.drain();
+        for (int i = 0; i < n; i++) {
+            int ordinal = candidates.ordinalAt(i);
+            top.offer(ordinal, index.score(query, ordinal, scratch));
+        }
+        for (int ordinal = encoded; ordinal < size; ordinal++) {
+            if (index.isLive(ordinal)) {
+                top.offer(ordinal, index.score(query, ordinal, scratch));
+            }
+        }
+        return toResults(index, top);
+    }
+
+    private FlatIndex newIndex(String collection, int dimension) {
+        Quantization quantization = settings.quantization(collection);
+        FlatIndex index = new FlatIndex(dimension, FlatIndex.DEFAULT_SEGMENT_ROWS, 16,
+                quantization == Quantization.FLOAT16);
+        if (quantization == Quantization.INT8) {
+            index.enableInt8(null);
+        } else if (quantization == Quantization.BINARY) {
+            index.enableBinary();
+        }
+        return index;
+    }
+
+    private static List<SearchResult> toResults(FlatIndex.Snapshot index, TopK top) {
+        int n = top.drain();
+        List<SearchResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int ordinal = top.ordinalAt(i);
+            results.add(new SearchResult(index.id(ordinal), top.scoreAt(i), index.metadata(ordinal)));
+        }
+        return results;
+    }
+
+    /** Loaded collections and those still only on disk. */
+    Set<String> collections() {
+        Set<String> all = new HashSet<>(indexes.keySet());
+        all.addAll(onDisk);
+        return all;
+    }
+
+    void forEach(String collection, EntryVisitor visitor) {
+        FlatIndex index = acquire(collection, 0);
+        if (index == null) {
+            return;
+        }
+        FlatIndex.Snapshot view = index.snapshot();
+        int size = view.size();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (!view.isLive(ordinal)) {
+                continue;
+            }
+            visitor.visit(view.id(ordinal), view.vector(ordinal), view.metadata(ordinal));
+        }
+    }
+
+    /**
+     * Makes all upserts so far durable. With the WAL enabled this is an fsync
+     * of the logs (plus a checkpoint of collections whose log has grown past
+     * {@code vectorstore.wal.checkpoint-bytes}); without it, every changed
+     * collection is rewritten.
+     */
     @Override
     public synchronized void save() {
-        File dir = new File(indexDir);
-        if (!dir.exists())
-            dir.mkdirs();
+        if (!walEnabled) {
+            for (String collection : new ArrayList<>(dirty)) {
+                checkpoint(collection);
+            }
+        } else {
+            syncWals();
+            checkpointLargeWals();
+        }
+        enforceBudget(null);
+    }
 
-        for (Map.Entry<String, Map<Long, VectorEntry>> entry : indexes.entrySet()) {
-            String collection = entry.getKey();
-            File file = new File(dir, collection + ".faiss");
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                oos.writeObject(entry.getValue());
+    /**
+     * Writes the collection's .faiss file and drops the WAL records it now
+     * contains. The file has no tombstones, so deleted rows are compacted away
+     * first.
+     */
+    private void checkpoint(String collection) {
+        File file = new File(indexDir, collection + ".faiss");
+        while (true) {
+            FlatIndex index = indexes.get(collection);
+            if (index == null) {
+                return;
+            }
+            try {
+                synchronized (index) {
+                    if (indexes.get(collection) != index) {
+                        continue; // replaced by a concurrent compaction
+                    }
+                    file.getParentFile().mkdirs();
+                    if (index.deadCount() > 0) {
+                        int dead = index.deadCount();
+                        FlatIndex compacted = index.compact();
+                        // Hold the new instance too, so no upsert lands in it before the WAL is truncated
+                        synchronized (compacted) {
+                            indexes.put(collection, compacted);
+                            writeCheckpoint(collection, compacted, file);
+                        }
+                        log.info("Compacted {} deleted vectors from collection: {}", dead, collection);
+                    } else {
+                        writeCheckpoint(collection, index, file);
+                    }
+                }
                 log.info("Saved index for collection: {} to {}", collection, file.getAbsolutePath());
             } catch (IOException e) {
                 log.error("Failed to save index for collection: " + collection, e);
             }
+            return;
         }
     }
 
+    private void writeCheckpoint(String collection, FlatIndex index, File file) throws IOException {
+        FlatIndexFile.write(index, file.toPath());
+        if (index.int8() != null) {
+            if (index.int8().clampedRatio() > INT8_RETRAIN_CLAMPED_RATIO) {
+                index.retrainInt8();
+            }
+            index.int8().write(Path.of(indexDir, collection + ".sq8"));
+        }
+        if (index.int8() != null || index.binary() != null || index.float16()) {
+            // Keep only the codes on the heap; every segment, the tail included, is read from the file.
+            index.adoptMapped(FlatIndexFile.open(file.toPath(), index.segmentRows()));
+        }
+        WriteAheadLog wal = wals.get(collection);
+        if (wal != null) {
+            wal.truncate();
+        }
+        dirty.remove(collection);
+    }
+
+    /** Rewrites collections whose share of deleted rows passed the configured threshold. */
+    private synchronized void compactCollections() {
+        for (Map.Entry<String, FlatIndex> e : indexes.entrySet()) {
+            if (e.getValue().deadCount() > 0 && e.getValue().deadRatio() >= compactionDeadRatio) {
+                checkpoint(e.getKey());
+            }
+        }
+    }
+
+    private void syncWals() {
+        for (WriteAheadLog wal : wals.values()) {
+            try {
+                wal.sync();
+            } catch (IOException e) {
+                log.error("Failed to sync WAL {}", wal.file(), e);
+            }
+        }
+    }
+
+    private synchronized void checkpointLargeWals() {
+        for (Map.Entry<String, WriteAheadLog> e : wals.entrySet()) {
+            if (e.getValue().sizeBytes() >= walCheckpointBytes) {
+                checkpoint(e.getKey());
+            }
+        }
+    }
+
+    private WriteAheadLog walFor(String collection) {
+        return wals.computeIfAbsent(collection, c -> new WriteAheadLog(Path.of(indexDir, c + ".wal")));
+    }
+
+    /**
+     * Registers the collections found in {@code indexDir}; each one is read
+     * from its {@code .faiss} file and WAL on first use (see {@link #acquire}).
+     */
     @Override
-    @SuppressWarnings("unchecked")
     public synchronized void load() {
         File dir = new File(indexDir);
         if (!dir.exists())
             return;
 
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".faiss"));
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".faiss") || name.endsWith(".wal"));
         if (files == null)
             return;
 
         for (File file : files) {
             String filename = file.getName();
             String collection = filename.substring(0, filename.lastIndexOf("."));
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                Map<Long, VectorEntry> data = (Map<Long, VectorEntry>) ois.readObject();
-                indexes.put(collection, new ConcurrentHashMap<>(data));
-                log.info("Loaded index for collection: {} with {} items", collection, data.size());
+            if (!indexes.containsKey(collection) && onDisk.add(collection)) {
+                log.debug("Found index files for collection: {}", collection);
+            }
+        }
+        log.info("Found {} collections in {}; loading them on first use", onDisk.size(), dir.getAbsolutePath());
+    }
+
+    /**
+     * Returns the loaded index of the collection, reading it from disk on
+     * first use. With a positive {@code createDimension} a collection that
+     * does not exist yet is created empty; otherwise null is returned.
+     */
+    private FlatIndex acquire(String collection, int createDimension) {
+        FlatIndex index = indexes.get(collection);
+        if (index != null) {
+            hits.incrementAndGet();
+            lastUsed.put(collection, clock.incrementAndGet());
+            return index;
+        }
+        boolean loaded = false;
+        synchronized (loadLock(collection)) {
+            index = indexes.get(collection);
+            if (index != null) {
+                hits.incrementAndGet();
+            } else {
+                if (onDisk.remove(collection)) {
+                    misses.incrementAndGet();
+                    index = readCollection(collection);
+                    loaded = true;
+                }
+                if (index == null && createDimension > 0) {
+                    index = newIndex(collection, createDimension);
+                }
+                if (index != null) {
+                    indexes.put(collection, index);
+                }
+            }
+            if (index != null) {
+                lastUsed.put(collection, clock.incrementAndGet());
+            }
+        }
+        if (loaded) {
+            enforceBudget(collection);
+        }
+        return index;
+    }
+
+    private Object loadLock(String collection) {
+        return loadLocks[Math.floorMod(collection.hashCode(), loadLocks.length)];
+    }
+
+    /** Opens the collection's .faiss file, if any, and replays its WAL on top. */
+    private FlatIndex readCollection(String collection) {
+        File file = new File(indexDir, collection + ".faiss");
+        FlatIndex[] index = new FlatIndex[1];
+        if (file.exists()) {
+            try {
+                boolean legacy = FlatIndexFile.isLegacy(file.toPath());
+                boolean rewrite = FlatIndexFile.needsRewrite(file.toPath());
+                index[0] = legacy
+                        ? readLegacy(file)
+                        : FlatIndexFile.open(file.toPath(), FlatIndex.DEFAULT_SEGMENT_ROWS);
+                if (index[0] != null) {
+                    // Before the WAL replay, so replayed overwrites also refresh their codes
+                    Quantization quantization = settings.quantization(collection);
+                    if (quantization == Quantization.INT8) {
+                        enableInt8(collection, index[0]);
+                    } else if (quantization == Quantization.BINARY) {
+                        index[0].enableBinary();
+                    } else if (quantization == Quantization.FLOAT16 && !index[0].float16()) {
+                        index[0].convertToFloat16();
+                        rewrite = true;
+                    }
+                    if (rewrite) {
+                        dirty.add(collection);
+                    }
+                }
+                log.info("Loaded index for collection: {} with {} items", collection,
+                        index[0] != null ? index[0].size() : 0);
             } catch (Exception e) {
                 log.error("Failed to load index from " + file.getAbsolutePath(), e);
             }
         }
+
+        File walFile = new File(indexDir, collection + ".wal");
+        if (walFile.exists()) {
+            try {
+                int replayed = WriteAheadLog.replay(walFile.toPath(), new WriteAheadLog.Replayer() {
+                    @Override
+                    public void upsert(long chunkId, float[] vector, Map<String, Object> metadata) {
+                        if (index[0] == null) {
+                            index[0] = newIndex(collection, vector.length);
+                        }
+                        index[0].upsert(chunkId, vector, metadata);
+                    }
+
+                    @Override
+                    public void delete(long chunkId) {
+                        if (index[0] != null) {
+                            index[0].delete(chunkId);
+                        }
+                    }
+                });
+                if (replayed > 0) {
+                    // Track the log so the next checkpoint truncates it
+                    walFor(collection);
+                    dirty.add(collection);
+                    log.info("Replayed {} WAL records for collection: {}", replayed, collection);
+                }
+            } catch (Exception e) {
+                log.error("Failed to replay WAL " + walFile.getAbsolutePath(), e);
+            }
+        }
+        return index[0];
     }
 
-    private double cosineSimilarity(float[] v1, float[] v2) {
-        if (v1.length != v2.length)
-            return 0.0;
-        double dot = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-        for (int i = 0; i < v1.length; i++) {
-            dot += v1[i] * v2[i];
-            norm1 += v1[i] * v1[i];
-            norm2 += v2[i] * v2[i];
+    /**
+     * Evicts least recently used collections until the loaded ones fit in
+     * {@code vectorstore.memory.budget-bytes}. The most recently used
+     * collection and {@code keep} always stay loaded.
+     */
+    private synchronized void enforceBudget(String keep) {
+        if (memoryBudgetBytes <= 0) {
+            return;
+        }
+        long used = residentBytes();
+        if (used <= memoryBudgetBytes) {
+            return;
         }
-        if (norm1 == 0 || norm2 == 0)
-            return 0.0;
-        return dot / (Math.sqrt(norm1) * Math.sqrt(norm2));
+        List<String> candidates = new ArrayList<>(indexes.keySet());
+        candidates.sort(Comparator.comparingLong(c -> lastUsed.getOrDefault(c, 0L)));
+        candidates.remove(candidates.size() - 1);
+        candidates.remove(keep);
+        for (String collection : candidates) {
+            if (used <= memoryBudgetBytes) {
+                break;
+            }
+            FlatIndex index = indexes.get(collection);
+            long bytes = index != null ? index.memoryBytes() : 0;
+            if (evict(collection)) {
+                used -= bytes;
+            }
+        }
+    }
+
+    /**
+     * Checkpoints the collection if needed and drops it from memory; the next
+     * use reads it back. Returns false if it could not be written or was
+     * changed meanwhile.
+     */
+    private boolean evict(String collection) {
+        synchronized (loadLock(collection)) {
+            if (dirty.contains(collection)) {
+                checkpoint(collection);
+            }
+            FlatIndex index = indexes.get(collection);
+            if (index == null) {
+                return false;
+            }
+            synchronized (index) {
+                if (indexes.get(collection) != index || dirty.contains(collection)) {
+                    return false;
+                }
+                indexes.remove(collection);
+                lastUsed.remove(collection);
+                onDisk.add(collection);
+                WriteAheadLog wal = wals.remove(collection);
+                if (wal != null) {
+                    try {
+                        wal.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close WAL {}", wal.file(), e);
+                    }
+                }
+            }
+        }
+        evictions.incrementAndGet();
+        log.info("Evicted collection: {} from memory", collection);
+        return true;
+    }
+
+    private long residentBytes() {
+        long bytes = 0;
+        for (FlatIndex index : indexes.values()) {
+            bytes += index.memoryBytes();
+        }
+        return bytes;
+    }
+
+    /** Collection cache counters: loaded vs on-disk collections, footprint, hits, misses and evictions. */
+    public Map<String, Object> memoryStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loadedCollections", indexes.size());
+        stats.put("unloadedCollections", onDisk.size());
+        stats.put("residentBytes", residentBytes());
+        stats.put("budgetBytes", memoryBudgetBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    /** Reuses the persisted codes when they match the index, otherwise calibrates anew. */
+    private void enableInt8(String collection, FlatIndex index) {
+        Path file = Path.of(indexDir, collection + ".sq8");
+        Int8Codes codes = null;
+        if (file.toFile().exists()) {
+            try {
+                codes = Int8Codes.read(file, index.dimension(), index.segmentRows());
+                if (codes.size() > index.size()) {
+                    codes = null;
+                }
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable int8 codes {}", file, e);
+            }
+        }
+        index.enableInt8(codes);
+        if (index.int8() != null) {
+            log.info("Int8 codes for collection: {} use {} bytes for {} vectors", collection,
+                    index.int8().memoryBytes(), index.int8().size());
+        }
+    }
+
+    /**
+     * Reads a .faiss file written with Java serialization by earlier versions.
+     * It is rewritten in the binary format on the next save.
+     */
+    @SuppressWarnings("unchecked")
+    private static FlatIndex readLegacy(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Map<Long, VectorEntry> data = (Map<Long, VectorEntry>) ois.readObject();
+            FlatIndex index = null;
+            for (Map.Entry<Long, VectorEntry> e : data.entrySet()) {
+                if (index == null) {
+                    index = new FlatIndex(e.getValue().vector.length, FlatIndex.DEFAULT_SEGMENT_ROWS, data.size());
+                }
+                index.upsert(e.getKey(), e.getValue().vector, e.getValue().metadata);
+            }
+            log.info("Converted legacy serialized index {}", file.getName());
+            return index;
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(Long chunkId, float[] vector, Map<String, Object> metadata);
     }
 
-    // Serializable wrapper
+    // Serializable wrapper of the legacy (pre-binary) file format; kept unchanged
+    // so old files still deserialize.
     private static class VectorEntry implements Serializable {
         float[] vector;
         Map<String, Object> metadata;
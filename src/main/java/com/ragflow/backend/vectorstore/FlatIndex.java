@@ -0,0 +1,639 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar storage for the vectors of one collection. Vectors are addressed by
+ * a dense ordinal and stored row-major in fixed-size {@link VectorSegment}s
+ * (ordinal {@code o} lives in segment {@code o / segmentRows}); chunk ids sit
+ * in a parallel {@code long[]} and a primitive id map resolves chunk ids to
+ * ordinals. Vectors are normalized on upsert, so a scan is one dot product
+ * per row; it walks memory sequentially and costs about
+ * {@code dimension * 4} bytes per vector, or {@code dimension * 2} for an
+ * index storing float16 rows (see {@link Float16}).
+ * <p>
+ * Segments loaded from disk are memory-mapped and their metadata is decoded
+ * lazily from the file (see {@link FlatIndexFile}), so opening a large index
+ * does not rebuild per-vector objects.
+ * <p>
+ * Deleted rows are only marked in a tombstone bitmap that scans skip;
+ * {@link #compact()} copies the live rows into a fresh index. Filtered scans
+ * only score the ordinals of the {@link MetadataPostings}, which are built on
+ * first use and then published with every snapshot.
+ * <p>
+ * Writers are serialized on the instance and readers take no lock. Searches
+ * work on a {@link Snapshot}: an immutable view of the rows, ids, metadata and
+ * tombstones as of one write. A published row is never changed in place
+ * (overwriting a chunk tombstones its row and appends a new one), new rows go
+ * past the published size, and the tombstone bitmap and the touched posting
+ * lists are copied once per published change, so a snapshot keeps returning
+ * the same results, filtered or not, while
+ * writes continue. {@link #apply} publishes a whole batch of changes at once.
+ * The accessors on the index itself return the writer's current state and are
+ * meant for callers holding the lock.
+ */
+final class FlatIndex {
+
+    /** Upper bound for rows per segment; also capped so one segment stays under 1 GB. */
+    static final int DEFAULT_SEGMENT_ROWS = 1 << 16;
+
+    private final int dimension;
+    private final int segmentRows;
+    // Whether new rows are stored as float16; only changes while the index is being opened
+    private boolean float16;
+    private final LongIntHashMap idToOrdinal;
+    private VectorSegment[] segments = new VectorSegment[0];
+    private long[] ids;
+    private Object[] metadata;
+    private volatile FlatIndexFile.MetadataBlock baseMetadata;
+    private boolean int8Enabled;
+    private volatile Int8Codes int8;
+    private volatile BinaryCodes binary;
+    private long[] tombstones;
+    // Whether the tombstone array is referenced by the published snapshot
+    private boolean tombstonesShared;
+    private int deadCount;
+    // Built on the first filtered search; after that changed copy-on-write like the tombstones
+    private MetadataPostings postings;
+    private boolean postingsShared;
+    private int size;
+    private volatile Snapshot snapshot;
+
+    FlatIndex(int dimension) {
+        this(dimension, DEFAULT_SEGMENT_ROWS, 16);
+    }
+
+    FlatIndex(int dimension, int segmentRows, int initialCapacity) {
+        this(dimension, segmentRows, initialCapacity, false);
+    }
+
+    FlatIndex(int dimension, int segmentRows, int initialCapacity, boolean float16) {
+        this(dimension, segmentRows, new long[Math.max(16, initialCapacity)], 0, new VectorSegment[0], null,
+                float16);
+    }
+
+    /** Wraps already materialized storage, e.g. segments mapped from an index file. */
+    FlatIndex(int dimension, int segmentRows, long[] ids, int size, VectorSegment[] segments,
+            FlatIndexFile.MetadataBlock baseMetadata, boolean float16) {
+        this.dimension = dimension;
+        this.segmentRows = segmentRowsFor(dimension, segmentRows);
+        this.float16 = float16;
+        this.ids = ids;
+        this.metadata = new Object[ids.length];
+        this.segments = segments;
+        this.baseMetadata = baseMetadata;
+        this.idToOrdinal = new LongIntHashMap(size);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            idToOrdinal.put(ids[ordinal], ordinal);
+        }
+        this.size = size;
+        publish();
+    }
+
+    /**
+     * Immutable view of the index as of one published change. Ordinals below
+     * {@link #size()} keep their row, id and metadata for the lifetime of the
+     * snapshot.
+     */
+    static final class Snapshot {
+        final long epoch;
+        private final int dimension;
+        private final int segmentRows;
+        private final int size;
+        private final int deadCount;
+        private final VectorSegment[] segments;
+        private final long[] ids;
+        private final Object[] metadata;
+        private final FlatIndexFile.MetadataBlock baseMetadata;
+        private final long[] tombstones;
+        private final Int8Codes int8;
+        private final BinaryCodes binary;
+        private final MetadataPostings postings;
+
+        private Snapshot(long epoch, FlatIndex index) {
+            this.epoch = epoch;
+            this.dimension = index.dimension;
+            this.segmentRows = index.segmentRows;
+            this.size = index.size;
+            this.deadCount = index.deadCount;
+            this.segments = index.segments;
+            this.ids = index.ids;
+            this.metadata = index.metadata;
+            this.baseMetadata = index.baseMetadata;
+            this.tombstones = index.tombstones;
+            this.int8 = index.int8;
+            this.binary = index.binary;
+            this.postings = index.postings;
+        }
+
+        int dimension() {
+            return dimension;
+        }
+
+        /** Number of ordinals in use, including deleted ones. */
+        int size() {
+            return size;
+        }
+
+        int liveCount() {
+            return size - deadCount;
+        }
+
+        /** Bitmap of deleted ordinals, or null if nothing was deleted. */
+        long[] tombstones() {
+            return tombstones;
+        }
+
+        Int8Codes int8() {
+            return int8;
+        }
+
+        BinaryCodes binary() {
+            return binary;
+        }
+
+        boolean isLive(int ordinal) {
+            return tombstones == null || !Tombstones.contains(tombstones, ordinal);
+        }
+
+        long id(int ordinal) {
+            return ids[ordinal];
+        }
+
+        Map<String, Object> metadata(int ordinal) {
+            return FlatIndex.metadata(metadata, baseMetadata, ordinal);
+        }
+
+        /** Copy of the stored (unit-length) vector. */
+        float[] vector(int ordinal) {
+            float[] v = new float[dimension];
+            segments[ordinal / segmentRows].get(ordinal % segmentRows, v, 0);
+            return v;
+        }
+
+        /** Exact cosine similarity of one stored row with a unit-length query. */
+        float score(float[] normalizedQuery, int ordinal, float[] scratch) {
+            segments[ordinal / segmentRows].get(ordinal % segmentRows, scratch, 0);
+            return VectorMath.dot(normalizedQuery, 0, scratch, 0, dimension);
+        }
+
+        /** Scores live ordinals {@code [from, to)} against a unit-length query; safe to call from several threads. */
+        void scan(float[] normalizedQuery, int from, int to, TopK top) {
+            for (int o = from; o < to; ) {
+                int s = o / segmentRows;
+                int base = s * segmentRows;
+                int end = Math.min(to, base + segmentRows);
+                segments[s].scan(normalizedQuery, o - base, end - base, base, tombstones, top);
+                o = end;
+            }
+        }
+
+        /** Scores the live ordinals in {@code matches} against a unit-length query. */
+        void scan(float[] normalizedQuery, OrdinalBitmap matches, TopK top) {
+            float[] scratch = new float[dimension];
+            matches.forEach(ordinal -> {
+                if (ordinal < size && isLive(ordinal)) {
+                    top.offer(ordinal, score(normalizedQuery, ordinal, scratch));
+                }
+            });
+        }
+
+        /** Scores live ordinals {@code [from, to)} against every unit-length query, one top-K per query. */
+        void scanBatch(float[][] normalizedQueries, int from, int to, TopK[] tops) {
+            for (int o = from; o < to; ) {
+                int s = o / segmentRows;
+                int base = s * segmentRows;
+                int end = Math.min(to, base + segmentRows);
+                segments[s].scanBatch(normalizedQueries, o - base, end - base, base, tombstones, tops);
+                o = end;
+            }
+        }
+    }
+
+    /** The latest published view; readers should take it once and use it for the whole search. */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Makes everything written so far visible to new readers. Called with the lock held. */
+    private void publish() {
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(previous == null ? 0 : previous.epoch + 1, this);
+        tombstonesShared = true;
+        postingsShared = true;
+    }
+
+    static int segmentRowsFor(int dimension, int requested) {
+        int maxRows = Integer.highestOneBit(Math.max(1, (1 << 30) / Math.max(1, dimension * Float.BYTES)));
+        return Math.max(1, Math.min(requested, maxRows));
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int segmentRows() {
+        return segmentRows;
+    }
+
+    /** Whether rows are stored (and persisted) as float16. */
+    boolean float16() {
+        return float16;
+    }
+
+    /** Number of ordinals in use, including deleted ones. */
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return snapshot.liveCount();
+    }
+
+    int deadCount() {
+        return snapshot.deadCount;
+    }
+
+    double deadRatio() {
+        Snapshot s = snapshot;
+        return s.size == 0 ? 0.0 : s.deadCount / (double) s.size;
+    }
+
+    /**
+     * Approximate memory held by this index: the vector rows, int8 or binary
+     * codes, chunk ids and the id map. Metadata maps are not counted. With
+     * codes, searches scan the codes and read the float rows of only a few
+     * candidates, so mapped rows are left to the page cache and only rows on
+     * the heap are counted; without codes every scan pages in all rows.
+     */
+    long memoryBytes() {
+        long bytes = 0;
+        Snapshot s = snapshot;
+        boolean codes = s.int8 != null || s.binary != null;
+        for (VectorSegment segment : s.segments) {
+            bytes += codes ? segment.heapBytes() : segment.memoryBytes();
+        }
+        if (s.int8 != null) {
+            bytes += s.int8.memoryBytes();
+        }
+        if (s.binary != null) {
+            bytes += s.binary.memoryBytes();
+        }
+        // ids and metadata references per slot, plus roughly 16 bytes per id map entry
+        return bytes + (long) s.ids.length * (Long.BYTES + 8) + (long) s.size * 16;
+    }
+
+    /** Bitmap of deleted ordinals, or null if nothing was deleted. */
+    long[] tombstones() {
+        return tombstones;
+    }
+
+    boolean isLive(int ordinal) {
+        return tombstones == null || !Tombstones.contains(tombstones, ordinal);
+    }
+
+    boolean contains(long id) {
+        return idToOrdinal.get(id) != LongIntHashMap.MISSING;
+    }
+
+    long id(int ordinal) {
+        return ids[ordinal];
+    }
+
+    Map<String, Object> metadata(int ordinal) {
+        return metadata(metadata, baseMetadata, ordinal);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> metadata(Object[] heap, FlatIndexFile.MetadataBlock base, int ordinal) {
+        Object m = heap[ordinal];
+        if (m == null && base != null && ordinal < base.count()) {
+            return base.get(ordinal);
+        }
+        return (Map<String, Object>) m;
+    }
+
+    /** Raw encoded metadata still served from the mapped file, or null if it lives on the heap. */
+    java.nio.ByteBuffer rawBaseMetadata(int ordinal) {
+        if (metadata[ordinal] == null && baseMetadata != null && ordinal < baseMetadata.count()) {
+            return baseMetadata.raw(ordinal);
+        }
+        return null;
+    }
+
+    /** Copy of the stored (unit-length) vector. */
+    float[] vector(int ordinal) {
+        float[] v = new float[dimension];
+        segments[ordinal / segmentRows].get(ordinal % segmentRows, v, 0);
+        return v;
+    }
+
+    void normalizedVector(int ordinal, float[] dst) {
+        segments[ordinal / segmentRows].get(ordinal % segmentRows, dst, 0);
+    }
+
+    /**
+     * Normalizes rows written by versions that stored raw vectors. Mapped rows
+     * are rewritten in their private mapping; the file itself is untouched.
+     * Only used while the index is being opened, before any reader sees it.
+     */
+    synchronized void normalizeAll() {
+        float[] row = new float[dimension];
+        for (int o = 0; o < size; o++) {
+            VectorSegment segment = segments[o / segmentRows];
+            segment.get(o % segmentRows, row, 0);
+            VectorMath.normalizeInto(row.clone(), row, 0);
+            segment.set(o % segmentRows, row);
+        }
+    }
+
+    /**
+     * Re-encodes every row as float16, e.g. for a collection switched to
+     * {@code quantization: float16} whose file still holds float32 rows.
+     * Like {@link #normalizeAll()}, only used while the index is being opened.
+     */
+    synchronized void convertToFloat16() {
+        if (float16) {
+            return;
+        }
+        float16 = true;
+        VectorSegment[] converted = new VectorSegment[segments.length];
+        float[] row = new float[dimension];
+        for (int s = 0; s < segments.length; s++) {
+            int rows = Math.min(segmentRows, size - s * segmentRows);
+            VectorSegment half = new VectorSegment.Half(dimension, segmentRows, Math.max(16, rows));
+            for (int r = 0; r < rows; r++) {
+                segments[s].get(r, row, 0);
+                half.set(r, row);
+            }
+            converted[s] = half;
+        }
+        segments = converted;
+        publish();
+    }
+
+    /** Int8 codes kept alongside the floats, or null when the collection is not quantized. */
+    Int8Codes int8() {
+        return int8;
+    }
+
+    /**
+     * Turns on int8 quantization, reusing previously persisted codes when
+     * given. Rows not yet covered by the codes are encoded; without codes the
+     * quantizer is calibrated once {@link Int8Codes#MIN_TRAINING_ROWS} rows exist.
+     */
+    synchronized void enableInt8(Int8Codes codes) {
+        int8Enabled = true;
+        if (codes != null) {
+            float[] row = new float[dimension];
+            for (int o = codes.size(); o < size; o++) {
+                normalizedVector(o, row);
+                codes.set(o, row);
+            }
+            int8 = codes;
+        } else if (size >= Int8Codes.MIN_TRAINING_ROWS) {
+            int8 = Int8Codes.train(this);
+        }
+        publish();
+    }
+
+    /** Sign-bit codes kept alongside the floats, or null when the collection does not use them. */
+    BinaryCodes binary() {
+        return binary;
+    }
+
+    /** Turns on 1-bit sign codes, encoding every row stored so far. */
+    synchronized void enableBinary() {
+        binary = BinaryCodes.encode(this);
+        publish();
+    }
+
+    /** Re-calibrates the int8 codes from the current vectors; readers keep the old codes until the swap. */
+    synchronized void retrainInt8() {
+        if (int8Enabled && size > 0) {
+            int8 = Int8Codes.train(this);
+            publish();
+        }
+    }
+
+    /**
+     * After a checkpoint, serves every segment, the partially filled tail
+     * included, (and the metadata of all rows) from the freshly written and
+     * mapped file instead of the heap. Later appends grow the tail on the
+     * heap behind its mapped rows (see {@link #writableSegment}).
+     */
+    synchronized void adoptMapped(FlatIndex mapped) {
+        if (mapped.size != size || mapped.dimension != dimension || mapped.segmentRows != segmentRows
+                || mapped.segments.length != segments.length) {
+            return;
+        }
+        segments = mapped.segments.clone();
+        baseMetadata = mapped.baseMetadata;
+        // A fresh array, since published snapshots still read the old one
+        metadata = new Object[metadata.length];
+        publish();
+    }
+
+    VectorSegment[] segments() {
+        return segments;
+    }
+
+    /**
+     * Posting lists over the metadata of the given snapshot. The first call
+     * builds them for the latest snapshot and republishes it with them, so
+     * later writes keep them current; a view taken before that gets lists
+     * built for it alone.
+     */
+    MetadataPostings postings(Snapshot view) {
+        if (view.postings != null) {
+            return view.postings;
+        }
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (current.postings == null) {
+                postings = MetadataPostings.build(current.size, current::isLive, current::metadata);
+                postingsShared = true;
+                snapshot = new Snapshot(current.epoch, this);
+            }
+            if (current.epoch == view.epoch) {
+                return snapshot.postings;
+            }
+        }
+        return MetadataPostings.build(view.size, view::isLive, view::metadata);
+    }
+
+    /** The writer's posting lists, copied off the published ones before the first change; null if not built. */
+    private MetadataPostings writablePostings() {
+        if (postings != null && postingsShared) {
+            postings = postings.copyOnWrite();
+            postingsShared = false;
+        }
+        return postings;
+    }
+
+    synchronized void upsert(long id, float[] raw, Map<String, Object> meta) {
+        checkDimension(raw);
+        upsertUnpublished(id, raw, meta);
+        publish();
+    }
+
+    /**
+     * Deletes {@code deleteIds} and then upserts {@code entries} as one
+     * change: readers see either none or all of it. Returns the number of
+     * chunks deleted.
+     */
+    synchronized int apply(Collection<Long> deleteIds, List<VectorStore.Entry> entries) {
+        for (VectorStore.Entry e : entries) {
+            checkDimension(e.vector());
+        }
+        int deleted = 0;
+        for (Long id : deleteIds) {
+            if (deleteUnpublished(id)) {
+                deleted++;
+            }
+        }
+        for (VectorStore.Entry e : entries) {
+            upsertUnpublished(e.chunkId(), e.vector(), e.metadata());
+        }
+        publish();
+        return deleted;
+    }
+
+    private void checkDimension(float[] raw) {
+        if (raw.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Vector dimension " + raw.length + " does not match collection dimension " + dimension);
+        }
+    }
+
+    /** Appends the row; an existing row of the chunk is tombstoned rather than overwritten. */
+    private void upsertUnpublished(long id, float[] raw, Map<String, Object> meta) {
+        float[] vector = VectorMath.normalize(raw);
+        deleteUnpublished(id);
+        int ordinal = size;
+        ensureCapacity(ordinal + 1);
+        writableSegment(ordinal / segmentRows, ordinal % segmentRows).set(ordinal % segmentRows, vector);
+        ids[ordinal] = id;
+        metadata[ordinal] = meta;
+        if (writablePostings() != null) {
+            postings.add(ordinal, meta);
+        }
+        idToOrdinal.put(id, ordinal);
+        size = ordinal + 1;
+        updateInt8(ordinal, vector);
+        if (binary != null) {
+            binary.set(ordinal, vector);
+        }
+    }
+
+    /** Tombstones the chunk; returns false if it is not in the index. */
+    synchronized boolean delete(long id) {
+        boolean deleted = deleteUnpublished(id);
+        if (deleted) {
+            publish();
+        }
+        return deleted;
+    }
+
+    private boolean deleteUnpublished(long id) {
+        int ordinal = idToOrdinal.remove(id);
+        if (ordinal == LongIntHashMap.MISSING) {
+            return false;
+        }
+        if (tombstonesShared && tombstones != null) {
+            tombstones = tombstones.clone();
+        }
+        tombstonesShared = false;
+        tombstones = Tombstones.with(tombstones, ordinal);
+        if (writablePostings() != null) {
+            postings.remove(ordinal, metadata(ordinal));
+        }
+        // The metadata stays: older snapshots may still return the row
+        deadCount++;
+        return true;
+    }
+
+    /**
+     * Returns a new heap index holding only the live rows, in ordinal order.
+     * Int8 codes are re-calibrated for it if this index was quantized; sign
+     * codes are re-encoded.
+     */
+    synchronized FlatIndex compact() {
+        FlatIndex compacted = new FlatIndex(dimension, segmentRows, size - deadCount, float16);
+        if (binary != null) {
+            compacted.binary = new BinaryCodes(dimension, segmentRows);
+        }
+        float[] row = new float[dimension];
+        for (int o = 0; o < size; o++) {
+            if (isLive(o)) {
+                normalizedVector(o, row);
+                compacted.upsertUnpublished(ids[o], row, metadata(o));
+            }
+        }
+        if (int8Enabled) {
+            compacted.enableInt8(null);
+        }
+        compacted.publish();
+        return compacted;
+    }
+
+    private void updateInt8(int ordinal, float[] vector) {
+        if (!int8Enabled) {
+            return;
+        }
+        if (int8 != null) {
+            int8.set(ordinal, vector);
+        } else if (size >= Int8Codes.MIN_TRAINING_ROWS) {
+            int8 = Int8Codes.train(this);
+        }
+    }
+
+    /**
+     * Returns the segment that will hold {@code row} of segment {@code s},
+     * creating it, or extending a short mapped tail segment with a heap suffix
+     * so it can grow without copying its mapped rows.
+     */
+    private VectorSegment writableSegment(int s, int row) {
+        if (s == segments.length) {
+            VectorSegment heap = heapSegment(Math.max(16, row + 1));
+            VectorSegment[] grown = Arrays.copyOf(segments, s + 1);
+            grown[s] = heap;
+            segments = grown;
+            return heap;
+        }
+        VectorSegment segment = segments[s];
+        int mappedRows = segment instanceof VectorSegment.Mapped mapped ? mapped.rows()
+                : segment instanceof VectorSegment.MappedHalf mappedHalf ? mappedHalf.rows() : -1;
+        if (row >= mappedRows && mappedRows >= 0) {
+            int suffixRows = segmentRows - mappedRows;
+            int initialRows = Math.max(16, row + 1 - mappedRows);
+            VectorSegment suffix = float16
+                    ? new VectorSegment.Half(dimension, suffixRows, initialRows)
+                    : new VectorSegment.Heap(dimension, suffixRows, initialRows);
+            VectorSegment extended = new VectorSegment.Extended(segment, mappedRows, suffix);
+            VectorSegment[] copy = segments.clone();
+            copy[s] = extended;
+            segments = copy;
+            return extended;
+        }
+        return segment;
+    }
+
+    private VectorSegment heapSegment(int initialRows) {
+        return float16
+                ? new VectorSegment.Half(dimension, segmentRows, initialRows)
+                : new VectorSegment.Heap(dimension, segmentRows, initialRows);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        metadata = Arrays.copyOf(metadata, capacity);
+    }
+}
@@ -0,0 +1,276 @@
+package com.ragflow.backend.vectorstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Binary on-disk format of a flat collection index ({@code <collection>.faiss}).
+ * The file is opened with {@link FileChannel#map} so a large index is usable
+ * immediately: vectors are paged in on first touch and metadata is decoded
+ * only for returned results.
+ *
+ * <pre>
+ * Version 1, all integers and floats little-endian.
+ *
+ * offset  size  field
+ *      0     4  magic "RFVI" (0x49564652)
+ *      4     4  format version (1)
+ *      8     4  dimension D
+ *     12     4  flags (bit 0: vectors are unit-length)
+ *     16     8  vector count N
+ *     24     8  offset of the vector block
+ *     32     8  offset of the id block
+ *     40     8  offset of the metadata offset table
+ *     48     8  offset of the metadata records
+ *     56     8  total length of the metadata records
+ *
+ * vector block      N * D float32, row-major, 64-byte aligned
+ * id block          N int64 chunk ids, in ordinal order
+ * metadata table    N + 1 int64 offsets into the records (entry i+1 - entry i = length of record i)
+ * metadata records  one {@link MetadataCodec} record per vector
+ *
+ * Version 2 is written for {@code quantization: float16} collections. It has
+ * the same layout with flag bit 1 set and a vector block of N * D IEEE 754
+ * binary16 values; version 1 readers reject it rather than misreading it.
+ * </pre>
+ * <p>
+ * Files written with Java serialization by earlier versions start with the
+ * stream magic {@code 0xACED} and are still readable through
+ * {@link #isLegacy(Path)}; they are rewritten in this format on the next save.
+ * Files without the normalized flag are normalized when opened and should be
+ * rewritten as well (see {@link #needsRewrite(Path)}).
+ */
+final class FlatIndexFile {
+
+    static final int MAGIC = 0x49564652; // "RFVI" read as little-endian int
+    static final int VERSION = 1;
+    static final int VERSION_FLOAT16 = 2;
+    static final int HEADER_BYTES = 64;
+    static final int FLAG_NORMALIZED = 1;
+    static final int FLAG_FLOAT16 = 2;
+    private static final int ALIGNMENT = 64;
+
+    private FlatIndexFile() {
+    }
+
+    static boolean isLegacy(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(2);
+            ch.read(head, 0);
+            return head.position() == 2 && (head.get(0) & 0xFF) == 0xAC && (head.get(1) & 0xFF) == 0xED;
+        }
+    }
+
+    /** True for files in an older layout that are converted in memory when loaded. */
+    static boolean needsRewrite(Path file) throws IOException {
+        if (isLegacy(file)) {
+            return true;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            ch.read(head, 0);
+            return head.position() == 16 && (head.getInt(12) & FLAG_NORMALIZED) == 0;
+        }
+    }
+
+    /** Writes the index to a temporary file and atomically moves it over {@code file}. */
+    static void write(FlatIndex index, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int n = index.size();
+        int dim = index.dimension();
+        boolean half = index.float16();
+        long vectorsOffset = HEADER_BYTES;
+        long idsOffset = align(vectorsOffset + (long) n * dim * (half ? Short.BYTES : Float.BYTES));
+        long tableOffset = idsOffset + (long) n * Long.BYTES;
+        long recordsOffset = tableOffset + (long) (n + 1) * Long.BYTES;
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer scratch = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+            ch.position(vectorsOffset);
+            VectorSegment[] segments = index.segments();
+            int rowsPerSegment = index.segmentRows();
+            for (int s = 0; s * rowsPerSegment < n; s++) {
+                segments[s].writeTo(ch, Math.min(rowsPerSegment, n - s * rowsPerSegment), scratch, half);
+            }
+
+            ch.position(idsOffset);
+            scratch.clear();
+            for (int i = 0; i < n; i++) {
+                if (scratch.remaining() < Long.BYTES) {
+                    flush(ch, scratch);
+                }
+                scratch.putLong(index.id(i));
+            }
+            flush(ch, scratch);
+
+            // Metadata records first (sizes unknown up front), then the offset table.
+            long[] offsets = new long[n + 1];
+            ch.position(recordsOffset);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            long written = 0;
+            for (int i = 0; i < n; i++) {
+                offsets[i] = written;
+                ByteBuffer raw = index.rawBaseMetadata(i);
+                if (raw == null) {
+                    record.reset();
+                    MetadataCodec.write(new DataOutputStream(record), index.metadata(i));
+                    raw = ByteBuffer.wrap(record.toByteArray());
+                }
+                written += raw.remaining();
+                while (raw.hasRemaining()) {
+                    ch.write(raw);
+                }
+            }
+            offsets[n] = written;
+
+            ch.position(tableOffset);
+            scratch.clear();
+            for (long offset : offsets) {
+                if (scratch.remaining() < Long.BYTES) {
+                    flush(ch, scratch);
+                }
+                scratch.putLong(offset);
+            }
+            flush(ch, scratch);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(half ? VERSION_FLOAT16 : VERSION).putInt(dim)
+                    .putInt(half ? FLAG_NORMALIZED | FLAG_FLOAT16 : FLAG_NORMALIZED)
+                    .putLong(n).putLong(vectorsOffset).putLong(idsOffset)
+                    .putLong(tableOffset).putLong(recordsOffset).putLong(written);
+            header.flip();
+            ch.write(header, 0);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Maps an index file written by {@link #write}. */
+    static FlatIndex open(Path file, int segmentRows) throws IOException {
+        // Private (copy-on-write) mappings need a writable channel; the file itself is never modified.
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header, header.position()) > 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a flat index file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != VERSION_FLOAT16) {
+                throw new IOException("Unsupported flat index version " + version + " in " + file);
+            }
+            int dim = header.getInt();
+            int flags = header.getInt();
+            long count = header.getLong();
+            long vectorsOffset = header.getLong();
+            long idsOffset = header.getLong();
+            long tableOffset = header.getLong();
+            long recordsOffset = header.getLong();
+            long recordsLength = header.getLong();
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many vectors in " + file + ": " + count);
+            }
+            int n = (int) count;
+            int rows = FlatIndex.segmentRowsFor(dim, segmentRows);
+            boolean half = (flags & FLAG_FLOAT16) != 0;
+            int valueBytes = half ? Short.BYTES : Float.BYTES;
+
+            int segmentCount = (n + rows - 1) / rows;
+            VectorSegment[] segments = new VectorSegment[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                int segRows = Math.min(rows, n - s * rows);
+                long pos = vectorsOffset + (long) s * rows * dim * valueBytes;
+                MappedByteBuffer mapped = ch.map(FileChannel.MapMode.PRIVATE, pos, (long) segRows * dim * valueBytes);
+                segments[s] = half
+                        ? new VectorSegment.MappedHalf(dim, rows, mapped)
+                        : new VectorSegment.Mapped(dim, rows, mapped);
+            }
+
+            long[] ids = new long[Math.max(16, n)];
+            if (n > 0) {
+                LongBuffer idBlock = ch.map(FileChannel.MapMode.READ_ONLY, idsOffset, (long) n * Long.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+                idBlock.get(ids, 0, n);
+            }
+
+            MetadataBlock metadata = null;
+            if (n > 0) {
+                if (recordsLength > Integer.MAX_VALUE) {
+                    throw new IOException("Metadata block too large in " + file);
+                }
+                LongBuffer table = ch.map(FileChannel.MapMode.READ_ONLY, tableOffset, (long) (n + 1) * Long.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+                ByteBuffer records = ch.map(FileChannel.MapMode.READ_ONLY, recordsOffset, recordsLength);
+                metadata = new MetadataBlock(n, table, records);
+            }
+            FlatIndex index = new FlatIndex(dim, rows, ids, n, segments, metadata, half);
+            if ((flags & FLAG_NORMALIZED) == 0) {
+                index.normalizeAll();
+            }
+            return index;
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer scratch) throws IOException {
+        scratch.flip();
+        while (scratch.hasRemaining()) {
+            ch.write(scratch);
+        }
+        scratch.clear();
+    }
+
+    /** Lazily decoded metadata records of a mapped index file. */
+    static final class MetadataBlock {
+        private final int count;
+        private final LongBuffer table;
+        private final ByteBuffer records;
+
+        MetadataBlock(int count, LongBuffer table, ByteBuffer records) {
+            this.count = count;
+            this.table = table;
+            this.records = records;
+        }
+
+        int count() {
+            return count;
+        }
+
+        ByteBuffer raw(int ordinal) {
+            int start = (int) table.get(ordinal);
+            int end = (int) table.get(ordinal + 1);
+            return records.slice(start, end - start);
+        }
+
+        Map<String, Object> get(int ordinal) {
+            ByteBuffer raw = raw(ordinal);
+            byte[] bytes = new byte[raw.remaining()];
+            raw.get(bytes);
+            try {
+                return MetadataCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt metadata record " + ordinal, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ragflow.backend.vectorstore;
+
+/**
+ * IEEE 754 binary16 conversions for {@code quantization: float16} rows
+ * (Java 17 has no {@code Float.float16ToFloat}). Narrowing rounds to nearest,
+ * ties to even; widening is exact and goes through a 65536-entry table, so a
+ * scan pays one array load per dimension.
+ * <p>
+ * Stored vectors are unit-length, so every component lies in [-1, 1] where
+ * binary16 keeps 11 significant bits: a relative error of at most 2^-11 per
+ * component, far below what changes a cosine ranking in practice.
+ */
+final class Float16 {
+
+    private static final float[] TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int h = 0; h < TO_FLOAT.length; h++) {
+            TO_FLOAT[h] = decode(h);
+        }
+    }
+
+    private Float16() {
+    }
+
+    static float toFloat(short half) {
+        return TO_FLOAT[half & 0xFFFF];
+    }
+
+    /** Widens {@code length} values of {@code src} starting at {@code srcOffset}. */
+    static void toFloats(short[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        float[] table = TO_FLOAT;
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = table[src[srcOffset + i] & 0xFFFF];
+        }
+    }
+
+    static short fromFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent == 0xFF) {
+            // Infinity stays infinity, NaN stays a (quiet) NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 | (mantissa >>> 13) : 0));
+        }
+        int e = exponent - 127 + 15;
+        if (e >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (e <= 0) {
+            // Subnormal result: shift the mantissa, with its implicit bit, into 10 bits
+            if (e < -10) {
+                return (short) sign;
+            }
+            int m = mantissa | 0x800000;
+            int shift = 14 - e;
+            int half = m >>> shift;
+            int rest = m & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || (rest == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (e << 10) | (mantissa >>> 13);
+        int rest = mantissa & 0x1FFF;
+        // A carry out of the mantissa correctly bumps the exponent (up to infinity)
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    private static float decode(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float v = mantissa * 0x1p-24f;
+            return sign != 0 ? -v : v;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
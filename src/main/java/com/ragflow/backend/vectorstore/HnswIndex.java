@@ -0,0 +1,631 @@
+package com.ragflow.backend.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov &amp; Yashunin) over the
+ * vectors of a single collection.
+ * <p>
+ * Vectors are normalized on insert, so cosine similarity reduces to a dot
+ * product. Re-upserting an existing chunk id tombstones the old node and
+ * inserts a fresh one; tombstoned nodes keep routing searches but are never
+ * returned until {@link #compact} rebuilds the graph without them. Readers
+ * share a read lock, inserts take the write lock.
+ * <p>
+ * Vectors are kept in blocks of {@code 2^blockShift} nodes, each at most
+ * {@link #MAX_BLOCK_FLOATS} floats, so neither an array nor an int offset
+ * overflows however many nodes the graph holds.
+ * <p>
+ * Filtered searches resolve the filter on {@link MetadataPostings} first. A
+ * small match set is scored exhaustively; a large one is searched on the
+ * graph, admitting only matching nodes into the results with a beam widened
+ * by the filter's selectivity.
+ */
+final class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+    static final int MAX_BLOCK_FLOATS = 1 << 24;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Visited> visitedPool = ThreadLocal.withInitial(Visited::new);
+    private final int blockShift;
+    private final int blockMask;
+
+    // node -> blocks[node >>> blockShift] at offset (node & blockMask) * dimension
+    private float[][] blocks;
+    private long[] ids;
+    private Object[] metadata;
+    private int[] levels;
+    // node -> level -> [count, neighbor...]
+    private int[][][] links;
+    private BitSet deleted = new BitSet();
+    private LongIntHashMap idToNode = new LongIntHashMap();
+    private volatile MetadataPostings postings;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    // Inserts and deletes so far; a compaction is only swapped in if none happened while it ran
+    private long modifications;
+
+    HnswIndex(int dimension, int m, int efConstruction) {
+        this(dimension, m, efConstruction, blockShiftFor(dimension));
+    }
+
+    HnswIndex(int dimension, int m, int efConstruction, int blockShift) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW m must be at least 2");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.blockShift = blockShift;
+        this.blockMask = (1 << blockShift) - 1;
+        int capacity = 64;
+        this.blocks = new float[0][];
+        ensureBlocks(capacity);
+        this.ids = new long[capacity];
+        this.metadata = new Object[capacity];
+        this.levels = new int[capacity];
+        this.links = new int[capacity][][];
+    }
+
+    /** Log2 of the largest power of two of nodes whose vectors fit in {@link #MAX_BLOCK_FLOATS}. */
+    private static int blockShiftFor(int dimension) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(1, MAX_BLOCK_FLOATS / dimension));
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int liveCount() {
+        lock.readLock().lock();
+        try {
+            return idToNode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Share of nodes that are tombstoned. */
+    double deadRatio() {
+        lock.readLock().lock();
+        try {
+            return size == 0 ? 0.0 : (size - idToNode.size()) / (double) size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Approximate memory held by the vectors, ids and neighbor lists; metadata maps are not counted. */
+    long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) ids.length * (Long.BYTES + 8)
+                    + (long) levels.length * Integer.BYTES + (long) size * 16;
+            for (float[] block : blocks) {
+                bytes += (long) block.length * Float.BYTES;
+            }
+            for (int node = 0; node < size; node++) {
+                for (int[] level : links[node]) {
+                    bytes += 16 + (long) level.length * Integer.BYTES;
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void insert(long id, float[] vector, Map<String, Object> meta) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Vector dimension " + vector.length + " does not match index dimension " + dimension);
+        }
+        lock.writeLock().lock();
+        try {
+            int previous = idToNode.get(id);
+            if (previous != LongIntHashMap.MISSING) {
+                deleted.set(previous);
+                if (postings != null) {
+                    postings.remove(previous, metadataOf(previous));
+                }
+            }
+            int node = size;
+            ensureCapacity(node + 1);
+            VectorMath.normalizeInto(vector, block(node), offset(node));
+            ids[node] = id;
+            metadata[node] = meta;
+            int level = randomLevel();
+            levels[node] = level;
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[maxNeighbors(l) + 1];
+            }
+            size++;
+            idToNode.put(id, node);
+            if (postings != null) {
+                postings.add(node, meta);
+            }
+            link(node, level);
+            modifications++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstones the node of the chunk. It keeps routing searches until the
+     * graph is rebuilt by {@link #compact}, but is no longer returned or
+     * written out as live.
+     */
+    boolean delete(long id) {
+        lock.writeLock().lock();
+        try {
+            int node = idToNode.remove(id);
+            if (node == LongIntHashMap.MISSING) {
+                return false;
+            }
+            deleted.set(node);
+            if (postings != null) {
+                postings.remove(node, metadataOf(node));
+            }
+            modifications++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the graph from its live nodes in their current order, dropping
+     * tombstoned nodes and their vectors. The rebuild runs under the read lock,
+     * so searches continue meanwhile; it is discarded, returning false, if an
+     * insert or delete happened before it could be swapped in.
+     */
+    boolean compact() {
+        HnswIndex rebuilt;
+        long seen;
+        lock.readLock().lock();
+        try {
+            seen = modifications;
+            rebuilt = new HnswIndex(dimension, m, efConstruction, blockShift);
+            rebuilt.ensureCapacity(Math.max(1, idToNode.size()));
+            float[] v = new float[dimension];
+            for (int node = 0; node < size; node++) {
+                if (!deleted.get(node)) {
+                    System.arraycopy(block(node), offset(node), v, 0, dimension);
+                    rebuilt.insert(ids[node], v, metadataOf(node));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (modifications != seen) {
+                return false;
+            }
+            blocks = rebuilt.blocks;
+            ids = rebuilt.ids;
+            metadata = rebuilt.metadata;
+            levels = rebuilt.levels;
+            links = rebuilt.links;
+            deleted = rebuilt.deleted;
+            idToNode = rebuilt.idToNode;
+            size = rebuilt.size;
+            entryPoint = rebuilt.entryPoint;
+            maxLevel = rebuilt.maxLevel;
+            postings = null;
+            modifications++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code k} live nodes closest to the (already normalized)
+     * query, best first, restricted to nodes matching {@code filter} unless
+     * it is null.
+     */
+    List<SearchResult> search(float[] query, int k, int efSearch, MetadataFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return new ArrayList<>();
+            }
+            int ef = Math.max(efSearch, k);
+            OrdinalBitmap allowed = null;
+            if (filter != null) {
+                allowed = postings().evaluate(filter);
+                int matching = allowed.cardinality();
+                if (matching <= ef * maxM0) {
+                    return exhaustive(query, k, allowed);
+                }
+                ef = (int) Math.min(matching, (long) ef * (size / matching));
+            }
+            int ep = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                ep = greedyClosest(query, 0, ep, l);
+            }
+            NodeHeap found = searchLayer(query, 0, ep, ef, 0, true, allowed);
+            while (found.size() > k) {
+                found.pop();
+            }
+            int n = found.size();
+            int[] nodes = new int[n];
+            float[] scores = new float[n];
+            found.drainDescending(nodes, scores);
+            List<SearchResult> results = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                results.add(new SearchResult(ids[nodes[i]], scores[i], metadataOf(nodes[i])));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<SearchResult> exhaustive(float[] query, int k, OrdinalBitmap nodes) {
+        TopK top = new TopK(Math.min(k, nodes.cardinality()));
+        nodes.forEach(node -> {
+            if (node < size && !deleted.get(node)) {
+                top.offer(node, score(query, 0, node));
+            }
+        });
+        int n = top.drain();
+        List<SearchResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int node = top.ordinalAt(i);
+            results.add(new SearchResult(ids[node], top.scoreAt(i), metadataOf(node)));
+        }
+        return results;
+    }
+
+    /** Built lazily under the read lock; inserts (write lock) keep it current afterwards. */
+    private MetadataPostings postings() {
+        MetadataPostings p = postings;
+        if (p == null) {
+            synchronized (this) {
+                p = postings;
+                if (p == null) {
+                    p = MetadataPostings.build(size, node -> !deleted.get(node), this::metadataOf);
+                    postings = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < size; node++) {
+                out.writeLong(ids[node]);
+                out.writeBoolean(deleted.get(node));
+                float[] block = block(node);
+                int base = offset(node);
+                for (int i = 0; i < dimension; i++) {
+                    out.writeFloat(block[base + i]);
+                }
+                MetadataCodec.write(out, metadataOf(node));
+                out.writeInt(levels[node]);
+                for (int l = 0; l <= levels[node]; l++) {
+                    int[] nb = links[node][l];
+                    out.writeInt(nb[0]);
+                    for (int j = 1; j <= nb[0]; j++) {
+                        out.writeInt(nb[j]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static HnswIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an HNSW index file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported HNSW index version: " + version);
+        }
+        int dimension = in.readInt();
+        int m = in.readInt();
+        int efConstruction = in.readInt();
+        HnswIndex index = new HnswIndex(dimension, m, efConstruction);
+        int size = in.readInt();
+        index.ensureCapacity(size);
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            index.ids[node] = in.readLong();
+            boolean dead = in.readBoolean();
+            float[] block = index.block(node);
+            int base = index.offset(node);
+            for (int i = 0; i < dimension; i++) {
+                block[base + i] = in.readFloat();
+            }
+            index.metadata[node] = MetadataCodec.read(in);
+            int level = in.readInt();
+            index.levels[node] = level;
+            index.links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                int[] nb = new int[index.maxNeighbors(l) + 1];
+                nb[0] = in.readInt();
+                for (int j = 1; j <= nb[0]; j++) {
+                    nb[j] = in.readInt();
+                }
+                index.links[node][l] = nb;
+            }
+            if (dead) {
+                index.deleted.set(node);
+            } else {
+                index.idToNode.put(index.ids[node], node);
+            }
+        }
+        index.size = size;
+        return index;
+    }
+
+    private void link(int node, int level) {
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        float[] block = block(node);
+        int base = offset(node);
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(block, base, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(block, base, ep, efConstruction, l, false, null);
+            int n = candidates.size();
+            int[] cand = new int[n];
+            float[] candScores = new float[n];
+            candidates.drainDescending(cand, candScores);
+            ep = cand[0];
+
+            int[] selected = selectNeighbors(node, cand, n, m);
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbor : selected) {
+                addLink(neighbor, node, l);
+            }
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] nb = links[from][level];
+        int count = nb[0];
+        if (count < nb.length - 1) {
+            nb[++nb[0]] = to;
+            return;
+        }
+        // Full: re-select from existing neighbors plus the new one by the same heuristic.
+        NodeHeap byScore = NodeHeap.max(count + 1);
+        for (int j = 1; j <= count; j++) {
+            byScore.push(nb[j], dot(from, nb[j]));
+        }
+        byScore.push(to, dot(from, to));
+        int n = byScore.size();
+        int[] cand = new int[n];
+        byScore.drainDescending(cand, new float[n]);
+        int[] selected = selectNeighbors(from, cand, n, nb.length - 1);
+        nb[0] = selected.length;
+        System.arraycopy(selected, 0, nb, 1, selected.length);
+    }
+
+    /**
+     * Neighbor selection heuristic: walk candidates best first and keep one only
+     * if it is closer to the base node than to every neighbor already kept.
+     * This favours diverse directions and keeps the graph navigable.
+     */
+    private int[] selectNeighbors(int base, int[] candidates, int n, int limit) {
+        int[] selected = new int[Math.min(limit, n)];
+        int count = 0;
+        for (int i = 0; i < n && count < selected.length; i++) {
+            int c = candidates[i];
+            float toBase = dot(base, c);
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (dot(c, selected[j]) > toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = c;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private int greedyClosest(float[] q, int qOffset, int ep, int level) {
+        int best = ep;
+        float bestScore = score(q, qOffset, best);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] nb = links[best][level];
+            for (int j = 1; j <= nb[0]; j++) {
+                float s = score(q, qOffset, nb[j]);
+                if (s > bestScore) {
+                    bestScore = s;
+                    best = nb[j];
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Best-first search on one layer. Returns a min-heap of at most {@code ef}
+     * results (worst on top). With {@code liveOnly} tombstoned nodes are still
+     * expanded but not collected; the same goes for nodes outside
+     * {@code allowed} unless it is null.
+     */
+    private NodeHeap searchLayer(float[] q, int qOffset, int ep, int ef, int level, boolean liveOnly,
+            OrdinalBitmap allowed) {
+        Visited visited = visitedPool.get();
+        visited.reset(size);
+        NodeHeap candidates = NodeHeap.max(ef * 2);
+        NodeHeap results = NodeHeap.min(ef + 1);
+
+        float epScore = score(q, qOffset, ep);
+        visited.mark(ep);
+        candidates.push(ep, epScore);
+        if (admits(ep, liveOnly, allowed)) {
+            results.push(ep, epScore);
+        }
+        while (!candidates.isEmpty()) {
+            float cScore = candidates.topScore();
+            if (results.size() >= ef && cScore < results.topScore()) {
+                break;
+            }
+            int c = candidates.pop();
+            int[] nb = links[c][level];
+            for (int j = 1; j <= nb[0]; j++) {
+                int e = nb[j];
+                if (!visited.mark(e)) {
+                    continue;
+                }
+                float s = score(q, qOffset, e);
+                if (results.size() < ef || s > results.topScore()) {
+                    candidates.push(e, s);
+                    if (admits(e, liveOnly, allowed)) {
+                        results.push(e, s);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private boolean admits(int node, boolean liveOnly, OrdinalBitmap allowed) {
+        return (!liveOnly || !deleted.get(node)) && (allowed == null || allowed.contains(node));
+    }
+
+    private float[] block(int node) {
+        return blocks[node >>> blockShift];
+    }
+
+    private int offset(int node) {
+        return (node & blockMask) * dimension;
+    }
+
+    private float score(float[] q, int qOffset, int node) {
+        return VectorMath.dot(q, qOffset, block(node), offset(node), dimension);
+    }
+
+    private float dot(int a, int b) {
+        return VectorMath.dot(block(a), offset(a), block(b), offset(b), dimension);
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble(); // (0, 1]
+        return (int) (-Math.log(r) * levelMultiplier);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> metadataOf(int node) {
+        return (Map<String, Object>) metadata[node];
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, (long) ids.length * 2));
+        ensureBlocks(capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        metadata = Arrays.copyOf(metadata, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    /** Grows the vector blocks to hold {@code capacity} nodes; only the last block may be partial. */
+    private void ensureBlocks(int capacity) {
+        int count = ((capacity - 1) >>> blockShift) + 1;
+        if (count > blocks.length) {
+            blocks = Arrays.copyOf(blocks, count);
+        }
+        for (int b = 0; b < count; b++) {
+            int floats = Math.min(blockMask + 1, capacity - (b << blockShift)) * dimension;
+            if (blocks[b] == null) {
+                blocks[b] = new float[floats];
+            } else if (blocks[b].length < floats) {
+                blocks[b] = Arrays.copyOf(blocks[b], floats);
+            }
+        }
+    }
+
+    /** Epoch-stamped visited set, reused per thread so searches do not allocate O(N). */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /** Returns true if the node was not yet visited in this epoch. */
+        boolean mark(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
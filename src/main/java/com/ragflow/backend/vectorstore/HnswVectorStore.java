@@ -0,0 +1,174 @@
+package com.ragflow.backend.vectorstore;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximate nearest-neighbour store backed by one HNSW graph per collection.
+ * Query cost grows roughly with log(N) instead of N; accuracy is traded off
+ * through {@code vectorstore.hnsw.ef-search}. Graphs are persisted as
+ * {@code <collection>.hnsw} under {@code storage.index-dir}; {@link #save()}
+ * rewrites only collections changed since their last save.
+ * <p>
+ * Re-indexing a document tombstones its old nodes, so on save a graph whose
+ * share of tombstoned nodes reached {@code vectorstore.compaction.dead-ratio}
+ * is rebuilt from its live nodes before it is written.
+ */
+@Component
+public class HnswVectorStore implements VectorStore {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswVectorStore.class);
+
+    @Value("${storage.index-dir:./data/index}")
+    private String indexDir;
+
+    @Value("${vectorstore.compaction.dead-ratio:0.2}")
+    private double compactionDeadRatio = 0.2;
+
+    private final VectorStoreSettings settings;
+
+    private final Map<String, HnswIndex> indexes = new ConcurrentHashMap<>();
+    // Collections changed since they were last written; marked after the change so a save never misses one
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    public HnswVectorStore(VectorStoreSettings settings) {
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.load();
+    }
+
+    @Override
+    public void upsert(String collection, Long chunkId, float[] vector, Map<String, Object> metadata) {
+        indexes.computeIfAbsent(collection, c -> new HnswIndex(vector.length, settings.hnswM(c),
+                settings.hnswEfConstruction(c)))
+                .insert(chunkId, vector, metadata);
+        dirty.add(collection);
+    }
+
+    @Override
+    public List<SearchResult> search(String collection, float[] queryVector, int topK, MetadataFilter filter) {
+        HnswIndex index = indexes.get(collection);
+        if (index == null || queryVector.length != index.dimension()) {
+            return Collections.emptyList();
+        }
+        return index.search(VectorMath.normalize(queryVector), topK, settings.hnswEfSearch(collection), filter);
+    }
+
+    @Override
+    public void delete(String collection, Collection<Long> chunkIds) {
+        HnswIndex index = indexes.get(collection);
+        if (index == null) {
+            return;
+        }
+        for (Long chunkId : chunkIds) {
+            index.delete(chunkId);
+        }
+        dirty.add(collection);
+    }
+
+    @Override
+    public synchronized void dropCollection(String collection) {
+        if (indexes.remove(collection) != null) {
+            dirty.remove(collection);
+            try {
+                Files.deleteIfExists(new File(indexDir, collection + ".hnsw").toPath());
+                log.info("Dropped HNSW index for collection: {}", collection);
+            } catch (IOException e) {
+                log.error("Failed to delete HNSW index for collection: " + collection, e);
+            }
+        }
+    }
+
+    boolean contains(String collection) {
+        return indexes.containsKey(collection);
+    }
+
+    Set<String> collections() {
+        return indexes.keySet();
+    }
+
+    long memoryBytes(String collection) {
+        HnswIndex index = indexes.get(collection);
+        return index != null ? index.memoryBytes() : 0;
+    }
+
+    @Override
+    public synchronized void save() {
+        File dir = new File(indexDir);
+        if (!dir.exists())
+            dir.mkdirs();
+
+        for (String collection : new ArrayList<>(dirty)) {
+            HnswIndex index = indexes.get(collection);
+            // Cleared before writing, so changes made during the write mark it again
+            dirty.remove(collection);
+            if (index == null) {
+                continue;
+            }
+            double deadRatio = index.deadRatio();
+            if (deadRatio > 0 && deadRatio >= compactionDeadRatio && index.compact()) {
+                log.info("Rebuilt HNSW index for collection: {} without its {}% tombstoned nodes", collection,
+                        Math.round(deadRatio * 100));
+            }
+            File file = new File(dir, collection + ".hnsw");
+            File tmp = new File(dir, collection + ".hnsw.tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                index.write(out);
+            } catch (IOException e) {
+                log.error("Failed to save HNSW index for collection: " + collection, e);
+                dirty.add(collection);
+                continue;
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                log.info("Saved HNSW index for collection: {} to {}", collection, file.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Failed to replace HNSW index file for collection: " + collection, e);
+                dirty.add(collection);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void load() {
+        File dir = new File(indexDir);
+        if (!dir.exists())
+            return;
+
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".hnsw"));
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            String filename = file.getName();
+            String collection = filename.substring(0, filename.lastIndexOf("."));
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                HnswIndex index = HnswIndex.read(in);
+                indexes.put(collection, index);
+                log.info("Loaded HNSW index for collection: {} with {} items", collection, index.liveCount());
+            } catch (Exception e) {
+                log.error("Failed to load HNSW index from " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.ragflow.backend.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Measures what moving a flat collection to another search mode would cost,
+ * before doing it. The collection's vectors are copied out of
+ * {@link FaissVectorStore} and indexed again, in memory, once per mode
+ * ({@code flat}, {@code float16}, {@code int8}, {@code binary}, {@code hnsw},
+ * {@code ivf-pq})
+ * with the settings that mode would get for this collection. Every mode
+ * answers the same queries; the exact {@code flat} results are the ground
+ * truth for recall@k. Reported per mode: build time, memory, recall and
+ * latency percentiles.
+ * <p>
+ * Queries are either held out (a seeded sample of the collection's own rows,
+ * left out of every index so no query finds itself) or read from a file with
+ * one vector per line, as a JSON array or comma/space separated numbers. Query
+ * files are only opened inside {@code vectorstore.evaluation.query-dir}.
+ * Nothing is written to {@code storage.index-dir} and no embedding or LLM
+ * provider is called.
+ * <p>
+ * Every mode holds a full copy of the evaluated rows, so collections above
+ * {@code vectorstore.evaluation.max-vectors} are evaluated on a seeded sample
+ * of that many rows, queries are capped at {@code max-queries}, and only one
+ * evaluation runs at a time.
+ */
+@Component
+public class IndexEvaluator {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexEvaluator.class);
+
+    static final List<String> MODES = List.of("flat", "float16", "int8", "binary", "hnsw", "ivf-pq");
+
+    private static final long SEED = 42;
+    private static final int WARMUP_QUERIES = 20;
+
+    private final FaissVectorStore flatStore;
+    private final Environment env;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore running = new Semaphore(1);
+
+    private final Path queryDir;
+    private final int maxVectors;
+    private final int maxQueries;
+
+    public IndexEvaluator(FaissVectorStore flatStore, Environment env) {
+        this.flatStore = flatStore;
+        this.env = env;
+        String indexDir = env.getProperty("storage.index-dir", "./data/index");
+        this.queryDir = Path.of(env.getProperty("vectorstore.evaluation.query-dir", indexDir + "/eval-queries"))
+                .toAbsolutePath().normalize();
+        this.maxVectors = env.getProperty("vectorstore.evaluation.max-vectors", Integer.class, 200_000);
+        this.maxQueries = env.getProperty("vectorstore.evaluation.max-queries", Integer.class, 10_000);
+    }
+
+    /**
+     * Runs the evaluation.
+     *
+     * @param queryCount held-out queries to sample; ignored when {@code queryFile} is given
+     * @param queryFile  name of a file in {@code vectorstore.evaluation.query-dir}; may be null
+     * @param modes      modes to compare with exact search; null or empty for all
+     * @param overrides  settings for this run only, relative to {@code vectorstore.}
+     *                   (e.g. {@code hnsw.ef-search: 128}); may be null
+     */
+    public Map<String, Object> evaluate(String collection, int queryCount, int topK, String queryFile,
+            List<String> modes, Map<String, String> overrides) throws IOException {
+        if (topK <= 0) {
+            throw new IllegalArgumentException("topK must be positive");
+        }
+        List<String> selected = new ArrayList<>(List.of("flat"));
+        for (String mode : modes != null && !modes.isEmpty() ? modes : MODES) {
+            String m = mode.trim().toLowerCase();
+            if (!MODES.contains(m)) {
+                throw new IllegalArgumentException("Unknown mode '" + mode + "', expected one of " + MODES);
+            }
+            if (!selected.contains(m)) {
+                selected.add(m);
+            }
+        }
+        if (!flatStore.collections().contains(collection)) {
+            throw new IllegalArgumentException("No flat collection named '" + collection + "'");
+        }
+        boolean fromFile = queryFile != null && !queryFile.isBlank();
+        if (!fromFile && queryCount > maxQueries) {
+            throw new IllegalArgumentException("queries must not exceed " + maxQueries);
+        }
+        if (!running.tryAcquire()) {
+            throw new IllegalStateException("Another index evaluation is running, try again when it has finished");
+        }
+        try {
+            return runEvaluation(collection, fromFile ? 0 : queryCount, topK, fromFile ? queryFile : null, selected,
+                    overrides);
+        } finally {
+            running.release();
+        }
+    }
+
+    private Map<String, Object> runEvaluation(String collection, int queryCount, int topK, String queryFile,
+            List<String> selected, Map<String, String> overrides) throws IOException {
+        // Seeded reservoir sample, so no more than the cap is ever copied out of the store
+        int capacity = maxVectors + queryCount;
+        List<VectorStore.Entry> rows = new ArrayList<>();
+        Random sampler = new Random(SEED);
+        long[] seen = new long[1];
+        flatStore.forEach(collection, (id, vector, metadata) -> {
+            long n = seen[0]++;
+            if (n < capacity) {
+                rows.add(new VectorStore.Entry(id, vector, metadata));
+            } else {
+                long j = (long) (sampler.nextDouble() * (n + 1));
+                if (j < capacity) {
+                    rows.set((int) j, new VectorStore.Entry(id, vector, metadata));
+                }
+            }
+        });
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Collection '" + collection + "' is empty");
+        }
+        int dimension = rows.get(0).vector().length;
+
+        List<float[]> queries;
+        List<VectorStore.Entry> base;
+        if (queryFile != null) {
+            queries = readQueries(queryFile, dimension);
+            base = rows;
+        } else {
+            if (queryCount <= 0 || queryCount >= rows.size()) {
+                throw new IllegalArgumentException("queries must be between 1 and " + (rows.size() - 1)
+                        + " for a collection of " + rows.size() + " vectors");
+            }
+            // Partial Fisher-Yates: the first queryCount rows become the held-out queries
+            List<VectorStore.Entry> shuffled = new ArrayList<>(rows);
+            Random random = new Random(SEED);
+            queries = new ArrayList<>(queryCount);
+            for (int i = 0; i < queryCount; i++) {
+                int j = i + random.nextInt(shuffled.size() - i);
+                VectorStore.Entry picked = shuffled.get(j);
+                shuffled.set(j, shuffled.get(i));
+                shuffled.set(i, picked);
+                queries.add(picked.vector());
+            }
+            base = shuffled.subList(queryCount, shuffled.size());
+        }
+
+        VectorStoreSettings settings = new VectorStoreSettings(overlay(collection, overrides));
+        log.info("Evaluating collection: {} ({} vectors, {} queries, k={}) in modes {}", collection, base.size(),
+                queries.size(), topK, selected);
+
+        List<Set<Long>> truth = null;
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String mode : selected) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("mode", mode);
+            try {
+                truth = run(mode, collection, settings, dimension, base, queries, topK, truth, result);
+            } catch (RuntimeException e) {
+                log.warn("Evaluation of mode {} failed for collection: {}", mode, collection, e);
+                result.put("error", e.getMessage());
+            }
+            results.add(result);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("collection", collection);
+        report.put("dimension", dimension);
+        report.put("vectors", base.size());
+        report.put("collectionVectors", seen[0]);
+        report.put("sampled", seen[0] > rows.size());
+        report.put("queries", queries.size());
+        report.put("querySource", queryFile != null ? queryFile : "held-out");
+        report.put("topK", topK);
+        report.put("modes", results);
+        return report;
+    }
+
+    /**
+     * Builds one mode, answers all queries with it and fills {@code result}.
+     * Returns the ground truth: the result ids of this run if it is the exact
+     * one, otherwise {@code truth} unchanged.
+     */
+    private List<Set<Long>> run(String mode, String collection, VectorStoreSettings settings, int dimension,
+            List<VectorStore.Entry> base, List<float[]> queries, int topK, List<Set<Long>> truth,
+            Map<String, Object> result) {
+        long start = System.nanoTime();
+        VectorStore store;
+        long memoryBytes;
+        Runnable close = () -> {
+        };
+        switch (mode) {
+            case "hnsw" -> {
+                HnswVectorStore hnsw = new HnswVectorStore(settings);
+                for (VectorStore.Entry e : base) {
+                    hnsw.upsert(collection, e.chunkId(), e.vector(), e.metadata());
+                }
+                store = hnsw;
+                memoryBytes = hnsw.memoryBytes(collection);
+            }
+            case "ivf-pq" -> {
+                IvfPqVectorStore ivf = new IvfPqVectorStore(settings);
+                for (VectorStore.Entry e : base) {
+                    ivf.upsert(collection, e.chunkId(), e.vector(), e.metadata());
+                }
+                ivf.train(collection);
+                store = ivf;
+                memoryBytes = ivf.memoryBytes(collection);
+            }
+            default -> {
+                FlatIndex index = new FlatIndex(dimension, FlatIndex.DEFAULT_SEGMENT_ROWS, 16,
+                        mode.equals("float16"));
+                index.apply(List.of(), base);
+                // Like a collection opened from disk: codes are calibrated on all rows at once
+                if (mode.equals("int8")) {
+                    index.enableInt8(null);
+                    result.put("codeBytes", index.int8() != null ? index.int8().memoryBytes() : 0);
+                } else if (mode.equals("binary")) {
+                    index.enableBinary();
+                    result.put("codeBytes", index.snapshot().binary().memoryBytes());
+                }
+                FaissVectorStore flat = FaissVectorStore.detached(settings, collection, index);
+                store = flat;
+                memoryBytes = index.memoryBytes();
+                close = flat::shutdown;
+            }
+        }
+        result.put("buildMs", (System.nanoTime() - start) / 1_000_000);
+        result.put("memoryBytes", memoryBytes);
+
+        try {
+            for (int i = 0; i < Math.min(WARMUP_QUERIES, queries.size()); i++) {
+                store.search(collection, queries.get(i), topK);
+            }
+            long[] nanos = new long[queries.size()];
+            List<Set<Long>> found = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                long t = System.nanoTime();
+                List<SearchResult> hits = store.search(collection, queries.get(i), topK);
+                nanos[i] = System.nanoTime() - t;
+                Set<Long> ids = new HashSet<>();
+                for (SearchResult hit : hits) {
+                    ids.add(hit.getChunkId());
+                }
+                found.add(ids);
+            }
+            if (truth == null) {
+                truth = found;
+            }
+            result.put("recall", recall(truth, found));
+            result.put("latencyMs", percentiles(nanos));
+            return truth;
+        } finally {
+            close.run();
+        }
+    }
+
+    /** Mean over queries of |found ∩ exact| / |exact|; queries without exact results are skipped. */
+    static double recall(List<Set<Long>> truth, List<Set<Long>> found) {
+        double sum = 0;
+        int counted = 0;
+        for (int i = 0; i < truth.size(); i++) {
+            Set<Long> exact = truth.get(i);
+            if (exact.isEmpty()) {
+                continue;
+            }
+            int hits = 0;
+            for (Long id : found.get(i)) {
+                if (exact.contains(id)) {
+                    hits++;
+                }
+            }
+            sum += hits / (double) exact.size();
+            counted++;
+        }
+        return counted == 0 ? 1.0 : sum / counted;
+    }
+
+    static Map<String, Object> percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", Arrays.stream(sorted).average().orElse(0) / 1e6);
+        latency.put("p50", percentile(sorted, 0.50) / 1e6);
+        latency.put("p95", percentile(sorted, 0.95) / 1e6);
+        latency.put("p99", percentile(sorted, 0.99) / 1e6);
+        latency.put("max", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6);
+        return latency;
+    }
+
+    /** Nearest-rank percentile of sorted values. */
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Reads query vectors from a file inside the query directory. Errors name
+     * the file and line but never echo its content.
+     */
+    private List<float[]> readQueries(String name, int dimension) throws IOException {
+        Path file = queryDir.resolve(name).normalize();
+        if (!file.startsWith(queryDir) || file.equals(queryDir)) {
+            throw new IllegalArgumentException("queryFile must name a file in the evaluation query directory");
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No query file named '" + name + "'");
+        }
+        List<float[]> queries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                float[] vector;
+                try {
+                    if (line.startsWith("[")) {
+                        vector = objectMapper.readValue(line, float[].class);
+                    } else {
+                        String[] parts = line.split("[,\\s]+");
+                        vector = new float[parts.length];
+                        for (int i = 0; i < parts.length; i++) {
+                            vector[i] = Float.parseFloat(parts[i]);
+                        }
+                    }
+                } catch (JsonProcessingException | NumberFormatException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " of query file '" + name
+                            + "' is not a vector of numbers");
+                }
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("Query on line " + lineNumber + " of '" + name + "' has "
+                            + vector.length + " dimensions, the collection has " + dimension);
+                }
+                if (queries.size() == maxQueries) {
+                    throw new IllegalArgumentException("Query file '" + name + "' has more than " + maxQueries
+                            + " vectors");
+                }
+                queries.add(vector);
+            }
+        }
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("No query vectors in '" + name + "'");
+        }
+        return queries;
+    }
+
+    /**
+     * The application's environment with {@code overrides} applied to this
+     * collection, so they win over both global and per-collection settings.
+     */
+    private Environment overlay(String collection, Map<String, String> overrides) {
+        if (overrides == null || overrides.isEmpty()) {
+            return env;
+        }
+        StandardEnvironment overlay = new StandardEnvironment();
+        Map<String, Object> properties = new HashMap<>();
+        overrides.forEach((key, value) -> properties.put("vectorstore.collections." + collection + "." + key, value));
+        overlay.getPropertySources().addFirst(new MapPropertySource("evaluation", properties));
+        if (env instanceof ConfigurableEnvironment configurable) {
+            for (PropertySource<?> source : configurable.getPropertySources()) {
+                overlay.getPropertySources().addLast(source);
+            }
+        }
+        return overlay;
+    }
+}
@@ -0,0 +1,13 @@
+package com.ragflow.backend.vectorstore;
+
+/**
+ * Index implementations a collection can be served from.
+ */
+public enum IndexType {
+    /** Exact brute-force scan (FaissVectorStore). */
+    FLAT,
+    /** Approximate graph search (HnswVectorStore). */
+    HNSW,
+    /** Compressed inverted file with product quantization (IvfPqVectorStore). */
+    IVF_PQ
+}
@@ -0,0 +1,242 @@
+package com.ragflow.backend.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Scalar int8 quantization of a {@link FlatIndex}: one unsigned byte per
+ * dimension, calibrated with per-dimension min/max over the (normalized)
+ * vectors, i.e. {@code x[i] ~ min[i] + scale[i] * code[i]}. Codes take a
+ * quarter of the float storage and are scored with an integer dot product;
+ * the full-precision rows stay in the mapped index file for optional
+ * rescoring.
+ * <p>
+ * Codes are laid out in segments parallel to the index segments. Vectors
+ * added after calibration are clamped to the calibrated range; the owner
+ * re-trains when too many values were clamped.
+ * <p>
+ * Persisted as {@code <collection>.sq8}: int32 magic, int32 version,
+ * int32 dimension, int32 count, float32[dimension] min, float32[dimension]
+ * scale, then count * dimension code bytes.
+ */
+final class Int8Codes {
+
+    static final int MIN_TRAINING_ROWS = 256;
+
+    private static final int MAGIC = 0x53513849; // "SQ8I"
+    private static final int VERSION = 1;
+
+    private final int dimension;
+    private final int segmentRows;
+    private float[] min;
+    private float[] scale;
+    private byte[][] segments = new byte[0][];
+    private volatile int size;
+    private long clampedValues;
+
+    private Int8Codes(int dimension, int segmentRows) {
+        this.dimension = dimension;
+        this.segmentRows = segmentRows;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryBytes() {
+        long bytes = 0;
+        for (byte[] s : segments) {
+            bytes += s.length;
+        }
+        return bytes;
+    }
+
+    /** Fraction of encoded values that fell outside the calibrated range. */
+    double clampedRatio() {
+        return size == 0 ? 0.0 : clampedValues / ((double) size * dimension);
+    }
+
+    /** Calibrates min/max over rows {@code [0, index.size())} and encodes all of them. */
+    static Int8Codes train(FlatIndex index) {
+        int dimension = index.dimension();
+        int n = index.size();
+        float[] lo = new float[dimension];
+        float[] hi = new float[dimension];
+        Arrays.fill(lo, Float.POSITIVE_INFINITY);
+        Arrays.fill(hi, Float.NEGATIVE_INFINITY);
+        float[] row = new float[dimension];
+        for (int o = 0; o < n; o++) {
+            index.normalizedVector(o, row);
+            for (int i = 0; i < dimension; i++) {
+                lo[i] = Math.min(lo[i], row[i]);
+                hi[i] = Math.max(hi[i], row[i]);
+            }
+        }
+        Int8Codes codes = new Int8Codes(dimension, index.segmentRows());
+        codes.min = lo;
+        codes.scale = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            float range = hi[i] - lo[i];
+            codes.scale[i] = range > 0 ? range / 255f : 1f;
+        }
+        for (int o = 0; o < n; o++) {
+            index.normalizedVector(o, row);
+            codes.encode(o, row);
+        }
+        codes.size = n;
+        return codes;
+    }
+
+    /** Encodes an already normalized vector at {@code ordinal}; publishes it if it extends the codes. */
+    void set(int ordinal, float[] normalized) {
+        encode(ordinal, normalized);
+        if (ordinal >= size) {
+            size = ordinal + 1;
+        }
+    }
+
+    private void encode(int ordinal, float[] v) {
+        int s = ordinal / segmentRows;
+        if (s >= segments.length) {
+            byte[][] grown = Arrays.copyOf(segments, s + 1);
+            grown[s] = new byte[Math.min(segmentRows, 1024) * dimension];
+            segments = grown;
+        }
+        byte[] seg = segments[s];
+        int base = (ordinal % segmentRows) * dimension;
+        if (base + dimension > seg.length) {
+            int rows = Math.min(segmentRows, Math.max(base / dimension + 1, seg.length / dimension * 2));
+            seg = Arrays.copyOf(seg, rows * dimension);
+            segments[s] = seg;
+        }
+        for (int i = 0; i < dimension; i++) {
+            int c = Math.round((v[i] - min[i]) / scale[i]);
+            if (c < 0 || c > 255) {
+                clampedValues++;
+                c = c < 0 ? 0 : 255;
+            }
+            seg[base + i] = (byte) c;
+        }
+    }
+
+    /** Pre-computed integer form of a normalized query. */
+    static final class Query {
+        final byte[] codes;
+        final float scale;
+        final float offset;
+
+        Query(byte[] codes, float scale, float offset) {
+            this.codes = codes;
+            this.scale = scale;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * {@code q . x = sum(q[i] * min[i]) + sum(q[i] * scale[i] * code[i])}: the
+     * first term is a per-query constant, the second becomes an integer dot
+     * product once {@code q[i] * scale[i]} is itself quantized to int8.
+     */
+    Query prepare(float[] normalizedQuery) {
+        float offset = 0f;
+        float maxAbs = 0f;
+        float[] w = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            offset += normalizedQuery[i] * min[i];
+            w[i] = normalizedQuery[i] * scale[i];
+            maxAbs = Math.max(maxAbs, Math.abs(w[i]));
+        }
+        float qs = maxAbs > 0 ? maxAbs / 127f : 1f;
+        byte[] qc = new byte[dimension];
+        for (int i = 0; i < dimension; i++) {
+            qc[i] = (byte) Math.round(w[i] / qs);
+        }
+        return new Query(qc, qs, offset);
+    }
+
+    /** Offers approximate scores for the live ordinals of {@code [from, to)} to {@code top}. */
+    void scan(Query q, int from, int to, long[] deleted, TopK top) {
+        byte[][] segs = segments;
+        byte[] qc = q.codes;
+        int dim = dimension;
+        for (int o = from; o < to; ) {
+            int s = o / segmentRows;
+            byte[] seg = segs[s];
+            int base = s * segmentRows;
+            int end = Math.min(to, base + segmentRows);
+            for (int r = o - base; r < end - base; r++) {
+                if (deleted != null && Tombstones.contains(deleted, base + r)) {
+                    continue;
+                }
+                int off = r * dim;
+                int acc = 0;
+                for (int i = 0; i < dim; i++) {
+                    acc += qc[i] * (seg[off + i] & 0xFF);
+                }
+                top.offer(base + r, q.scale * acc + q.offset);
+            }
+            o = end;
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int n = size;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(n);
+            for (float v : min) {
+                out.writeFloat(v);
+            }
+            for (float v : scale) {
+                out.writeFloat(v);
+            }
+            for (int s = 0; s * segmentRows < n; s++) {
+                int rows = Math.min(segmentRows, n - s * segmentRows);
+                out.write(segments[s], 0, rows * dimension);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Int8Codes read(Path file, int dimension, int segmentRows) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an int8 code file: " + file);
+            }
+            if (in.readInt() != dimension) {
+                throw new IOException("Dimension mismatch in " + file);
+            }
+            int n = in.readInt();
+            Int8Codes codes = new Int8Codes(dimension, segmentRows);
+            codes.min = new float[dimension];
+            codes.scale = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                codes.min[i] = in.readFloat();
+            }
+            for (int i = 0; i < dimension; i++) {
+                codes.scale[i] = in.readFloat();
+            }
+            int segmentCount = (n + segmentRows - 1) / segmentRows;
+            codes.segments = new byte[segmentCount][];
+            for (int s = 0; s < segmentCount; s++) {
+                int rows = Math.min(segmentRows, n - s * segmentRows);
+                codes.segments[s] = new byte[rows * dimension];
+                in.readFully(codes.segments[s]);
+            }
+            codes.size = n;
+            return codes;
+        }
+    }
+}
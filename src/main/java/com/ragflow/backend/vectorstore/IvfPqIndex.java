@@ -0,0 +1,553 @@
+package com.ragflow.backend.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted file with product-quantized residuals (IVF-PQ, Jégou et al.) over
+ * the vectors of a single collection.
+ * <p>
+ * A coarse k-means quantizer splits the space into {@code nlist} cells; every
+ * vector is stored in the list of its nearest centroid as {@code m} one-byte
+ * codes, one per {@code dimension / m}-wide subspace of its residual to that
+ * centroid. A vector therefore costs {@code m} bytes instead of
+ * {@code dimension * 4}. Queries visit the {@code nprobe} closest cells and
+ * score their codes with asymmetric distance tables: the squared distance of
+ * the query residual to every sub-centroid is computed once per cell, after
+ * which each candidate costs {@code m} table lookups.
+ * <p>
+ * Vectors are normalized, so for unit vectors {@code cos = 1 - |q - x|^2 / 2}
+ * and the approximate distance is reported as a cosine score. Re-upserting a
+ * chunk id tombstones the old entry. Readers share a read lock, inserts take
+ * the write lock.
+ * <p>
+ * Metadata of entries read from or written to the index file stays encoded
+ * in a memory-mapped block of that file ({@link FlatIndexFile.MetadataBlock})
+ * and is only decoded for returned hits; just the entries inserted since the
+ * last write are held as maps on the heap.
+ * <p>
+ * Filtered searches skip entries outside the filter's {@link MetadataPostings}
+ * match set before the table lookups, and probe proportionally more cells the
+ * more selective the filter is.
+ */
+final class IvfPqIndex {
+
+    private static final int MAGIC = 0x49564650; // "IVFP"
+    private static final int VERSION = 1;
+
+    /** Training rows kept per centroid; more only slows k-means down. */
+    static final int TRAINING_ROWS_PER_CENTROID = 64;
+
+    private static final int MAX_KSUB = 256;
+
+    private final int dimension;
+    private final int nlist;
+    private final int m;
+    private final int dsub;
+    private final int ksub;
+    private final float[] centroids;
+    // subspace -> sub-centroid -> dsub floats
+    private final float[] codebooks;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int[][] listOrdinals;
+    private final byte[][] listCodes;
+    private final int[] listSizes;
+
+    private long[] ids = new long[64];
+    // Heap maps of entries inserted since the last write; null where the entry's record is in baseMetadata
+    private Object[] metadata = new Object[64];
+    // ordinal -> record in baseMetadata, or -1
+    private int[] records = new int[64];
+    private FlatIndexFile.MetadataBlock baseMetadata;
+    private final BitSet deleted = new BitSet();
+    private final LongIntHashMap idToOrdinal = new LongIntHashMap();
+    private volatile MetadataPostings postings;
+    private int size;
+
+    private IvfPqIndex(int dimension, int nlist, int m, int ksub, float[] centroids, float[] codebooks) {
+        this.dimension = dimension;
+        this.nlist = nlist;
+        this.m = m;
+        this.dsub = dimension / m;
+        this.ksub = ksub;
+        this.centroids = centroids;
+        this.codebooks = codebooks;
+        this.listOrdinals = new int[nlist][];
+        this.listCodes = new byte[nlist][];
+        this.listSizes = new int[nlist];
+        for (int list = 0; list < nlist; list++) {
+            listOrdinals[list] = new int[8];
+            listCodes[list] = new byte[8 * m];
+        }
+    }
+
+    /**
+     * Largest number of subquantizers not above {@code requested} that divides
+     * the dimension evenly.
+     */
+    static int subquantizersFor(int dimension, int requested) {
+        for (int m = Math.min(requested, dimension); m > 1; m--) {
+            if (dimension % m == 0) {
+                return m;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Trains the coarse quantizer and the product quantizer from {@code n}
+     * normalized row-major sample vectors. {@code nlist} and the codebook size
+     * are capped by the number of rows available.
+     */
+    static IvfPqIndex train(float[] sample, int n, int dimension, int nlist, int m, int iterations, long seed) {
+        if (n == 0) {
+            throw new IllegalArgumentException("Cannot train IVF-PQ without vectors");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        m = subquantizersFor(dimension, m);
+        int dsub = dimension / m;
+        float[] centroids = KMeans.train(sample, 0, dimension, n, dimension, Math.min(nlist, n), iterations, random);
+        nlist = centroids.length / dimension;
+
+        float[] residuals = new float[n * dimension];
+        for (int row = 0; row < n; row++) {
+            int off = row * dimension;
+            int c = KMeans.nearest(sample, off, centroids, nlist, dimension);
+            for (int i = 0; i < dimension; i++) {
+                residuals[off + i] = sample[off + i] - centroids[c * dimension + i];
+            }
+        }
+        int ksub = Math.min(MAX_KSUB, n);
+        float[] codebooks = new float[m * ksub * dsub];
+        for (int j = 0; j < m; j++) {
+            float[] sub = KMeans.train(residuals, j * dsub, dimension, n, dsub, ksub, iterations, random);
+            System.arraycopy(sub, 0, codebooks, j * ksub * dsub, ksub * dsub);
+        }
+        return new IvfPqIndex(dimension, nlist, m, ksub, centroids, codebooks);
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int nlist() {
+        return nlist;
+    }
+
+    int liveCount() {
+        lock.readLock().lock();
+        try {
+            return idToOrdinal.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bytes held by the inverted lists (codes and list ordinals). */
+    long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (int list = 0; list < nlist; list++) {
+                bytes += listCodes[list].length + (long) listOrdinals[list].length * Integer.BYTES;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void insert(long id, float[] vector, Map<String, Object> meta) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Vector dimension " + vector.length + " does not match index dimension " + dimension);
+        }
+        float[] x = VectorMath.normalize(vector);
+        int list = KMeans.nearest(x, 0, centroids, nlist, dimension);
+        byte[] code = new byte[m];
+        encodeResidual(x, list, code);
+        lock.writeLock().lock();
+        try {
+            int previous = idToOrdinal.get(id);
+            if (previous != LongIntHashMap.MISSING) {
+                deleted.set(previous);
+                if (postings != null) {
+                    postings.remove(previous, metadataOf(previous));
+                }
+                metadata[previous] = null;
+                records[previous] = -1;
+            }
+            int ordinal = size;
+            ensureCapacity(ordinal + 1);
+            ids[ordinal] = id;
+            metadata[ordinal] = meta;
+            records[ordinal] = -1;
+            append(list, ordinal, code, 0);
+            idToOrdinal.put(id, ordinal);
+            if (postings != null) {
+                postings.add(ordinal, meta);
+            }
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Tombstones the chunk's entry; it is skipped by searches and dropped by {@link #write}. */
+    boolean delete(long id) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = idToOrdinal.remove(id);
+            if (ordinal == LongIntHashMap.MISSING) {
+                return false;
+            }
+            deleted.set(ordinal);
+            if (postings != null) {
+                postings.remove(ordinal, metadataOf(ordinal));
+            }
+            metadata[ordinal] = null;
+            records[ordinal] = -1;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void encodeResidual(float[] x, int list, byte[] code) {
+        float[] residual = new float[dimension];
+        int cBase = list * dimension;
+        for (int i = 0; i < dimension; i++) {
+            residual[i] = x[i] - centroids[cBase + i];
+        }
+        for (int j = 0; j < m; j++) {
+            code[j] = (byte) KMeans.nearest(residual, j * dsub, codebooks, j * ksub * dsub, ksub, dsub);
+        }
+    }
+
+    private void append(int list, int ordinal, byte[] codes, int codesOffset) {
+        int n = listSizes[list];
+        if (n == listOrdinals[list].length) {
+            listOrdinals[list] = Arrays.copyOf(listOrdinals[list], n * 2);
+            listCodes[list] = Arrays.copyOf(listCodes[list], n * 2 * m);
+        }
+        listOrdinals[list][n] = ordinal;
+        System.arraycopy(codes, codesOffset, listCodes[list], n * m, m);
+        listSizes[list] = n + 1;
+    }
+
+    /**
+     * Returns up to {@code k} live entries closest to the (already normalized)
+     * query among the {@code nprobe} nearest cells, best first, restricted to
+     * entries matching {@code filter} unless it is null.
+     */
+    List<SearchResult> search(float[] query, int k, int nprobe, MetadataFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (size == 0 || k <= 0) {
+                return new ArrayList<>();
+            }
+            OrdinalBitmap allowed = null;
+            if (filter != null) {
+                allowed = postings().evaluate(filter);
+                int matching = allowed.cardinality();
+                if (matching == 0) {
+                    return new ArrayList<>();
+                }
+                nprobe = (int) Math.min(nlist, (long) Math.max(1, nprobe) * Math.max(1, size / matching));
+            }
+            TopK cells = new TopK(Math.min(Math.max(1, nprobe), nlist));
+            for (int c = 0; c < nlist; c++) {
+                cells.offer(c, -KMeans.squaredDistance(query, 0, centroids, c * dimension, dimension));
+            }
+            int probes = cells.drain();
+
+            TopK top = new TopK(Math.min(k, idToOrdinal.size()));
+            float[] residual = new float[dimension];
+            float[] table = new float[m * ksub];
+            for (int p = 0; p < probes; p++) {
+                int list = cells.ordinalAt(p);
+                int n = listSizes[list];
+                if (n == 0) {
+                    continue;
+                }
+                int cBase = list * dimension;
+                for (int i = 0; i < dimension; i++) {
+                    residual[i] = query[i] - centroids[cBase + i];
+                }
+                fillDistanceTable(residual, table);
+                int[] ordinals = listOrdinals[list];
+                byte[] codes = listCodes[list];
+                for (int e = 0; e < n; e++) {
+                    int ordinal = ordinals[e];
+                    if (deleted.get(ordinal) || (allowed != null && !allowed.contains(ordinal))) {
+                        continue;
+                    }
+                    int off = e * m;
+                    float distance = 0f;
+                    for (int j = 0; j < m; j++) {
+                        distance += table[j * ksub + (codes[off + j] & 0xFF)];
+                    }
+                    top.offer(ordinal, 1f - distance / 2f);
+                }
+            }
+
+            int n = top.drain();
+            List<SearchResult> results = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int ordinal = top.ordinalAt(i);
+                results.add(new SearchResult(ids[ordinal], top.scoreAt(i), metadataOf(ordinal)));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Built lazily under the read lock; inserts (write lock) keep it current afterwards. */
+    private MetadataPostings postings() {
+        MetadataPostings p = postings;
+        if (p == null) {
+            synchronized (this) {
+                p = postings;
+                if (p == null) {
+                    p = MetadataPostings.build(size, ordinal -> !deleted.get(ordinal), this::metadataOf);
+                    postings = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /** {@code table[j * ksub + c] = |residual_j - codebook_j[c]|^2}, the asymmetric distance table. */
+    private void fillDistanceTable(float[] residual, float[] table) {
+        for (int j = 0; j < m; j++) {
+            int bookBase = j * ksub * dsub;
+            int tableBase = j * ksub;
+            for (int c = 0; c < ksub; c++) {
+                table[tableBase + c] = KMeans.squaredDistance(residual, j * dsub, codebooks, bookBase + c * dsub, dsub);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> metadataOf(int ordinal) {
+        Object m = metadata[ordinal];
+        if (m == null && baseMetadata != null && records[ordinal] >= 0) {
+            return baseMetadata.get(records[ordinal]);
+        }
+        return (Map<String, Object>) m;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        metadata = Arrays.copyOf(metadata, capacity);
+        records = Arrays.copyOf(records, capacity);
+    }
+
+    /**
+     * Writes quantizers and live entries only, so tombstones are dropped and
+     * ordinals are compacted on the next load. The file is written under a
+     * temporary name and moved into place; afterwards the metadata of the
+     * written entries is served from its mapped records instead of the heap.
+     */
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] written;
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            written = write(out);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FlatIndexFile.MetadataBlock block = mapMetadata(file, recordsOffset(written.length), written.length);
+        lock.writeLock().lock();
+        try {
+            baseMetadata = block;
+            for (int record = 0; record < written.length; record++) {
+                int ordinal = written[record];
+                // Entries deleted since the write already dropped their record
+                if (!deleted.get(ordinal)) {
+                    metadata[ordinal] = null;
+                    records[ordinal] = record;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Streams the index as: header, quantizers, each list's live entries (id
+     * and code), the entry count, their metadata records in the same order,
+     * and finally the table of {@code count + 1} record offsets. Returns the
+     * ordinals written, in record order.
+     */
+    private int[] write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dimension);
+        out.writeInt(nlist);
+        out.writeInt(m);
+        out.writeInt(ksub);
+        for (float v : centroids) {
+            out.writeFloat(v);
+        }
+        for (float v : codebooks) {
+            out.writeFloat(v);
+        }
+        int count = idToOrdinal.size();
+        int[] written = new int[count];
+        int n = 0;
+        for (int list = 0; list < nlist; list++) {
+            int live = 0;
+            for (int e = 0; e < listSizes[list]; e++) {
+                if (!deleted.get(listOrdinals[list][e])) {
+                    live++;
+                }
+            }
+            out.writeInt(live);
+            for (int e = 0; e < listSizes[list]; e++) {
+                int ordinal = listOrdinals[list][e];
+                if (deleted.get(ordinal)) {
+                    continue;
+                }
+                out.writeLong(ids[ordinal]);
+                out.write(listCodes[list], e * m, m);
+                written[n++] = ordinal;
+            }
+        }
+        out.writeInt(count);
+        long[] offsets = new long[count + 1];
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(encoded);
+        for (int r = 0; r < count; r++) {
+            int ordinal = written[r];
+            int length;
+            if (metadata[ordinal] == null && baseMetadata != null && records[ordinal] >= 0) {
+                // Still encoded in the previous file: copy the record as is
+                ByteBuffer raw = baseMetadata.raw(records[ordinal]);
+                length = raw.remaining();
+                byte[] bytes = new byte[length];
+                raw.get(bytes);
+                out.write(bytes);
+            } else {
+                encoded.reset();
+                MetadataCodec.write(record, metadataOf(ordinal));
+                length = encoded.size();
+                encoded.writeTo(out);
+            }
+            offsets[r + 1] = offsets[r] + length;
+        }
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+        return written;
+    }
+
+    /** File offset of the metadata records of an index file holding {@code count} entries. */
+    private long recordsOffset(int count) {
+        long header = 6L * Integer.BYTES + (long) (centroids.length + codebooks.length) * Float.BYTES;
+        long lists = (long) nlist * Integer.BYTES + (long) count * (Long.BYTES + m);
+        return header + lists + Integer.BYTES;
+    }
+
+    /** Maps the metadata records and their offset table, which ends the file. */
+    private static FlatIndexFile.MetadataBlock mapMetadata(Path file, long recordsOffset, int count)
+            throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long tableBytes = (long) (count + 1) * Long.BYTES;
+            long tableOffset = ch.size() - tableBytes;
+            long recordsLength = tableOffset - recordsOffset;
+            if (recordsLength < 0) {
+                throw new IOException("Truncated metadata block in " + file);
+            }
+            if (recordsLength > Integer.MAX_VALUE) {
+                throw new IOException("Metadata block too large in " + file);
+            }
+            // DataOutputStream writes big-endian, the default byte order of a mapped buffer
+            LongBuffer table = ch.map(FileChannel.MapMode.READ_ONLY, tableOffset, tableBytes).asLongBuffer();
+            ByteBuffer records = ch.map(FileChannel.MapMode.READ_ONLY, recordsOffset, recordsLength);
+            return new FlatIndexFile.MetadataBlock(count, table, records);
+        }
+    }
+
+    /** Reads an index file; the metadata records are mapped, not decoded. */
+    static IvfPqIndex read(Path file) throws IOException {
+        IvfPqIndex index;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an IVF-PQ index file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported IVF-PQ index version: " + version);
+            }
+            index = readEntries(in);
+            if (in.readInt() != index.size) {
+                throw new IOException("Metadata count does not match the entries in " + file);
+            }
+        }
+        index.baseMetadata = mapMetadata(file, index.recordsOffset(index.size), index.size);
+        for (int ordinal = 0; ordinal < index.size; ordinal++) {
+            index.records[ordinal] = ordinal;
+        }
+        return index;
+    }
+
+    private static IvfPqIndex readEntries(DataInputStream in) throws IOException {
+        int dimension = in.readInt();
+        int nlist = in.readInt();
+        int m = in.readInt();
+        int ksub = in.readInt();
+        float[] centroids = new float[nlist * dimension];
+        for (int i = 0; i < centroids.length; i++) {
+            centroids[i] = in.readFloat();
+        }
+        float[] codebooks = new float[m * ksub * (dimension / m)];
+        for (int i = 0; i < codebooks.length; i++) {
+            codebooks[i] = in.readFloat();
+        }
+        IvfPqIndex index = new IvfPqIndex(dimension, nlist, m, ksub, centroids, codebooks);
+        byte[] code = new byte[m];
+        for (int list = 0; list < nlist; list++) {
+            int count = in.readInt();
+            for (int e = 0; e < count; e++) {
+                long id = in.readLong();
+                in.readFully(code);
+                int ordinal = index.size;
+                index.ensureCapacity(ordinal + 1);
+                index.ids[ordinal] = id;
+                index.append(list, ordinal, code, 0);
+                index.idToOrdinal.put(id, ordinal);
+                index.size++;
+            }
+        }
+        return index;
+    }
+}
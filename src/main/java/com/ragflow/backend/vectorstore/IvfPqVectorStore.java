@@ -0,0 +1,364 @@
+package com.ragflow.backend.vectorstore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compressed store for very large collections, backed by one
+ * {@link IvfPqIndex} per collection ({@code m} bytes per vector instead of
+ * {@code dimension * 4}).
+ * <p>
+ * The quantizers have to be trained on the collection's own vectors. Until
+ * {@code vectorstore.ivf-pq.train-rows} vectors have arrived they are kept in
+ * a plain {@link FlatIndex} and searched exactly; at that point the index is
+ * trained from a snapshot of them on a background thread (or right away when
+ * {@link #train(String)} is called, e.g. after converting an existing
+ * collection). The buffer keeps serving searches and taking writes while
+ * training runs; the rows written meanwhile are replayed into the trained
+ * index before it replaces the buffer and the raw vectors are dropped.
+ * Trained indexes are persisted as {@code <collection>.ivfpq}, untrained
+ * buffers as {@code <collection>.ivfraw}, both under {@code storage.index-dir}.
+ */
+@Component
+public class IvfPqVectorStore implements VectorStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IvfPqVectorStore.class);
+
+    private static final int KMEANS_ITERATIONS = 12;
+
+    @Value("${storage.index-dir:./data/index}")
+    private String indexDir;
+
+    private final VectorStoreSettings settings;
+
+    private final Map<String, IvfPqIndex> indexes = new ConcurrentHashMap<>();
+
+    // Collection -> raw vectors waiting for training
+    private final Map<String, FlatIndex> untrained = new ConcurrentHashMap<>();
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    // Collection -> background training scheduled at train-rows; guarded by this
+    private final Map<String, Future<?>> training = new ConcurrentHashMap<>();
+
+    private final ExecutorService trainer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ivfpq-training");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Serializes trainings, so an explicit train() waits for a background one instead of repeating it
+    private final Object trainLock = new Object();
+
+    // Collection whose buffer snapshot is being trained, guarded by this; its buffer must not be compacted
+    private String trainingCollection;
+
+    public IvfPqVectorStore(VectorStoreSettings settings) {
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.load();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        trainer.shutdownNow();
+    }
+
+    @Override
+    public void upsert(String collection, Long chunkId, float[] vector, Map<String, Object> metadata) {
+        IvfPqIndex index = indexes.get(collection);
+        if (index == null) {
+            // Buffered upserts serialize with the swap in train() so none can land in a buffer being replaced
+            synchronized (this) {
+                index = indexes.get(collection);
+                if (index == null) {
+                    FlatIndex buffer = untrained.computeIfAbsent(collection, c -> new FlatIndex(vector.length));
+                    buffer.upsert(chunkId, vector, metadata);
+                    dirty.add(collection);
+                    if (buffer.size() >= settings.ivfPqTrainRows(collection) && !training.containsKey(collection)) {
+                        training.put(collection, trainer.submit(() -> trainInBackground(collection)));
+                    }
+                    return;
+                }
+            }
+        }
+        index.insert(chunkId, vector, metadata);
+        dirty.add(collection);
+    }
+
+    @Override
+    public List<SearchResult> search(String collection, float[] queryVector, int topK, MetadataFilter filter) {
+        IvfPqIndex index = indexes.get(collection);
+        if (index != null) {
+            if (queryVector.length != index.dimension()) {
+                return Collections.emptyList();
+            }
+            return index.search(VectorMath.normalize(queryVector), topK, settings.ivfPqNprobe(collection), filter);
+        }
+        FlatIndex buffer = untrained.get(collection);
+        FlatIndex.Snapshot view = buffer != null ? buffer.snapshot() : null;
+        if (view == null || view.size() == 0 || queryVector.length != view.dimension()) {
+            return Collections.emptyList();
+        }
+        TopK top = new TopK(Math.min(topK, view.size()));
+        float[] query = VectorMath.normalize(queryVector);
+        if (filter != null) {
+            view.scan(query, buffer.postings(view).evaluate(filter), top);
+        } else {
+            view.scan(query, 0, view.size(), top);
+        }
+        int n = top.drain();
+        List<SearchResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int ordinal = top.ordinalAt(i);
+            results.add(new SearchResult(view.id(ordinal), top.scoreAt(i), view.metadata(ordinal)));
+        }
+        return results;
+    }
+
+    @Override
+    public void delete(String collection, Collection<Long> chunkIds) {
+        IvfPqIndex index = indexes.get(collection);
+        if (index == null) {
+            synchronized (this) {
+                FlatIndex buffer = untrained.get(collection);
+                index = indexes.get(collection);
+                if (index == null) {
+                    if (buffer != null) {
+                        chunkIds.forEach(buffer::delete);
+                        dirty.add(collection);
+                    }
+                    return;
+                }
+            }
+        }
+        for (Long chunkId : chunkIds) {
+            index.delete(chunkId);
+        }
+        dirty.add(collection);
+    }
+
+    @Override
+    public synchronized void dropCollection(String collection) {
+        // A training still running notices the buffer is gone and discards its index
+        training.remove(collection);
+        boolean existed = indexes.remove(collection) != null | untrained.remove(collection) != null;
+        dirty.remove(collection);
+        try {
+            Files.deleteIfExists(Path.of(indexDir, collection + ".ivfpq"));
+            Files.deleteIfExists(Path.of(indexDir, collection + ".ivfraw"));
+            if (existed) {
+                log.info("Dropped IVF-PQ index for collection: {}", collection);
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete IVF-PQ index for collection: " + collection, e);
+        }
+    }
+
+    boolean contains(String collection) {
+        return indexes.containsKey(collection) || untrained.containsKey(collection);
+    }
+
+    Set<String> collections() {
+        Set<String> all = new HashSet<>(indexes.keySet());
+        all.addAll(untrained.keySet());
+        return all;
+    }
+
+    /** Codes and list ordinals of a trained collection, or the buffered rows of an untrained one. */
+    long memoryBytes(String collection) {
+        IvfPqIndex index = indexes.get(collection);
+        if (index != null) {
+            return index.memoryBytes();
+        }
+        FlatIndex buffer = untrained.get(collection);
+        return buffer != null ? buffer.memoryBytes() : 0;
+    }
+
+    /** Waits for a background training of the collection, if one is scheduled. */
+    void awaitTraining(String collection) throws InterruptedException, ExecutionException {
+        Future<?> pending = training.get(collection);
+        if (pending != null) {
+            pending.get();
+        }
+    }
+
+    private void trainInBackground(String collection) {
+        try {
+            train(collection);
+        } catch (RuntimeException e) {
+            log.error("Failed to train IVF-PQ index for collection: " + collection, e);
+        } finally {
+            synchronized (this) {
+                training.remove(collection);
+            }
+        }
+    }
+
+    /**
+     * Trains the coarse and product quantizers from the vectors buffered for
+     * the collection (sampling at most {@link IvfPqIndex#TRAINING_ROWS_PER_CENTROID}
+     * rows per centroid) and moves all of them into the compressed index. Does
+     * nothing for a collection that is already trained or empty.
+     * <p>
+     * Training reads a snapshot of the buffer and takes no lock searches or
+     * writes wait for. Buffer rows are never changed in place, so the writes
+     * made meanwhile are exactly the rows appended past the snapshot and the
+     * snapshot rows tombstoned since; they are replayed into the index under
+     * the store lock, together with the swap.
+     */
+    public void train(String collection) {
+        synchronized (trainLock) {
+            FlatIndex buffer;
+            FlatIndex.Snapshot view;
+            synchronized (this) {
+                buffer = untrained.get(collection);
+                if (buffer == null || indexes.containsKey(collection) || buffer.size() == 0) {
+                    return;
+                }
+                view = buffer.snapshot();
+                trainingCollection = collection;
+            }
+            try {
+                trainFromSnapshot(collection, buffer, view);
+            } finally {
+                synchronized (this) {
+                    trainingCollection = null;
+                }
+            }
+        }
+    }
+
+    private void trainFromSnapshot(String collection, FlatIndex buffer, FlatIndex.Snapshot view) {
+        long start = System.currentTimeMillis();
+        int dim = view.dimension();
+        int nlist = settings.ivfPqNlist(collection);
+        int n = view.size();
+        int sampleRows = (int) Math.min(n, (long) Math.max(nlist, 256) * IvfPqIndex.TRAINING_ROWS_PER_CENTROID);
+        float[] sample = new float[sampleRows * dim];
+        for (int i = 0; i < sampleRows; i++) {
+            // Evenly strided sample, so training does not only see the oldest rows
+            System.arraycopy(view.vector((int) ((long) i * n / sampleRows)), 0, sample, i * dim, dim);
+        }
+        IvfPqIndex index = IvfPqIndex.train(sample, sampleRows, dim, nlist, settings.ivfPqM(collection),
+                KMEANS_ITERATIONS, collection.hashCode());
+        for (int o = 0; o < n; o++) {
+            if (view.isLive(o)) {
+                index.insert(view.id(o), view.vector(o), view.metadata(o));
+            }
+        }
+
+        int replayed = 0;
+        synchronized (this) {
+            if (untrained.get(collection) != buffer) {
+                log.info("IVF-PQ collection {} was dropped or reloaded while training; discarding the trained index",
+                        collection);
+                return;
+            }
+            FlatIndex.Snapshot now = buffer.snapshot();
+            for (int o = 0; o < n; o++) {
+                if (view.isLive(o) && !now.isLive(o)) {
+                    index.delete(view.id(o));
+                    replayed++;
+                }
+            }
+            for (int o = n; o < now.size(); o++) {
+                if (now.isLive(o)) {
+                    index.insert(now.id(o), now.vector(o), now.metadata(o));
+                    replayed++;
+                }
+            }
+            indexes.put(collection, index);
+            untrained.remove(collection);
+            dirty.add(collection);
+        }
+        log.info("Trained IVF-PQ index for collection: {} ({} lists, {} vectors, {} writes replayed) in {} ms",
+                collection, index.nlist(), index.liveCount(), replayed, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public synchronized void save() {
+        File dir = new File(indexDir);
+        if (!dir.exists())
+            dir.mkdirs();
+
+        for (String collection : new ArrayList<>(dirty)) {
+            dirty.remove(collection);
+            try {
+                IvfPqIndex index = indexes.get(collection);
+                if (index != null) {
+                    index.write(dir.toPath().resolve(collection + ".ivfpq"));
+                    Files.deleteIfExists(dir.toPath().resolve(collection + ".ivfraw"));
+                } else if (untrained.containsKey(collection)) {
+                    FlatIndex buffer = untrained.get(collection);
+                    // Not while training: the replay relies on the ordinals of the trained snapshot
+                    if (buffer.deadCount() > 0 && !collection.equals(trainingCollection)) {
+                        buffer = buffer.compact();
+                        untrained.put(collection, buffer);
+                    }
+                    synchronized (buffer) {
+                        FlatIndexFile.write(buffer, dir.toPath().resolve(collection + ".ivfraw"));
+                    }
+                }
+                log.info("Saved IVF-PQ index for collection: {}", collection);
+            } catch (IOException e) {
+                dirty.add(collection);
+                log.error("Failed to save IVF-PQ index for collection: " + collection, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void load() {
+        File dir = new File(indexDir);
+        if (!dir.exists())
+            return;
+
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".ivfpq") || name.endsWith(".ivfraw"));
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            String filename = file.getName();
+            String collection = filename.substring(0, filename.lastIndexOf("."));
+            try {
+                if (filename.endsWith(".ivfpq")) {
+                    IvfPqIndex index = IvfPqIndex.read(file.toPath());
+                    indexes.put(collection, index);
+                    untrained.remove(collection);
+                    log.info("Loaded IVF-PQ index for collection: {} with {} items", collection,
+                            index.liveCount());
+                } else if (!indexes.containsKey(collection)) {
+                    FlatIndex buffer = FlatIndexFile.open(file.toPath(), FlatIndex.DEFAULT_SEGMENT_ROWS);
+                    untrained.put(collection, buffer);
+                    log.info("Loaded {} untrained vectors for IVF-PQ collection: {}", buffer.size(), collection);
+                }
+            } catch (Exception e) {
+                log.error("Failed to load IVF-PQ index from " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+}
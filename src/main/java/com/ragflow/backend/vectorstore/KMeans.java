@@ -0,0 +1,126 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Lloyd's k-means over row-major float data, used to train the coarse and
+ * product quantizers of {@link IvfPqIndex}. Centroids start from distinct
+ * random rows; a cluster that runs empty is re-seeded from a random row of
+ * the largest cluster.
+ */
+final class KMeans {
+
+    private KMeans() {
+    }
+
+    /**
+     * Clusters {@code n} rows of {@code dim} floats starting at {@code data[offset + row * stride]}
+     * into {@code k} centroids (row-major, {@code k * dim}).
+     */
+    static float[] train(float[] data, int offset, int stride, int n, int dim, int k, int iterations,
+            SplittableRandom random) {
+        if (n == 0 || k <= 0) {
+            throw new IllegalArgumentException("k-means needs at least one row and one cluster");
+        }
+        k = Math.min(k, n);
+        float[] centroids = new float[k * dim];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int c = 0; c < k; c++) {
+            int j = c + random.nextInt(n - c);
+            int tmp = order[c];
+            order[c] = order[j];
+            order[j] = tmp;
+            System.arraycopy(data, offset + order[c] * stride, centroids, c * dim, dim);
+        }
+
+        int[] assignment = new int[n];
+        int[] counts = new int[k];
+        double[] sums = new double[k * dim];
+        for (int iter = 0; iter < iterations; iter++) {
+            Arrays.fill(counts, 0);
+            Arrays.fill(sums, 0.0);
+            boolean changed = false;
+            for (int row = 0; row < n; row++) {
+                int rowOffset = offset + row * stride;
+                int best = nearest(data, rowOffset, centroids, k, dim);
+                if (best != assignment[row]) {
+                    changed = true;
+                    assignment[row] = best;
+                }
+                counts[best]++;
+                int base = best * dim;
+                for (int i = 0; i < dim; i++) {
+                    sums[base + i] += data[rowOffset + i];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    reseed(data, offset, stride, n, dim, centroids, c, assignment, counts, random);
+                    changed = true;
+                    continue;
+                }
+                int base = c * dim;
+                for (int i = 0; i < dim; i++) {
+                    centroids[base + i] = (float) (sums[base + i] / counts[c]);
+                }
+            }
+            if (!changed && iter > 0) {
+                break;
+            }
+        }
+        return centroids;
+    }
+
+    /** Index of the centroid with the smallest squared L2 distance to the row. */
+    static int nearest(float[] data, int rowOffset, float[] centroids, int k, int dim) {
+        return nearest(data, rowOffset, centroids, 0, k, dim);
+    }
+
+    /** Same as above for {@code k} centroids stored from {@code centroidsOffset} on. */
+    static int nearest(float[] data, int rowOffset, float[] centroids, int centroidsOffset, int k, int dim) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float d = squaredDistance(data, rowOffset, centroids, centroidsOffset + c * dim, dim);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    static float squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private static void reseed(float[] data, int offset, int stride, int n, int dim, float[] centroids, int empty,
+            int[] assignment, int[] counts, SplittableRandom random) {
+        int largest = 0;
+        for (int c = 1; c < counts.length; c++) {
+            if (counts[c] > counts[largest]) {
+                largest = c;
+            }
+        }
+        // Restart from a random member of the largest cluster, nudged so the two split.
+        int pick = random.nextInt(Math.max(1, counts[largest]));
+        for (int row = 0; row < n; row++) {
+            if (assignment[row] == largest && pick-- == 0) {
+                System.arraycopy(data, offset + row * stride, centroids, empty * dim, dim);
+                break;
+            }
+        }
+        for (int i = 0; i < dim; i++) {
+            centroids[empty * dim + i] *= 1.0001f;
+        }
+    }
+}
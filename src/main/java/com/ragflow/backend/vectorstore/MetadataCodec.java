@@ -0,0 +1,91 @@
+package com.ragflow.backend.vectorstore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, class-independent encoding of chunk metadata maps for the on-disk
+ * index formats. Values are written with a one-byte type tag; anything that is
+ * not a primitive wrapper or String is stored as its toString().
+ */
+final class MetadataCodec {
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+
+    private MetadataCodec() {
+    }
+
+    static void write(DataOutput out, Map<String, Object> metadata) throws IOException {
+        if (metadata == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> e : metadata.entrySet()) {
+            writeString(out, e.getKey());
+            Object v = e.getValue();
+            if (v == null) {
+                out.writeByte(NULL);
+            } else if (v instanceof Long l) {
+                out.writeByte(LONG);
+                out.writeLong(l);
+            } else if (v instanceof Integer i) {
+                out.writeByte(INT);
+                out.writeInt(i);
+            } else if (v instanceof Double || v instanceof Float) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(((Number) v).doubleValue());
+            } else if (v instanceof Boolean b) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(b);
+            } else {
+                out.writeByte(STRING);
+                writeString(out, v.toString());
+            }
+        }
+    }
+
+    static Map<String, Object> read(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Object> metadata = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case NULL -> null;
+                case LONG -> in.readLong();
+                case INT -> in.readInt();
+                case DOUBLE -> in.readDouble();
+                case BOOLEAN -> in.readBoolean();
+                case STRING -> readString(in);
+                default -> throw new IOException("Unknown metadata type tag: " + type);
+            };
+            metadata.put(key, value);
+        }
+        return metadata;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
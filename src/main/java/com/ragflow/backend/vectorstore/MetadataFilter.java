@@ -0,0 +1,143 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Restricts a search to chunks whose stored metadata matches, e.g.
+ * {@code MetadataFilter.in("docId", List.of(3L, 7L))}. Works on any metadata
+ * key, including the {@code docId} / {@code docName} written at indexing time.
+ * <p>
+ * Values are compared in a canonical form: integral numbers as {@code Long}
+ * (so {@code 3}, {@code 3L} and {@code 3.0} match each other), everything
+ * else as its string form.
+ */
+public final class MetadataFilter {
+
+    enum Kind {
+        IN, AND, OR
+    }
+
+    private final Kind kind;
+    private final String key;
+    private final Set<Object> values;
+    private final List<MetadataFilter> children;
+
+    private MetadataFilter(Kind kind, String key, Set<Object> values, List<MetadataFilter> children) {
+        this.kind = kind;
+        this.key = key;
+        this.values = values;
+        this.children = children;
+    }
+
+    public static MetadataFilter eq(String key, Object value) {
+        return in(key, List.of(value));
+    }
+
+    public static MetadataFilter in(String key, Collection<?> values) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Filter key must not be empty");
+        }
+        Set<Object> canonical = new LinkedHashSet<>();
+        for (Object value : values) {
+            canonical.add(canonical(value));
+        }
+        return new MetadataFilter(Kind.IN, key, canonical, List.of());
+    }
+
+    public static MetadataFilter and(MetadataFilter... filters) {
+        return combine(Kind.AND, filters);
+    }
+
+    public static MetadataFilter or(MetadataFilter... filters) {
+        return combine(Kind.OR, filters);
+    }
+
+    /**
+     * Builds the conjunction of one {@code key IN values} clause per entry,
+     * the shape accepted by the query API ({@code {"docId": [3, 7]}}).
+     * Returns null for a null or empty map.
+     */
+    public static MetadataFilter fromMap(Map<String, ? extends Collection<?>> clauses) {
+        if (clauses == null || clauses.isEmpty()) {
+            return null;
+        }
+        List<MetadataFilter> filters = new ArrayList<>();
+        clauses.forEach((key, values) -> filters.add(in(key, values)));
+        return filters.size() == 1 ? filters.get(0) : and(filters.toArray(new MetadataFilter[0]));
+    }
+
+    private static MetadataFilter combine(Kind kind, MetadataFilter... filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("Filter " + kind + " needs at least one operand");
+        }
+        return new MetadataFilter(kind, null, Set.of(), List.of(filters));
+    }
+
+    /** Evaluates the filter against one metadata map, for stores without posting lists. */
+    public boolean matches(Map<String, Object> metadata) {
+        switch (kind) {
+            case IN:
+                if (metadata == null) {
+                    return false;
+                }
+                Object value = metadata.get(key);
+                return value != null && values.contains(canonical(value));
+            case AND:
+                for (MetadataFilter child : children) {
+                    if (!child.matches(metadata)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                for (MetadataFilter child : children) {
+                    if (child.matches(metadata)) {
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    String key() {
+        return key;
+    }
+
+    Set<Object> values() {
+        return values;
+    }
+
+    List<MetadataFilter> children() {
+        return children;
+    }
+
+    static Object canonical(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number n) {
+            double d = n.doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d)) {
+                return (long) d;
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    @Override
+    public String toString() {
+        if (kind == Kind.IN) {
+            return key + " IN " + values;
+        }
+        return kind.name() + children;
+    }
+}
@@ -0,0 +1,165 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index from metadata {@code key -> value} to the ordinals carrying
+ * it, one {@link OrdinalBitmap} per pair, so a {@link MetadataFilter} resolves
+ * to the matching ordinals without touching any vector. Indexes build it on
+ * the first filtered search and keep it up to date on writes from then on.
+ * Deleted ordinals may linger in the lists; callers still check liveness.
+ * <p>
+ * Not synchronized: owners serialize writes against reads with their own
+ * lock, or publish postings with a snapshot and never change them again.
+ * {@link #copyOnWrite()} gives a writer a version sharing every list with the
+ * published one; a value map or bitmap is only copied when a write first
+ * touches it.
+ */
+final class MetadataPostings {
+
+    private final Map<String, Map<Object, OrdinalBitmap>> postings;
+    // Value maps and bitmaps this version may change in place, or null if it owns all of them
+    private final Set<Object> owned;
+
+    private MetadataPostings(Map<String, Map<Object, OrdinalBitmap>> postings, Set<Object> owned) {
+        this.postings = postings;
+        this.owned = owned;
+    }
+
+    MetadataPostings() {
+        this(new HashMap<>(), null);
+    }
+
+    static MetadataPostings build(int size, IntPredicate live, IntFunction<Map<String, Object>> metadata) {
+        MetadataPostings postings = new MetadataPostings();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (live.test(ordinal)) {
+                postings.add(ordinal, metadata.apply(ordinal));
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Returns a version for the next writes that shares all lists with this
+     * one, which stays unchanged from then on.
+     */
+    MetadataPostings copyOnWrite() {
+        return new MetadataPostings(new HashMap<>(postings), Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    void add(int ordinal, Map<String, Object> metadata) {
+        if (metadata == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> e : metadata.entrySet()) {
+            if (e.getValue() == null) {
+                continue;
+            }
+            Map<Object, OrdinalBitmap> byValue = writableValues(e.getKey());
+            Object value = MetadataFilter.canonical(e.getValue());
+            OrdinalBitmap bitmap = byValue.get(value);
+            if (bitmap == null) {
+                bitmap = new OrdinalBitmap();
+                byValue.put(value, bitmap);
+                own(bitmap);
+            } else {
+                bitmap = writableBitmap(byValue, value, bitmap);
+            }
+            bitmap.add(ordinal);
+        }
+    }
+
+    void remove(int ordinal, Map<String, Object> metadata) {
+        if (metadata == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> e : metadata.entrySet()) {
+            Map<Object, OrdinalBitmap> byValue = postings.get(e.getKey());
+            if (byValue == null || e.getValue() == null) {
+                continue;
+            }
+            Object value = MetadataFilter.canonical(e.getValue());
+            OrdinalBitmap bitmap = byValue.get(value);
+            if (bitmap == null || !bitmap.contains(ordinal)) {
+                continue;
+            }
+            byValue = writableValues(e.getKey());
+            bitmap = writableBitmap(byValue, value, bitmap);
+            bitmap.remove(ordinal);
+            if (bitmap.isEmpty()) {
+                byValue.remove(value);
+            }
+        }
+    }
+
+    private Map<Object, OrdinalBitmap> writableValues(String key) {
+        Map<Object, OrdinalBitmap> byValue = postings.get(key);
+        if (byValue == null || !owns(byValue)) {
+            byValue = byValue == null ? new HashMap<>() : new HashMap<>(byValue);
+            postings.put(key, byValue);
+            own(byValue);
+        }
+        return byValue;
+    }
+
+    private OrdinalBitmap writableBitmap(Map<Object, OrdinalBitmap> byValue, Object value, OrdinalBitmap bitmap) {
+        if (!owns(bitmap)) {
+            bitmap = bitmap.copy();
+            byValue.put(value, bitmap);
+            own(bitmap);
+        }
+        return bitmap;
+    }
+
+    private boolean owns(Object list) {
+        return owned == null || owned.contains(list);
+    }
+
+    private void own(Object list) {
+        if (owned != null) {
+            owned.add(list);
+        }
+    }
+
+    /** Returns a new bitmap of the ordinals matching the filter. */
+    OrdinalBitmap evaluate(MetadataFilter filter) {
+        switch (filter.kind()) {
+            case IN: {
+                Map<Object, OrdinalBitmap> byValue = postings.getOrDefault(filter.key(), Map.of());
+                OrdinalBitmap result = new OrdinalBitmap();
+                for (Object value : filter.values()) {
+                    OrdinalBitmap bitmap = byValue.get(value);
+                    if (bitmap != null) {
+                        result = result.isEmpty() ? bitmap.copy() : OrdinalBitmap.or(result, bitmap);
+                    }
+                }
+                return result;
+            }
+            case AND: {
+                OrdinalBitmap result = null;
+                for (MetadataFilter child : filter.children()) {
+                    OrdinalBitmap bitmap = evaluate(child);
+                    result = result == null ? bitmap : OrdinalBitmap.and(result, bitmap);
+                    if (result.isEmpty()) {
+                        break;
+                    }
+                }
+                return result;
+            }
+            default: {
+                OrdinalBitmap result = new OrdinalBitmap();
+                for (MetadataFilter child : filter.children()) {
+                    result = OrdinalBitmap.or(result, evaluate(child));
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (ordinal, score) pairs backed by primitive arrays, so graph
+ * traversal does not box or allocate per visited node. A "min" heap keeps the
+ * lowest score on top (used for bounded result sets), a "max" heap the highest
+ * (used for best-first candidate expansion).
+ */
+final class NodeHeap {
+
+    private final boolean minHeap;
+    private int[] nodes;
+    private float[] scores;
+    private int size;
+
+    NodeHeap(int initialCapacity, boolean minHeap) {
+        this.minHeap = minHeap;
+        this.nodes = new int[Math.max(4, initialCapacity)];
+        this.scores = new float[nodes.length];
+    }
+
+    static NodeHeap min(int initialCapacity) {
+        return new NodeHeap(initialCapacity, true);
+    }
+
+    static NodeHeap max(int initialCapacity) {
+        return new NodeHeap(initialCapacity, false);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    void push(int node, float score) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(score, scores[parent])) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    int pop() {
+        int top = nodes[0];
+        size--;
+        if (size > 0) {
+            siftDown(nodes[size], scores[size]);
+        }
+        return top;
+    }
+
+    /**
+     * Copies the heap content into the given arrays ordered best (highest
+     * score) first, emptying the heap. Returns the number of entries written.
+     */
+    int drainDescending(int[] outNodes, float[] outScores) {
+        int n = size;
+        if (minHeap) {
+            for (int i = n - 1; i >= 0; i--) {
+                outScores[i] = topScore();
+                outNodes[i] = pop();
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                outScores[i] = topScore();
+                outNodes[i] = pop();
+            }
+        }
+        return n;
+    }
+
+    private void siftDown(int node, float score) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && above(scores[right], scores[child])) {
+                child = right;
+            }
+            if (!above(scores[child], score)) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    private boolean above(float a, float b) {
+        return minHeap ? a < b : a > b;
+    }
+}
@@ -0,0 +1,166 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits a brute-force scan over ordinals {@code [0, n)} into fixed-size
+ * slices and scores them on a shared worker pool. Every participant keeps its
+ * own {@link TopK}; the calling thread merges them at the end.
+ * <p>
+ * Admission control: the calling thread always scans slices itself, and a
+ * query only borrows up to {@code maxWorkersPerQuery} pool threads, which
+ * pull slices from a shared cursor. Helpers are submitted to a bounded queue
+ * and simply not added when it is full, so a very large query can never
+ * occupy the whole pool and a busy pool degrades queries to single-threaded
+ * scans instead of queueing them behind each other. {@link #forEach} offers
+ * the same scheme for arbitrary work items, e.g. one per collection.
+ */
+final class ParallelScanner implements AutoCloseable {
+
+    /** Scores one ordinal range into a participant-local top-K. */
+    @FunctionalInterface
+    interface RangeScan {
+        void scan(int from, int to, TopK top);
+    }
+
+    /** Processes one item of a {@link #forEach} call on behalf of a participant. */
+    @FunctionalInterface
+    interface Task {
+        void run(int participant, int item);
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final int sliceRows;
+    private final int maxWorkersPerQuery;
+
+    ParallelScanner(int workers, int sliceRows, int maxWorkersPerQuery) {
+        this("vectorstore-search-", workers, sliceRows, maxWorkersPerQuery);
+    }
+
+    ParallelScanner(String threadNamePrefix, int workers, int sliceRows, int maxWorkersPerQuery) {
+        int threads = Math.max(1, workers);
+        this.sliceRows = Math.max(1, sliceRows);
+        this.maxWorkersPerQuery = maxWorkersPerQuery > 0 ? Math.min(maxWorkersPerQuery, threads)
+                : Math.max(1, threads / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 2), r -> {
+                    Thread t = new Thread(r, threadNamePrefix + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Returns the best {@code k} ordinals of {@code [0, n)}; the result is not drained yet. */
+    TopK scan(int n, int k, RangeScan scan) {
+        TopK result = new TopK(Math.min(k, n));
+        int slices = (n + sliceRows - 1) / sliceRows;
+        if (slices <= 1) {
+            scan.scan(0, n, result);
+            return result;
+        }
+
+        TopK[] partials = new TopK[participants(slices)];
+        partials[0] = result;
+        for (int p = 1; p < partials.length; p++) {
+            partials[p] = new TopK(Math.min(k, n));
+        }
+        forEach(slices, (participant, slice) -> {
+            int from = slice * sliceRows;
+            scan.scan(from, Math.min(n, from + sliceRows), partials[participant]);
+        });
+        // Partials of helpers that never got to run are simply empty
+        for (int p = 1; p < partials.length; p++) {
+            result.offerAll(partials[p]);
+        }
+        return result;
+    }
+
+    /** Number of participants {@link #forEach} uses for {@code items} items, the caller included. */
+    int participants(int items) {
+        return 1 + Math.max(0, Math.min(maxWorkersPerQuery, items - 1));
+    }
+
+    /**
+     * Runs {@code task} once for every item in {@code [0, items)}. Participant
+     * 0 is the calling thread, the others are pool threads; each participant
+     * runs its items sequentially, so per-participant state needs no locking.
+     */
+    void forEach(int items, Task task) {
+        int helpers = participants(items) - 1;
+        AtomicInteger cursor = new AtomicInteger();
+        if (helpers == 0) {
+            drain(cursor, items, 0, task);
+            return;
+        }
+
+        Runnable[] tasks = new Runnable[helpers];
+        // A helper runs only if it claims its slot before the caller gives up on it
+        AtomicBoolean[] claimed = new AtomicBoolean[helpers];
+        CountDownLatch done = new CountDownLatch(helpers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int h = 0; h < helpers; h++) {
+            int participant = h + 1;
+            AtomicBoolean slot = new AtomicBoolean();
+            claimed[h] = slot;
+            tasks[h] = () -> {
+                if (!slot.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    drain(cursor, items, participant, task);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            };
+            try {
+                pool.execute(tasks[h]);
+            } catch (RejectedExecutionException busy) {
+                // Pool saturated: this query continues with fewer helpers
+                tasks[h] = null;
+            }
+        }
+
+        drain(cursor, items, 0, task);
+        // Helpers still queued when the caller is done are not waited for.
+        for (int h = 0; h < helpers; h++) {
+            if (claimed[h].compareAndSet(false, true)) {
+                if (tasks[h] != null) {
+                    pool.remove(tasks[h]);
+                }
+                done.countDown();
+            }
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for search workers", e);
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Search worker failed", failure.get());
+        }
+    }
+
+    private static void drain(AtomicInteger cursor, int items, int participant, Task task) {
+        int item;
+        while ((item = cursor.getAndIncrement()) < items) {
+            task.run(participant, item);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
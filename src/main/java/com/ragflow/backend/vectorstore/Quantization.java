@@ -0,0 +1,15 @@
+package com.ragflow.backend.vectorstore;
+
+/**
+ * Encodings a flat collection can be stored or scanned with.
+ */
+public enum Quantization {
+    /** Full-precision float32 vectors. */
+    NONE,
+    /** Per-dimension scalar int8 codes, optionally rescored against the floats. */
+    INT8,
+    /** 1-bit sign codes scanned by Hamming distance, candidates re-ranked against the floats. */
+    BINARY,
+    /** Rows stored (in memory and in the {@code .faiss} file) as IEEE float16 and scanned exactly. */
+    FLOAT16
+}
@@ -0,0 +1,178 @@
+package com.ragflow.backend.vectorstore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link VectorStore} the rest of the application talks to. Each
+ * collection is served by the implementation selected through
+ * {@code vectorstore.collections.<name>.type} (see {@link VectorStoreSettings}).
+ */
+@Primary
+@Component
+public class RoutingVectorStore implements VectorStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingVectorStore.class);
+
+    private final FaissVectorStore flatStore;
+    private final HnswVectorStore hnswStore;
+    private final IvfPqVectorStore ivfPqStore;
+    private final VectorStoreSettings settings;
+
+    @Value("${vectorstore.search.collection-workers:0}")
+    private int collectionWorkers = 0;
+
+    private volatile ParallelScanner collectionSearch;
+
+    public RoutingVectorStore(FaissVectorStore flatStore, HnswVectorStore hnswStore, IvfPqVectorStore ivfPqStore,
+            VectorStoreSettings settings) {
+        this.flatStore = flatStore;
+        this.hnswStore = hnswStore;
+        this.ivfPqStore = ivfPqStore;
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void init() {
+        migrateFromFlat();
+    }
+
+    @Override
+    public void upsert(String collection, Long chunkId, float[] vector, Map<String, Object> metadata) {
+        storeFor(collection).upsert(collection, chunkId, vector, metadata);
+    }
+
+    @Override
+    public void replace(String collection, Collection<Long> deleteIds, List<Entry> entries) {
+        VectorStore store = storeFor(collection);
+        store.replace(collection, deleteIds, entries);
+        if (store != flatStore) {
+            flatStore.delete(collection, deleteIds);
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(String collection, float[] queryVector, int topK, MetadataFilter filter) {
+        return storeFor(collection).search(collection, queryVector, topK, filter);
+    }
+
+    @Override
+    public List<List<SearchResult>> searchBatch(String collection, List<float[]> queryVectors, int topK) {
+        return storeFor(collection).searchBatch(collection, queryVectors, topK);
+    }
+
+    /**
+     * Searches the collections concurrently on a shared pool (the calling
+     * thread included), each one feeding the same bounded top-K.
+     */
+    @Override
+    public List<SearchResult> search(Collection<String> collections, float[] queryVector, int topK,
+            MetadataFilter filter) {
+        List<String> targets = collections.stream().distinct().toList();
+        if (targets.size() <= 1) {
+            return VectorStore.super.search(targets, queryVector, topK, filter);
+        }
+        SharedTopK top = new SharedTopK(topK);
+        collectionSearch().forEach(targets.size(), (participant, i) -> {
+            String collection = targets.get(i);
+            top.offerAll(storeFor(collection).search(collection, queryVector, topK, filter));
+        });
+        return top.results();
+    }
+
+    private ParallelScanner collectionSearch() {
+        ParallelScanner s = collectionSearch;
+        if (s == null) {
+            synchronized (this) {
+                s = collectionSearch;
+                if (s == null) {
+                    int workers = collectionWorkers > 0 ? collectionWorkers
+                            : Runtime.getRuntime().availableProcessors();
+                    s = new ParallelScanner("vectorstore-collections-", workers, 1, workers);
+                    collectionSearch = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (collectionSearch != null) {
+            collectionSearch.close();
+        }
+    }
+
+    @Override
+    public void delete(String collection, Collection<Long> chunkIds) {
+        VectorStore store = storeFor(collection);
+        store.delete(collection, chunkIds);
+        if (store != flatStore) {
+            // The flat copy a collection was migrated from must not bring deleted chunks back
+            flatStore.delete(collection, chunkIds);
+        }
+    }
+
+    @Override
+    public void dropCollection(String collection) {
+        flatStore.dropCollection(collection);
+        hnswStore.dropCollection(collection);
+        ivfPqStore.dropCollection(collection);
+    }
+
+    @Override
+    public void save() {
+        flatStore.save();
+        hnswStore.save();
+        ivfPqStore.save();
+    }
+
+    @Override
+    public void load() {
+        flatStore.load();
+        hnswStore.load();
+        ivfPqStore.load();
+        migrateFromFlat();
+    }
+
+    private VectorStore storeFor(String collection) {
+        return switch (settings.indexType(collection)) {
+            case FLAT -> flatStore;
+            case HNSW -> hnswStore;
+            case IVF_PQ -> ivfPqStore;
+        };
+    }
+
+    /**
+     * Collections switched to HNSW or IVF-PQ after they were indexed only
+     * exist in the flat store; build the new index from the stored vectors so
+     * no re-embedding is needed. IVF-PQ quantizers are trained right away on
+     * the converted vectors.
+     */
+    private void migrateFromFlat() {
+        for (String collection : flatStore.collections()) {
+            IndexType type = settings.indexType(collection);
+            if (type == IndexType.HNSW && !hnswStore.contains(collection)) {
+                log.info("Building HNSW index for collection {} from flat index", collection);
+                flatStore.forEach(collection, (chunkId, vector, metadata) -> hnswStore.upsert(collection, chunkId,
+                        vector, metadata));
+                hnswStore.save();
+            } else if (type == IndexType.IVF_PQ && !ivfPqStore.contains(collection)) {
+                log.info("Building IVF-PQ index for collection {} from flat index", collection);
+                flatStore.forEach(collection, (chunkId, vector, metadata) -> ivfPqStore.upsert(collection, chunkId,
+                        vector, metadata));
+                ivfPqStore.train(collection);
+                ivfPqStore.save();
+            }
+        }
+    }
+}
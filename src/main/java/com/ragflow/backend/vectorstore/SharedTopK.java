@@ -0,0 +1,75 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded top-K over {@link SearchResult}s that several collection searches
+ * offer into concurrently. Per-collection results arrive best first, so an
+ * offer stops at the first result that can no longer make the cut.
+ */
+final class SharedTopK {
+
+    private final int k;
+    private final SearchResult[] heap;
+    private int size;
+
+    SharedTopK(int k) {
+        this.k = Math.max(0, k);
+        this.heap = new SearchResult[this.k];
+    }
+
+    /** Offers results sorted by descending score. */
+    synchronized void offerAll(List<SearchResult> results) {
+        for (SearchResult r : results) {
+            if (size < k) {
+                siftUp(r);
+            } else if (k > 0 && r.getScore() > heap[0].getScore()) {
+                siftDown(r);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /** Returns the retained results, best first. */
+    synchronized List<SearchResult> results() {
+        List<SearchResult> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            out.add(heap[i]);
+        }
+        out.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return out;
+    }
+
+    private void siftUp(SearchResult r) {
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].getScore() <= r.getScore()) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = r;
+    }
+
+    private void siftDown(SearchResult r) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && heap[right].getScore() < heap[child].getScore()) {
+                child = right;
+            }
+            if (heap[child].getScore() >= r.getScore()) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = r;
+    }
+}
@@ -0,0 +1,29 @@
+package com.ragflow.backend.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * Bitmap of deleted ordinals shared between a writer and lock-free scans.
+ * The writer only sets bits and grows the array copy-on-write, so a reader
+ * holding an older array sees every row it could see before, at worst
+ * without the newest deletions.
+ */
+final class Tombstones {
+
+    private Tombstones() {
+    }
+
+    static boolean contains(long[] bits, int ordinal) {
+        int word = ordinal >>> 6;
+        return word < bits.length && (bits[word] & (1L << ordinal)) != 0;
+    }
+
+    /** Marks the ordinal, returning the array to publish (grown if needed). */
+    static long[] with(long[] bits, int ordinal) {
+        int word = ordinal >>> 6;
+        long[] result = bits == null ? new long[word + 1]
+                : word < bits.length ? bits : Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+        result[word] |= 1L << ordinal;
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+package com.ragflow.backend.vectorstore;
+
+/**
+ * Fixed-capacity min-heap that keeps the {@code k} highest-scoring ordinals
+ * seen so far in two primitive arrays. Selecting K out of N costs
+ * O(N log K) time and no per-candidate allocation; callers only materialize
+ * result objects for the final winners.
+ */
+final class TopK {
+
+    private final int k;
+    private final int[] ordinals;
+    private final float[] scores;
+    private int size;
+
+    TopK(int k) {
+        this.k = Math.max(0, k);
+        this.ordinals = new int[this.k];
+        this.scores = new float[this.k];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == k;
+    }
+
+    /** Lowest retained score, i.e. the bar a new candidate has to beat once full. */
+    float threshold() {
+        return size == k && k > 0 ? scores[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    void offer(int ordinal, float score) {
+        if (size < k) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                ordinals[i] = ordinals[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ordinals[i] = ordinal;
+            scores[i] = score;
+        } else if (k > 0 && score > scores[0]) {
+            siftDown(ordinal, score, size);
+        }
+    }
+
+    /** Offers every entry retained by {@code other}, e.g. to merge per-worker results. */
+    void offerAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ordinals[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Sorts the retained entries best first into the heap arrays and returns
+     * the count. The heap is empty afterwards; read the winners with
+     * {@link #ordinalAt(int)} / {@link #scoreAt(int)}.
+     */
+    int drain() {
+        int n = size;
+        while (size > 1) {
+            int last = --size;
+            int topOrdinal = ordinals[0];
+            float topScore = scores[0];
+            siftDown(ordinals[last], scores[last], last);
+            ordinals[last] = topOrdinal;
+            scores[last] = topScore;
+        }
+        size = 0;
+        return n;
+    }
+
+    int ordinalAt(int i) {
+        return ordinals[i];
+    }
+
+    float scoreAt(int i) {
+        return scores[i];
+    }
+
+    private void siftDown(int ordinal, float score, int heapSize) {
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < heapSize && scores[right] < scores[child]) {
+                child = right;
+            }
+            if (scores[child] >= score) {
+                break;
+            }
+            ordinals[i] = ordinals[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ordinals[i] = ordinal;
+        scores[i] = score;
+    }
+}
@@ -0,0 +1,93 @@
+package com.ragflow.backend.vectorstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Vector kernels shared by the index implementations. The dot product runs
+ * on {@code jdk.incubator.vector} lanes ({@link SimdDotProduct}) when the JVM
+ * was started with {@code --add-modules jdk.incubator.vector}, and on an
+ * unrolled scalar loop otherwise. {@code -Dvectorstore.simd=false} forces the
+ * scalar path.
+ */
+final class VectorMath {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorMath.class);
+
+    /** Dot product kernel over {@code length} floats of two arrays. */
+    interface DotProduct {
+        float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+    }
+
+    private static final DotProduct DOT = selectKernel();
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return DOT.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /** Name of the active dot product kernel, for diagnostics. */
+    static String kernel() {
+        return DOT instanceof SimdDotProduct ? "simd" : "scalar";
+    }
+
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int upper = length & ~3; i < upper; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Writes the unit-length version of {@code src} into {@code dst} at
+     * {@code offset}. A zero vector is copied unchanged (it scores 0 against
+     * everything).
+     */
+    static void normalizeInto(float[] src, float[] dst, int offset) {
+        double norm = 0.0;
+        for (float v : src) {
+            norm += v * v;
+        }
+        float scale = norm > 0 ? (float) (1.0 / Math.sqrt(norm)) : 1f;
+        for (int i = 0; i < src.length; i++) {
+            dst[offset + i] = src[i] * scale;
+        }
+    }
+
+    static float[] normalize(float[] v) {
+        float[] out = new float[v.length];
+        normalizeInto(v, out, 0);
+        return out;
+    }
+
+    private static DotProduct selectKernel() {
+        if (Boolean.parseBoolean(System.getProperty("vectorstore.simd", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded reflectively so this class links without the incubator module
+                DotProduct simd = (DotProduct) Class.forName("com.ragflow.backend.vectorstore.SimdDotProduct")
+                        .getDeclaredConstructor().newInstance();
+                log.info("Vector scoring uses SIMD kernel ({})", simd);
+                return simd;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("SIMD kernel unavailable, using scalar dot product", e);
+            }
+        } else {
+            log.info("Vector scoring uses scalar kernel (start with --add-modules jdk.incubator.vector for SIMD)");
+        }
+        return VectorMath::scalarDot;
+    }
+}
@@ -0,0 +1,414 @@
+package com.ragflow.backend.vectorstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A fixed-capacity run of rows of a {@link FlatIndex}, stored either in a heap
+ * array or in a memory-mapped region of the index file, as float32 or (for
+ * {@code quantization: float16}) as IEEE binary16 widened while scanning.
+ * Ordinals are split into segments so a single collection can exceed the 2 GB
+ * limit of one Java buffer and so scans can work segment by segment.
+ */
+abstract class VectorSegment {
+
+    /** Rows per tile of a batch scan; a tile is scored against a block of queries while it is in cache. */
+    static final int BATCH_TILE_ROWS = 64;
+    static final int BATCH_QUERY_BLOCK = 8;
+
+    final int dimension;
+    final int capacity;
+
+    VectorSegment(int dimension, int capacity) {
+        this.dimension = dimension;
+        this.capacity = capacity;
+    }
+
+    abstract void set(int row, float[] vector);
+
+    abstract void get(int row, float[] dst, int dstOffset);
+
+    /** Bytes of row storage held by this segment, on the heap or mapped. */
+    abstract long memoryBytes();
+
+    /** The part of {@link #memoryBytes()} held on the Java heap rather than in a file mapping. */
+    long heapBytes() {
+        return memoryBytes();
+    }
+
+    /**
+     * Scores rows {@code [fromRow, toRow)} against the unit-length query by dot
+     * product (rows are stored normalized, so this is their cosine) and offers
+     * them to {@code top} as {@code ordinalBase + row}, skipping ordinals set in
+     * {@code deleted} (null when nothing was deleted).
+     */
+    abstract void scan(float[] query, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK top);
+
+    /** Batch variant of {@link #scan}: row {@code r} is offered to {@code tops[q]} for every query {@code q}. */
+    abstract void scanBatch(float[][] queries, int fromRow, int toRow, int ordinalBase, long[] deleted,
+            TopK[] tops);
+
+    /**
+     * Scores rows {@code [firstRow, firstRow + rows)} of {@code block} against
+     * all queries in tiles of {@link #BATCH_TILE_ROWS} rows: each tile is
+     * loaded once and multiplied with {@link #BATCH_QUERY_BLOCK} queries at a
+     * time, so the rows are reused from cache instead of being streamed from
+     * memory once per query.
+     */
+    static void scoreTiles(float[][] queries, float[] block, int firstRow, int rows, int dim, int firstOrdinal,
+            long[] deleted, TopK[] tops) {
+        for (int t = 0; t < rows; t += BATCH_TILE_ROWS) {
+            int tileRows = Math.min(BATCH_TILE_ROWS, rows - t);
+            for (int q0 = 0; q0 < queries.length; q0 += BATCH_QUERY_BLOCK) {
+                int q1 = Math.min(queries.length, q0 + BATCH_QUERY_BLOCK);
+                for (int r = t; r < t + tileRows; r++) {
+                    int ordinal = firstOrdinal + r;
+                    if (deleted != null && Tombstones.contains(deleted, ordinal)) {
+                        continue;
+                    }
+                    int offset = (firstRow + r) * dim;
+                    for (int q = q0; q < q1; q++) {
+                        tops[q].offer(ordinal, VectorMath.dot(queries[q], 0, block, offset, dim));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Writes rows {@code [0, rows)} as little-endian float32, or float16 when {@code half} is set. */
+    void writeTo(WritableByteChannel channel, int rows, ByteBuffer scratch, boolean half) throws IOException {
+        float[] row = new float[dimension];
+        scratch.clear();
+        for (int r = 0; r < rows; r++) {
+            get(r, row, 0);
+            for (float v : row) {
+                if (scratch.remaining() < Float.BYTES) {
+                    drain(channel, scratch);
+                }
+                if (half) {
+                    scratch.putShort(Float16.fromFloat(v));
+                } else {
+                    scratch.putFloat(v);
+                }
+            }
+        }
+        drain(channel, scratch);
+    }
+
+    private static void drain(WritableByteChannel channel, ByteBuffer scratch) throws IOException {
+        scratch.flip();
+        while (scratch.hasRemaining()) {
+            channel.write(scratch);
+        }
+        scratch.clear();
+    }
+
+    /** Rows held in a heap array that grows up to the segment capacity. */
+    static final class Heap extends VectorSegment {
+        // Replaced by a larger copy on growth; volatile so lock-free readers see its contents
+        private volatile float[] data;
+
+        Heap(int dimension, int capacity, int initialRows) {
+            super(dimension, capacity);
+            this.data = new float[Math.max(1, Math.min(capacity, initialRows)) * dimension];
+        }
+
+        /** Makes room for {@code rows} rows; the array is replaced before new rows are published. */
+        void ensureRows(int rows) {
+            if (rows * dimension <= data.length) {
+                return;
+            }
+            int current = data.length / dimension;
+            int grown = Math.min(capacity, Math.max(rows, current + (current >> 1) + 1));
+            data = Arrays.copyOf(data, grown * dimension);
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            ensureRows(row + 1);
+            System.arraycopy(vector, 0, data, row * dimension, dimension);
+        }
+
+        @Override
+        void get(int row, float[] dst, int dstOffset) {
+            System.arraycopy(data, row * dimension, dst, dstOffset, dimension);
+        }
+
+        @Override
+        long memoryBytes() {
+            return (long) data.length * Float.BYTES;
+        }
+
+        @Override
+        void scan(float[] query, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK top) {
+            float[] block = data;
+            int dim = dimension;
+            for (int r = fromRow; r < toRow; r++) {
+                if (deleted != null && Tombstones.contains(deleted, ordinalBase + r)) {
+                    continue;
+                }
+                top.offer(ordinalBase + r, VectorMath.dot(query, 0, block, r * dim, dim));
+            }
+        }
+
+        @Override
+        void scanBatch(float[][] queries, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK[] tops) {
+            scoreTiles(queries, data, fromRow, toRow - fromRow, dimension, ordinalBase + fromRow, deleted, tops);
+        }
+    }
+
+    /**
+     * Rows that are not stored as a float array: scans copy (and widen) blocks
+     * of rows into one so the dot product kernel works on arrays.
+     */
+    abstract static class Blocked extends VectorSegment {
+        private static final int SCAN_BLOCK_FLOATS = 16 * 1024;
+
+        Blocked(int dimension, int capacity) {
+            super(dimension, capacity);
+        }
+
+        /** Copies rows {@code [fromRow, fromRow + rows)} as floats to the start of {@code dst}. */
+        abstract void copyRows(int fromRow, int rows, float[] dst);
+
+        @Override
+        void scan(float[] query, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK top) {
+            int dim = dimension;
+            int blockRows = Math.max(1, Math.min(toRow - fromRow, SCAN_BLOCK_FLOATS / dim));
+            float[] block = new float[blockRows * dim];
+            for (int start = fromRow; start < toRow; start += blockRows) {
+                int n = Math.min(blockRows, toRow - start);
+                copyRows(start, n, block);
+                for (int r = 0; r < n; r++) {
+                    if (deleted != null && Tombstones.contains(deleted, ordinalBase + start + r)) {
+                        continue;
+                    }
+                    top.offer(ordinalBase + start + r, VectorMath.dot(query, 0, block, r * dim, dim));
+                }
+            }
+        }
+
+        @Override
+        void scanBatch(float[][] queries, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK[] tops) {
+            int dim = dimension;
+            int blockRows = Math.max(1, Math.min(toRow - fromRow, SCAN_BLOCK_FLOATS / dim));
+            float[] block = new float[blockRows * dim];
+            for (int start = fromRow; start < toRow; start += blockRows) {
+                int n = Math.min(blockRows, toRow - start);
+                copyRows(start, n, block);
+                scoreTiles(queries, block, 0, n, dim, ordinalBase + start, deleted, tops);
+            }
+        }
+    }
+
+    /**
+     * Rows backed by a private (copy-on-write) mapping of the index file:
+     * nothing is read until a page is touched, and in-place overwrites never
+     * reach the file.
+     */
+    static final class Mapped extends Blocked {
+        private final FloatBuffer data;
+
+        Mapped(int dimension, int capacity, ByteBuffer mapped) {
+            super(dimension, capacity);
+            this.data = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+
+        int rows() {
+            return data.capacity() / dimension;
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            data.put(row * dimension, vector, 0, dimension);
+        }
+
+        @Override
+        void get(int row, float[] dst, int dstOffset) {
+            data.get(row * dimension, dst, dstOffset, dimension);
+        }
+
+        @Override
+        long memoryBytes() {
+            return (long) data.capacity() * Float.BYTES;
+        }
+
+        @Override
+        long heapBytes() {
+            return 0;
+        }
+
+        @Override
+        void copyRows(int fromRow, int rows, float[] dst) {
+            data.get(fromRow * dimension, dst, 0, rows * dimension);
+        }
+    }
+
+    /** Float16 rows in a heap {@code short[]} that grows up to the segment capacity. */
+    static final class Half extends Blocked {
+        // Replaced by a larger copy on growth; volatile so lock-free readers see its contents
+        private volatile short[] data;
+
+        Half(int dimension, int capacity, int initialRows) {
+            super(dimension, capacity);
+            this.data = new short[Math.max(1, Math.min(capacity, initialRows)) * dimension];
+        }
+
+        private void ensureRows(int rows) {
+            if (rows * dimension <= data.length) {
+                return;
+            }
+            int current = data.length / dimension;
+            int grown = Math.min(capacity, Math.max(rows, current + (current >> 1) + 1));
+            data = Arrays.copyOf(data, grown * dimension);
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            ensureRows(row + 1);
+            short[] d = data;
+            int offset = row * dimension;
+            for (int i = 0; i < dimension; i++) {
+                d[offset + i] = Float16.fromFloat(vector[i]);
+            }
+        }
+
+        @Override
+        void get(int row, float[] dst, int dstOffset) {
+            Float16.toFloats(data, row * dimension, dst, dstOffset, dimension);
+        }
+
+        @Override
+        long memoryBytes() {
+            return (long) data.length * Short.BYTES;
+        }
+
+        @Override
+        void copyRows(int fromRow, int rows, float[] dst) {
+            Float16.toFloats(data, fromRow * dimension, dst, 0, rows * dimension);
+        }
+    }
+
+    /** Float16 rows backed by a private mapping of the index file, like {@link Mapped}. */
+    static final class MappedHalf extends Blocked {
+        private final ShortBuffer data;
+
+        MappedHalf(int dimension, int capacity, ByteBuffer mapped) {
+            super(dimension, capacity);
+            this.data = mapped.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        }
+
+        int rows() {
+            return data.capacity() / dimension;
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            int offset = row * dimension;
+            for (int i = 0; i < dimension; i++) {
+                data.put(offset + i, Float16.fromFloat(vector[i]));
+            }
+        }
+
+        @Override
+        void get(int row, float[] dst, int dstOffset) {
+            copy(row * dimension, dst, dstOffset, dimension);
+        }
+
+        @Override
+        long memoryBytes() {
+            return (long) data.capacity() * Short.BYTES;
+        }
+
+        @Override
+        long heapBytes() {
+            return 0;
+        }
+
+        @Override
+        void copyRows(int fromRow, int rows, float[] dst) {
+            copy(fromRow * dimension, dst, 0, rows * dimension);
+        }
+
+        private void copy(int from, float[] dst, int dstOffset, int length) {
+            ShortBuffer d = data;
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = Float16.toFloat(d.get(from + i));
+            }
+        }
+    }
+
+    /**
+     * A short mapped tail segment that grows on the heap: rows below
+     * {@code baseRows} stay in the mapping, appended rows go to {@code suffix},
+     * so appending after a checkpoint does not copy the mapped rows back.
+     */
+    static final class Extended extends VectorSegment {
+        private final VectorSegment base;
+        private final int baseRows;
+        private final VectorSegment suffix;
+
+        /** {@code suffix} holds rows from {@code baseRows} on and has capacity {@code capacity - baseRows}. */
+        Extended(VectorSegment base, int baseRows, VectorSegment suffix) {
+            super(base.dimension, base.capacity);
+            this.base = base;
+            this.baseRows = baseRows;
+            this.suffix = suffix;
+        }
+
+        @Override
+        void set(int row, float[] vector) {
+            if (row < baseRows) {
+                base.set(row, vector);
+            } else {
+                suffix.set(row - baseRows, vector);
+            }
+        }
+
+        @Override
+        void get(int row, float[] dst, int dstOffset) {
+            if (row < baseRows) {
+                base.get(row, dst, dstOffset);
+            } else {
+                suffix.get(row - baseRows, dst, dstOffset);
+            }
+        }
+
+        @Override
+        long memoryBytes() {
+            return base.memoryBytes() + suffix.memoryBytes();
+        }
+
+        @Override
+        long heapBytes() {
+            return base.heapBytes() + suffix.heapBytes();
+        }
+
+        @Override
+        void scan(float[] query, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK top) {
+            if (fromRow < baseRows) {
+                base.scan(query, fromRow, Math.min(toRow, baseRows), ordinalBase, deleted, top);
+            }
+            if (toRow > baseRows) {
+                suffix.scan(query, Math.max(fromRow, baseRows) - baseRows, toRow - baseRows, ordinalBase + baseRows,
+                        deleted, top);
+            }
+        }
+
+        @Override
+        void scanBatch(float[][] queries, int fromRow, int toRow, int ordinalBase, long[] deleted, TopK[] tops) {
+            if (fromRow < baseRows) {
+                base.scanBatch(queries, fromRow, Math.min(toRow, baseRows), ordinalBase, deleted, tops);
+            }
+            if (toRow > baseRows) {
+                suffix.scanBatch(queries, Math.max(fromRow, baseRows) - baseRows, toRow - baseRows,
+                        ordinalBase + baseRows, deleted, tops);
+            }
+        }
+    }
+}
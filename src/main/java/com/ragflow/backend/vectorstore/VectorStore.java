@@ -1,12 +1,77 @@
 package com.ragflow.backend.vectorstore;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 public interface VectorStore {
+
+    /** One vector to store, as passed to {@link #replace}. */
+    record Entry(Long chunkId, float[] vector, Map<String, Object> metadata) {
+    }
+
     void upsert(String collection, Long chunkId, float[] vector, Map<String, Object> metadata);
 
-    List<SearchResult> search(String collection, float[] queryVector, int topK);
+    /**
+     * Deletes {@code deleteIds} and upserts {@code entries} as one change, e.g.
+     * swapping the old chunks of a re-indexed document for the new ones.
+     * Stores that publish snapshots make the change visible to searches all at
+     * once; this default applies it entry by entry.
+     */
+    default void replace(String collection, Collection<Long> deleteIds, List<Entry> entries) {
+        delete(collection, deleteIds);
+        for (Entry e : entries) {
+            upsert(collection, e.chunkId(), e.vector(), e.metadata());
+        }
+    }
+
+    default List<SearchResult> search(String collection, float[] queryVector, int topK) {
+        return search(collection, queryVector, topK, null);
+    }
+
+    /**
+     * Returns the best {@code topK} chunks of the collection whose metadata
+     * matches {@code filter} (all chunks if it is null), best first.
+     */
+    List<SearchResult> search(String collection, float[] queryVector, int topK, MetadataFilter filter);
+
+    /**
+     * Searches several collections with the same query and returns the best
+     * {@code topK} results across all of them, best first.
+     */
+    default List<SearchResult> search(Collection<String> collections, float[] queryVector, int topK) {
+        return search(collections, queryVector, topK, null);
+    }
+
+    /** Multi-collection variant of {@link #search(String, float[], int, MetadataFilter)}. */
+    default List<SearchResult> search(Collection<String> collections, float[] queryVector, int topK,
+            MetadataFilter filter) {
+        SharedTopK top = new SharedTopK(topK);
+        for (String collection : collections) {
+            top.offerAll(search(collection, queryVector, topK, filter));
+        }
+        return top.results();
+    }
+
+    /**
+     * Runs many queries against one collection and returns one result list
+     * per query, in query order. Stores that can share a scan between the
+     * queries override this.
+     */
+    default List<List<SearchResult>> searchBatch(String collection, List<float[]> queryVectors, int topK) {
+        List<List<SearchResult>> results = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            results.add(search(collection, queryVector, topK));
+        }
+        return results;
+    }
+
+    /** Removes the given chunks from the collection; unknown ids are ignored. */
+    void delete(String collection, Collection<Long> chunkIds);
+
+    /** Removes the collection with all its vectors and index files. */
+    void dropCollection(String collection);
 
     void save();
 
@@ -0,0 +1,98 @@
+package com.ragflow.backend.vectorstore;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves per-collection vector store options. Every option can be set
+ * globally under {@code vectorstore.*} and overridden for a single collection
+ * under {@code vectorstore.collections.<name>.*}, e.g.
+ *
+ * <pre>
+ * vectorstore:
+ *   default-type: flat
+ *   quantization: none
+ *   hnsw:
+ *     m: 16
+ *     ef-search: 64
+ *   collections:
+ *     manuals:
+ *       type: hnsw
+ *       hnsw:
+ *         ef-search: 128
+ * </pre>
+ */
+@Component
+public class VectorStoreSettings {
+
+    private final Environment env;
+
+    public VectorStoreSettings(Environment env) {
+        this.env = env;
+    }
+
+    public IndexType indexType(String collection) {
+        String type = get(collection, "type", env.getProperty("vectorstore.default-type", "flat"));
+        return IndexType.valueOf(type.trim().toUpperCase().replace('-', '_'));
+    }
+
+    public Quantization quantization(String collection) {
+        String value = get(collection, "quantization", "none");
+        return Quantization.valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * How many int8 candidates per requested result are re-ranked with the
+     * full-precision vectors; 0 returns the approximate int8 scores directly.
+     */
+    public int int8RescoreFactor(String collection) {
+        return getInt(collection, "int8.rescore-factor", 4);
+    }
+
+    /**
+     * How many sign-code candidates per requested result are re-ranked with
+     * the full-precision vectors in {@code binary} mode.
+     */
+    public int binaryRerankFactor(String collection) {
+        return Math.max(1, getInt(collection, "binary.rerank-factor", 40));
+    }
+
+    public int hnswM(String collection) {
+        return getInt(collection, "hnsw.m", 16);
+    }
+
+    public int hnswEfConstruction(String collection) {
+        return getInt(collection, "hnsw.ef-construction", 200);
+    }
+
+    public int hnswEfSearch(String collection) {
+        return getInt(collection, "hnsw.ef-search", 64);
+    }
+
+    public int ivfPqNlist(String collection) {
+        return getInt(collection, "ivf-pq.nlist", 1024);
+    }
+
+    /** Subquantizers per vector, i.e. bytes per stored vector (rounded down to a divisor of the dimension). */
+    public int ivfPqM(String collection) {
+        return getInt(collection, "ivf-pq.m", 16);
+    }
+
+    public int ivfPqNprobe(String collection) {
+        return getInt(collection, "ivf-pq.nprobe", 16);
+    }
+
+    /** Vectors buffered (and searched exactly) before the quantizers are trained automatically. */
+    public int ivfPqTrainRows(String collection) {
+        return getInt(collection, "ivf-pq.train-rows", 65536);
+    }
+
+    private int getInt(String collection, String key, int defaultValue) {
+        return Integer.parseInt(get(collection, key, String.valueOf(defaultValue)).trim());
+    }
+
+    private String get(String collection, String key, String defaultValue) {
+        String global = env.getProperty("vectorstore." + key, defaultValue);
+        return env.getProperty("vectorstore.collections." + collection + "." + key, global);
+    }
+}
@@ -0,0 +1,209 @@
+package com.ragflow.backend.vectorstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of vector mutations for one collection
+ * ({@code <collection>.wal}). Every change is appended before it is applied in
+ * memory, so the cost of making it durable is proportional to the change, not
+ * to the size of the index. {@link #append} only writes to the OS; callers
+ * batch fsyncs through {@link #sync()}. A checkpoint writes the full index file
+ * and then {@link #truncate()}s the log.
+ *
+ * <pre>
+ * record   := int32 payloadLength, int32 crc32(payload), payload   (big-endian)
+ * payload  := int8 op, int64 chunkId, body
+ * UPSERT   := int32 dimension, dimension * float32, metadata (MetadataCodec)
+ * DELETE   := (empty)
+ * </pre>
+ * A torn or corrupt tail (crash mid-append) is detected by length/CRC and cut
+ * off during {@link #replay}.
+ */
+final class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    static final byte OP_UPSERT = 1;
+    static final byte OP_DELETE = 2;
+
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final Path file;
+    private FileChannel channel;
+    private volatile boolean dirty;
+
+    WriteAheadLog(Path file) {
+        this.file = file;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    synchronized void appendUpsert(long chunkId, float[] vector, Map<String, Object> metadata) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + vector.length * Float.BYTES);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_UPSERT);
+            out.writeLong(chunkId);
+            out.writeInt(vector.length);
+            for (float v : vector) {
+                out.writeFloat(v);
+            }
+            MetadataCodec.write(out, metadata);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        append(bytes.toByteArray());
+    }
+
+    synchronized void appendDelete(long chunkId) {
+        ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES);
+        payload.put(OP_DELETE).putLong(chunkId);
+        append(payload.array());
+    }
+
+    private void append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        try {
+            FileChannel ch = channel();
+            while (record.hasRemaining()) {
+                ch.write(record);
+            }
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to " + file, e);
+        }
+    }
+
+    /** Forces appended records to disk if anything was written since the last sync. */
+    synchronized void sync() throws IOException {
+        if (dirty && channel != null) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    synchronized long sizeBytes() {
+        try {
+            return channel != null ? channel.size() : (Files.exists(file) ? Files.size(file) : 0);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** Drops all records; called once their effect is contained in the checkpointed index file. */
+    synchronized void truncate() throws IOException {
+        FileChannel ch = channel();
+        ch.truncate(0);
+        ch.force(true);
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+        return channel;
+    }
+
+    interface Replayer {
+        void upsert(long chunkId, float[] vector, Map<String, Object> metadata);
+
+        void delete(long chunkId);
+    }
+
+    /**
+     * Applies every intact record in {@code file} in order and cuts off a torn
+     * tail. Returns the number of records replayed.
+     */
+    static int replay(Path file, Replayer replayer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int records = 0;
+        long valid = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            while (valid + 8 <= size) {
+                header.clear();
+                readFully(ch, header, valid);
+                header.flip();
+                int length = header.getInt();
+                int expectedCrc = header.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || valid + 8 + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(ch, payload, valid + 8);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                apply(payload.array(), replayer);
+                valid += 8 + length;
+                records++;
+            }
+            if (valid < size) {
+                log.warn("Truncating {} bytes of incomplete records from {}", size - valid, file);
+                ch.truncate(valid);
+            }
+        }
+        return records;
+    }
+
+    private static void apply(byte[] payload, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        long chunkId = in.readLong();
+        if (op == OP_UPSERT) {
+            float[] vector = new float[in.readInt()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = in.readFloat();
+            }
+            replayer.upsert(chunkId, vector, MetadataCodec.read(in));
+        } else if (op == OP_DELETE) {
+            replayer.delete(chunkId);
+        } else {
+            throw new IOException("Unknown WAL op " + op);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (ch.read(dst, position + dst.position()) < 0) {
+                throw new IOException("Unexpected end of WAL");
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ragflow.backend.embedding;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingEmbeddingClientTest {
+
+    /** Mock provider that records batch sizes and answers each request slowly. */
+    private static class SlowClient extends MockEmbeddingClient {
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean failing;
+
+        SlowClient(int dimension) {
+            ReflectionTestUtils.setField(this, "dimension", dimension);
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            batches.add(texts.size());
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new RuntimeException("Embedding failed: 503");
+            }
+            return super.embedBatch(texts);
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsShareRequestsAndGetTheirOwnVectors() throws Exception {
+        SlowClient provider = new SlowClient(8);
+        int callers = 40;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try (BatchingEmbeddingClient batcher = new BatchingEmbeddingClient(provider, 20, 16, 1)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                String text = "question " + (i % 30);
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return batcher.embed(text);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < callers; i++) {
+                Assertions.assertArrayEquals(provider.embed("question " + (i % 30)),
+                        results.get(i).get(10, TimeUnit.SECONDS));
+            }
+            int sent = provider.batches.stream().mapToInt(Integer::intValue).sum();
+            Assertions.assertTrue(provider.batches.size() < callers / 2, provider.batches.toString());
+            Assertions.assertTrue(provider.batches.stream().allMatch(n -> n <= 16), provider.batches.toString());
+            Assertions.assertTrue(sent <= callers, provider.batches.toString());
+            Assertions.assertEquals((long) callers, batcher.stats().get("calls"));
+            Assertions.assertEquals((long) provider.batches.size(), batcher.stats().get("requests"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailuresReachEveryCallerInTheBatch() throws Exception {
+        SlowClient provider = new SlowClient(4);
+        provider.failing = true;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try (BatchingEmbeddingClient batcher = new BatchingEmbeddingClient(provider, 20, 64, 2)) {
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String text = "q" + i;
+                results.add(pool.submit(() -> batcher.embed(text)));
+            }
+            for (Future<float[]> f : results) {
+                Exception e = Assertions.assertThrows(Exception.class, () -> f.get(10, TimeUnit.SECONDS));
+                Assertions.assertEquals("Embedding failed: 503", e.getCause().getMessage());
+            }
+            Assertions.assertTrue((Long) batcher.stats().get("failedRequests") >= 1);
+
+            provider.failing = false;
+            Assertions.assertEquals(4, batcher.embed("q0").length);
+            Assertions.assertEquals(2, batcher.embedBatch(List.of("a", "b")).size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClosedBatcherRejectsCallsAndBadSettings() {
+        SlowClient provider = new SlowClient(4);
+        BatchingEmbeddingClient batcher = new BatchingEmbeddingClient(provider, 0, 8, 1);
+        Assertions.assertEquals(4, batcher.embed("solo").length);
+        batcher.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> batcher.embed("late"));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BatchingEmbeddingClient(provider, -1, 8, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BatchingEmbeddingClient(provider, 1, 0, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BatchingEmbeddingClient(provider, 1, 8, 0));
+    }
+}
@@ -0,0 +1,115 @@
+package com.ragflow.backend.embedding;
+
+import com.ragflow.backend.entity.EmbeddingCacheEntity;
+import com.ragflow.backend.repository.EmbeddingCacheRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingEmbeddingClientTest {
+
+    /** Transaction manager whose transactions do nothing; the repositories here are mocks. */
+    private static final PlatformTransactionManager NO_TRANSACTIONS = Mockito.mock(PlatformTransactionManager.class);
+
+    /** Mock provider counting the texts it is asked to embed. */
+    private static class CountingClient extends MockEmbeddingClient {
+        final AtomicInteger embedded = new AtomicInteger();
+
+        CountingClient(int dimension) {
+            ReflectionTestUtils.setField(this, "dimension", dimension);
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            embedded.addAndGet(texts.size());
+            return super.embedBatch(texts);
+        }
+    }
+
+    /** Repository mock backed by a list, answering the lookup and merge like the queries would. */
+    private static EmbeddingCacheRepository inMemoryRepository(List<EmbeddingCacheEntity> rows) {
+        EmbeddingCacheRepository repository = Mockito.mock(EmbeddingCacheRepository.class);
+        Mockito.when(repository.findByModelAndDimensionAndContentHashIn(Mockito.anyString(), Mockito.anyInt(),
+                Mockito.anyCollection())).thenAnswer(call -> {
+                    String model = call.getArgument(0);
+                    int dimension = call.getArgument(1);
+                    Collection<String> hashes = call.getArgument(2);
+                    return rows.stream()
+                            .filter(r -> r.getModel().equals(model) && r.getDimension() == dimension
+                                    && hashes.contains(r.getContentHash()))
+                            .toList();
+                });
+        Mockito.when(repository.merge(Mockito.anyString(), Mockito.anyInt(), Mockito.anyString(), Mockito.any()))
+                .thenAnswer(call -> {
+                    EmbeddingCacheEntity row = new EmbeddingCacheEntity();
+                    row.setModel(call.getArgument(0));
+                    row.setDimension(call.getArgument(1));
+                    row.setContentHash(call.getArgument(2));
+                    row.setVector(call.getArgument(3));
+                    rows.removeIf(r -> r.getModel().equals(row.getModel()) && r.getDimension() == row.getDimension()
+                            && r.getContentHash().equals(row.getContentHash()));
+                    rows.add(row);
+                    return 1;
+                });
+        return repository;
+    }
+
+    @Test
+    public void testReembeddingUnchangedContentCostsNoCalls() {
+        List<EmbeddingCacheEntity> rows = new ArrayList<>();
+        CountingClient provider = new CountingClient(16);
+        CachingEmbeddingClient client = new CachingEmbeddingClient(provider, inMemoryRepository(rows), NO_TRANSACTIONS);
+
+        List<String> chunks = List.of("intro", "footer", "body one", "footer", "body two");
+        List<float[]> first = client.embedBatch(chunks);
+        Assertions.assertEquals(5, first.size());
+        Assertions.assertEquals(4, provider.embedded.get(), "the repeated footer is embedded once");
+        Assertions.assertEquals(4, rows.size());
+        Assertions.assertEquals(16 * Float.BYTES, rows.get(0).getVector().length);
+        Assertions.assertArrayEquals(first.get(1), first.get(3));
+        Assertions.assertNotSame(first.get(1), first.get(3));
+
+        List<float[]> again = client.embedBatch(chunks);
+        Assertions.assertEquals(4, provider.embedded.get(), "unchanged content must not reach the provider");
+        for (int i = 0; i < chunks.size(); i++) {
+            Assertions.assertArrayEquals(first.get(i), again.get(i));
+            Assertions.assertArrayEquals(provider.embed(chunks.get(i)), again.get(i));
+        }
+
+        client.embedBatch(List.of("footer", "new section"));
+        Assertions.assertEquals(5, provider.embedded.get());
+
+        // Another dimension (or model) is a different key
+        CountingClient wider = new CountingClient(32);
+        new CachingEmbeddingClient(wider, inMemoryRepository(rows), NO_TRANSACTIONS).embedBatch(List.of("intro"));
+        Assertions.assertEquals(1, wider.embedded.get());
+    }
+
+    @Test
+    public void testCacheFailuresDoNotFailEmbedding() {
+        EmbeddingCacheRepository broken = Mockito.mock(EmbeddingCacheRepository.class);
+        Mockito.when(broken.findByModelAndDimensionAndContentHashIn(Mockito.anyString(), Mockito.anyInt(),
+                Mockito.anyCollection())).thenThrow(new DataIntegrityViolationException("table locked"));
+        Mockito.when(broken.merge(Mockito.anyString(), Mockito.anyInt(), Mockito.anyString(), Mockito.any()))
+                .thenThrow(new DataIntegrityViolationException("table locked"));
+        CountingClient provider = new CountingClient(8);
+        List<float[]> vectors = new CachingEmbeddingClient(provider, broken, NO_TRANSACTIONS).embedBatch(List.of("a", "b"));
+        Assertions.assertEquals(2, vectors.size());
+        Assertions.assertEquals(2, provider.embedded.get());
+    }
+
+    @Test
+    public void testVectorEncodingRoundTrips() {
+        float[] v = { 0.5f, -1.25f, Float.MIN_VALUE, 3e-8f };
+        Assertions.assertArrayEquals(v, CachingEmbeddingClient.decode(CachingEmbeddingClient.encode(v)));
+        Assertions.assertEquals(64, ContentHash.sha256("x").length());
+    }
+}
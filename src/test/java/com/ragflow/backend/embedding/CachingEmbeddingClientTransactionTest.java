@@ -0,0 +1,84 @@
+package com.ragflow.backend.embedding;
+
+import com.ragflow.backend.entity.ChunkEntity;
+import com.ragflow.backend.repository.ChunkRepository;
+import com.ragflow.backend.repository.EmbeddingCacheRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the cache against a real database inside an indexing-style outer
+ * transaction, where a duplicate key must not roll the caller back.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CachingEmbeddingClientTransactionTest {
+
+    @Autowired
+    private EmbeddingCacheRepository cacheRepo;
+
+    @Autowired
+    private ChunkRepository chunkRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** Provider that lets its callers through only together, so both miss the cache before either stores. */
+    private static class LockstepClient extends MockEmbeddingClient {
+        private final CyclicBarrier barrier = new CyclicBarrier(2);
+
+        LockstepClient() {
+            ReflectionTestUtils.setField(this, "dimension", 8);
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return super.embedBatch(texts);
+        }
+    }
+
+    @Test
+    public void testConcurrentIndexRunsOfTheSameDocumentBothCommit() throws Exception {
+        CachingEmbeddingClient client = new CachingEmbeddingClient(new LockstepClient(), cacheRepo,
+                transactionManager);
+        TransactionTemplate indexing = new TransactionTemplate(transactionManager);
+        List<String> chunks = List.of("intro", "body", "footer");
+
+        List<CompletableFuture<Void>> runs = List.of(0, 1).stream()
+                .map(run -> CompletableFuture.runAsync(() -> indexing.executeWithoutResult(status -> {
+                    List<float[]> vectors = client.embedBatch(chunks);
+                    Assertions.assertEquals(chunks.size(), vectors.size());
+                    ChunkEntity chunk = new ChunkEntity();
+                    chunk.setDocId(1L);
+                    chunk.setCollection("kb");
+                    chunk.setChunkIndex(run);
+                    chunk.setContent(chunks.get(0));
+                    chunkRepo.save(chunk);
+                })))
+                .toList();
+        // Without a transaction of its own, the losing run would fail with UnexpectedRollbackException
+        for (CompletableFuture<Void> run : runs) {
+            run.get(30, TimeUnit.SECONDS);
+        }
+
+        Assertions.assertEquals(2, chunkRepo.count());
+        Assertions.assertEquals(chunks.size(), cacheRepo.count());
+    }
+}
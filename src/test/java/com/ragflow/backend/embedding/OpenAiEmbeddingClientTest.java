@@ -0,0 +1,191 @@
+package com.ragflow.backend.embedding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.response.MockRestResponseCreators;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OpenAiEmbeddingClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** Answers each text "t<i>" with the vector [i, 1]; the given first texts fail with the given status once. */
+    private OpenAiEmbeddingClient client(int concurrency, Map<String, HttpStatus> failOnce,
+            List<Integer> batchSizes) {
+        return client(concurrency, "float", failOnce, batchSizes);
+    }
+
+    /**
+     * Like {@link #client(int, Map, List)}, answering items in reverse order,
+     * as base64 when the request asks for it.
+     */
+    private OpenAiEmbeddingClient client(int concurrency, String encodingFormat, Map<String, HttpStatus> failOnce,
+            List<Integer> batchSizes) {
+        RestClient.Builder builder = RestClient.builder();
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).ignoreExpectOrder(true).build();
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        server.expect(ExpectedCount.manyTimes(), request -> {
+        }).andRespond(request -> {
+            JsonNode body = objectMapper.readTree(((MockClientHttpRequest) request).getBodyAsString());
+            JsonNode input = body.get("input");
+            boolean base64 = body.has("encoding_format") && body.get("encoding_format").asText().equals("base64");
+            String first = input.get(0).asText();
+            HttpStatus failure = failOnce.get(first);
+            if (failure != null && attempts.computeIfAbsent(first, k -> new AtomicInteger()).getAndIncrement() == 0) {
+                return MockRestResponseCreators.withStatus(failure).createResponse(request);
+            }
+            batchSizes.add(input.size());
+            StringBuilder json = new StringBuilder("{\"data\":[");
+            for (int i = input.size() - 1; i >= 0; i--) {
+                float value = Float.parseFloat(input.get(i).asText().substring(1));
+                json.append(i < input.size() - 1 ? "," : "").append("{\"object\":\"embedding\",\"embedding\":");
+                if (base64) {
+                    json.append('"').append(base64(value, 1f)).append('"');
+                } else {
+                    json.append('[').append(value).append(",1]");
+                }
+                json.append(",\"index\":").append(i).append('}');
+            }
+            json.append("],\"model\":\"test-model\",\"usage\":{\"prompt_tokens\":").append(input.size()).append("}}");
+            return MockRestResponseCreators.withSuccess(json.toString(), MediaType.APPLICATION_JSON)
+                    .createResponse(request);
+        });
+        OpenAiEmbeddingClient client = new OpenAiEmbeddingClient(builder, concurrency, encodingFormat);
+        ReflectionTestUtils.setField(client, "baseUrl", "http://embeddings.test/v1");
+        ReflectionTestUtils.setField(client, "apiKey", "key");
+        ReflectionTestUtils.setField(client, "modelName", "test-model");
+        ReflectionTestUtils.setField(client, "dimension", 2);
+        ReflectionTestUtils.setField(client, "maxItems", 10);
+        ReflectionTestUtils.setField(client, "maxTokens", 8000);
+        ReflectionTestUtils.setField(client, "maxRetries", 2);
+        ReflectionTestUtils.setField(client, "retryBackoffMs", 1L);
+        return client;
+    }
+
+    private static String base64(float... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(values);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static float[][] parse(String json, int expected, int dimension) throws IOException {
+        return EmbeddingResponseParser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                expected, dimension);
+    }
+
+    private static List<String> texts(int n) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            texts.add("t" + i);
+        }
+        return texts;
+    }
+
+    @Test
+    public void testLargeInputIsSplitSentInParallelAndReturnedInOrder() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        OpenAiEmbeddingClient client = client(3, Map.of("t20", HttpStatus.SERVICE_UNAVAILABLE,
+                "t40", HttpStatus.TOO_MANY_REQUESTS), batchSizes);
+        try {
+            List<float[]> vectors = client.embedBatch(texts(95));
+            Assertions.assertEquals(95, vectors.size());
+            for (int i = 0; i < 95; i++) {
+                Assertions.assertArrayEquals(new float[] { i, 1 }, vectors.get(i));
+            }
+            // 10 sub-batches, each sent once except the two retried ones
+            Assertions.assertEquals(10, batchSizes.size());
+            Assertions.assertEquals(95, batchSizes.stream().mapToInt(Integer::intValue).sum());
+            Assertions.assertArrayEquals(new float[] { 7, 1 }, client.embed("t7"));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        OpenAiEmbeddingClient client = client(2, Map.of("t10", HttpStatus.BAD_REQUEST), batchSizes);
+        try {
+            RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                    () -> client.embedBatch(texts(30)));
+            Assertions.assertTrue(e.getMessage().startsWith("Embedding failed: 400"), e.getMessage());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testSplitRespectsItemAndTokenLimits() {
+        Assertions.assertEquals(List.of(), OpenAiEmbeddingClient.split(List.of(), 10, 100));
+        Assertions.assertEquals(List.of(List.of("a", "b"), List.of("c")),
+                OpenAiEmbeddingClient.split(List.of("a", "b", "c"), 2, 100));
+
+        String page = "x".repeat(400); // ~100 tokens
+        List<List<String>> batches = OpenAiEmbeddingClient.split(List.of(page, page, page, "y".repeat(2000), page),
+                64, 250);
+        Assertions.assertEquals(List.of(2, 1, 1, 1), batches.stream().map(List::size).toList());
+
+        Assertions.assertEquals(1, OpenAiEmbeddingClient.estimateTokens("abcd"));
+        Assertions.assertEquals(4, OpenAiEmbeddingClient.estimateTokens("向量检索"));
+    }
+
+    @Test
+    public void testBase64ResponsesAreDecoded() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        OpenAiEmbeddingClient client = client(2, "base64", Map.of(), batchSizes);
+        try {
+            List<float[]> vectors = client.embedBatch(texts(25));
+            for (int i = 0; i < 25; i++) {
+                Assertions.assertArrayEquals(new float[] { i, 1 }, vectors.get(i));
+            }
+        } finally {
+            client.shutdown();
+        }
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new OpenAiEmbeddingClient(RestClient.builder(), 1, "int8"));
+    }
+
+    @Test
+    public void testParserPlacesVectorsByIndexAndRejectsBadResponses() throws Exception {
+        float[][] vectors = parse("{\"data\":[{\"index\":1,\"embedding\":[0.5,-2]},"
+                + "{\"embedding\":\"" + base64(3f, 4f, 5f) + "\",\"index\":0,\"extra\":{\"a\":[1]}}],"
+                + "\"model\":\"m\"}", 2, 2);
+        Assertions.assertArrayEquals(new float[] { 3f, 4f, 5f }, vectors[0]);
+        Assertions.assertArrayEquals(new float[] { 0.5f, -2f }, vectors[1]);
+
+        // Without index fields the array order is used; a dimension hint that is off only costs a copy
+        vectors = parse("{\"data\":[{\"embedding\":[1,2,3]},{\"embedding\":[4,5,6]}]}", 2, 1);
+        Assertions.assertArrayEquals(new float[] { 4f, 5f, 6f }, vectors[1]);
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> parse("{\"data\":[{\"index\":0,\"embedding\":[1]},{\"index\":0,\"embedding\":[2]}]}", 2, 1));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> parse("{\"data\":[{\"index\":0,\"embedding\":[1]}]}", 2, 1));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> parse("{\"data\":[{\"index\":5,\"embedding\":[1]}]}", 1, 1));
+        Assertions.assertThrows(IllegalStateException.class, () -> parse("{\"error\":\"overloaded\"}", 1, 1));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> parse("{\"data\":[{\"index\":0,\"embedding\":\"AAAA\"}]}", 1, 1));
+    }
+}
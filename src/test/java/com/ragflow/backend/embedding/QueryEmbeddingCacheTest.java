@@ -0,0 +1,116 @@
+package com.ragflow.backend.embedding;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QueryEmbeddingCacheTest {
+
+    /** Mock provider recording the texts it is asked to embed. */
+    private static class RecordingClient extends MockEmbeddingClient {
+        final List<String> embedded = new ArrayList<>();
+
+        RecordingClient(int dimension) {
+            ReflectionTestUtils.setField(this, "dimension", dimension);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            embedded.add(text);
+            return super.embed(text);
+        }
+    }
+
+    private static long entryBytes(String key, int dimension) {
+        return QueryEmbeddingCache.ENTRY_OVERHEAD_BYTES + dimension * 4L + key.length() * 2L;
+    }
+
+    @Test
+    public void testRepeatedQuestionsHitAndNormalizedVariantsShareAnEntry() {
+        RecordingClient provider = new RecordingClient(8);
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(provider, 1 << 20, 0, true);
+
+        float[] first = cache.embed("How do I reset my password?");
+        float[] again = cache.embed("  How do I   reset my\tpassword?\n");
+        float[] fullWidth = cache.embed("How do I reset my password？");
+        Assertions.assertEquals(List.of("How do I reset my password?"), provider.embedded);
+        Assertions.assertArrayEquals(first, again);
+        Assertions.assertArrayEquals(first, fullWidth);
+
+        // Returned vectors are copies
+        again[0] = 42f;
+        Assertions.assertArrayEquals(first, cache.embed("How do I reset my password?"));
+
+        Map<String, Object> stats = cache.stats();
+        Assertions.assertEquals(1, stats.get("entries"));
+        Assertions.assertEquals(3L, stats.get("hits"));
+        Assertions.assertEquals(1L, stats.get("misses"));
+
+        QueryEmbeddingCache exact = new QueryEmbeddingCache(new RecordingClient(8), 1 << 20, 0, false);
+        exact.embed("a  b");
+        exact.embed("a b");
+        Assertions.assertEquals(2, exact.stats().get("entries"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByBytes() {
+        RecordingClient provider = new RecordingClient(16);
+        long room = entryBytes("q1", 16) * 2;
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(provider, room, 0, false);
+
+        cache.embed("q1");
+        cache.embed("q2");
+        cache.embed("q1"); // q2 is now least recently used
+        cache.embed("q3");
+        Map<String, Object> stats = cache.stats();
+        Assertions.assertEquals(2, stats.get("entries"));
+        Assertions.assertEquals(1L, stats.get("evictions"));
+        Assertions.assertEquals(room, stats.get("bytes"));
+
+        cache.embed("q1");
+        cache.embed("q2");
+        Assertions.assertEquals(List.of("q1", "q2", "q3", "q2"), provider.embedded);
+
+        // A vector larger than the whole cache is returned but not kept
+        QueryEmbeddingCache tiny = new QueryEmbeddingCache(provider, 64, 0, false);
+        Assertions.assertEquals(16, tiny.embed("big").length);
+        Assertions.assertEquals(0, tiny.stats().get("entries"));
+        Assertions.assertEquals(0L, tiny.stats().get("bytes"));
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        AtomicLong now = new AtomicLong(1_000);
+        RecordingClient provider = new RecordingClient(4);
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(provider, 1 << 20, 500, false, now::get);
+
+        cache.embed("faq");
+        now.addAndGet(499);
+        cache.embed("faq");
+        Assertions.assertEquals(1, provider.embedded.size());
+        now.addAndGet(1);
+        cache.embed("faq");
+        Assertions.assertEquals(2, provider.embedded.size());
+        Assertions.assertEquals(1L, cache.stats().get("expirations"));
+        Assertions.assertEquals(1, cache.stats().get("entries"));
+    }
+
+    @Test
+    public void testBatchesBypassTheCacheAndBadSettingsAreRejected() {
+        RecordingClient provider = new RecordingClient(4);
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(provider, 1 << 20, 0, true);
+        Assertions.assertEquals(2, cache.embedBatch(List.of("a", "b")).size());
+        Assertions.assertEquals(0, cache.stats().get("entries"));
+        Assertions.assertEquals("mock", cache.getModel());
+        Assertions.assertEquals(4, cache.getDimension());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QueryEmbeddingCache(provider, 0, 0, true));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new QueryEmbeddingCache(provider, 1024, -1, true));
+    }
+}
@@ -0,0 +1,65 @@
+package com.ragflow.backend.lexical;
+
+import com.ragflow.backend.vectorstore.MetadataFilter;
+import com.ragflow.backend.vectorstore.SearchResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class LexicalStoreTest {
+
+    @TempDir
+    Path indexDir;
+
+    private LexicalStore newStore() {
+        LexicalStore store = new LexicalStore();
+        ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        return store;
+    }
+
+    private static List<Long> ids(List<SearchResult> results) {
+        return results.stream().map(SearchResult::getChunkId).toList();
+    }
+
+    @Test
+    public void testBm25RanksExactTermsAndSurvivesReload() {
+        LexicalStore store = newStore();
+        store.add("kb", 1L, 10L, "manual.pdf", "The pump reports ERR-4012 when the inlet valve is blocked.");
+        store.add("kb", 2L, 10L, "manual.pdf", "Error codes are listed in the appendix of this manual.");
+        store.add("kb", 3L, 11L, "faq.md", "向量检索基于语义相似度，关键词检索基于倒排索引。");
+        store.add("kb", 4L, 11L, "faq.md", "The inlet valve should be cleaned every month.");
+        store.add("other", 5L, 12L, "notes.txt", "ERR-4012 was seen twice on site B.");
+
+        Assertions.assertEquals(1L, store.search(List.of("kb"), "what does ERR-4012 mean", 3, null).get(0).getChunkId());
+        Assertions.assertEquals(List.of(3L), ids(store.search(List.of("kb"), "倒排索引", 3, null)));
+        Assertions.assertEquals(List.of(1L, 5L), ids(store.search(List.of("kb", "other"), "ERR-4012", 2, null))
+                .stream().sorted().toList());
+        Assertions.assertEquals(List.of(4L), ids(store.search(List.of("kb"), "inlet valve", 5,
+                MetadataFilter.eq("docName", "faq.md"))));
+        Assertions.assertTrue(store.search(List.of("kb"), "unrelated words", 5, null).isEmpty());
+        // Stopwords and terms common to most chunks ("the") are not a match on their own
+        Assertions.assertTrue(store.search(List.of("kb"), "What is the weather on the moon?", 5, null).isEmpty());
+        Assertions.assertTrue(store.search(List.of("kb"), "什么是天气", 5, null).isEmpty());
+
+        // Re-adding replaces, removing hides, and both survive a compacting save
+        store.add("kb", 1L, 10L, "manual.pdf", "The pump is quiet.");
+        store.delete("kb", List.of(4L));
+        Assertions.assertTrue(store.search(List.of("kb"), "ERR-4012", 5, null).isEmpty());
+        store.save();
+
+        LexicalStore reloaded = newStore();
+        reloaded.load();
+        Assertions.assertEquals(List.of(1L), ids(reloaded.search(List.of("kb"), "pump", 5, null)));
+        Assertions.assertTrue(reloaded.search(List.of("kb"), "inlet", 5, null).isEmpty());
+        Assertions.assertEquals("faq.md", reloaded.search(List.of("kb"), "关键词", 1, null).get(0).getMetadata()
+                .get("docName"));
+
+        reloaded.dropCollection("kb");
+        Assertions.assertFalse(indexDir.resolve("kb.bm25").toFile().exists());
+        Assertions.assertEquals(List.of(5L), ids(reloaded.search(List.of("kb", "other"), "ERR-4012", 5, null)));
+    }
+}
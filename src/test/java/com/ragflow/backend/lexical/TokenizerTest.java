@@ -0,0 +1,21 @@
+package com.ragflow.backend.lexical;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class TokenizerTest {
+
+    @Test
+    public void testCodesKeepCompoundTerm() {
+        Assertions.assertEquals(List.of("error", "err", "4012", "err-4012", "in", "v1", "2", "v1.2"),
+                Tokenizer.tokenize("Error ERR-4012 in v1.2."));
+    }
+
+    @Test
+    public void testCjkRunsBecomeBigrams() {
+        Assertions.assertEquals(List.of("向量", "量检", "检索", "索使", "使用", "hnsw", "图"),
+                Tokenizer.tokenize("向量检索使用HNSW图"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.ragflow.backend.service;
+
+import com.ragflow.backend.dto.QueryReq;
+import com.ragflow.backend.dto.QueryResp;
+import com.ragflow.backend.embedding.EmbeddingClient;
+import com.ragflow.backend.entity.ChunkEntity;
+import com.ragflow.backend.lexical.LexicalStore;
+import com.ragflow.backend.llm.LLMClient;
+import com.ragflow.backend.pipeline.query.ContextBuilder;
+import com.ragflow.backend.pipeline.query.PromptBuilder;
+import com.ragflow.backend.pipeline.query.RankFusion;
+import com.ragflow.backend.repository.ChunkRepository;
+import com.ragflow.backend.vectorstore.SearchResult;
+import com.ragflow.backend.vectorstore.VectorStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ChatServiceTest {
+
+    @TempDir
+    Path indexDir;
+
+    private VectorStore vectorStore;
+    private WebSearchService webSearchService;
+    private ChatService chatService;
+
+    private static ChunkEntity chunk(long id, String content) {
+        ChunkEntity chunk = new ChunkEntity();
+        chunk.setId(id);
+        chunk.setCollection("default");
+        chunk.setContent(content);
+        return chunk;
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        List<ChunkEntity> chunks = List.of(
+                chunk(1L, "The router restarts when the firmware update finishes."),
+                chunk(2L, "The pump reports ERR-4012 when the inlet valve is blocked."));
+        LexicalStore lexicalStore = new LexicalStore();
+        ReflectionTestUtils.setField(lexicalStore, "indexDir", indexDir.toString());
+        for (ChunkEntity c : chunks) {
+            lexicalStore.add("default", c.getId(), 10L, "manual.pdf", c.getContent());
+        }
+
+        ChunkRepository chunkRepo = Mockito.mock(ChunkRepository.class);
+        Mockito.when(chunkRepo.findAllById(ArgumentMatchers.anyIterable())).thenAnswer(call -> {
+            List<Long> ids = new ArrayList<>();
+            ((Iterable<Long>) call.getArgument(0)).forEach(ids::add);
+            return chunks.stream().filter(c -> ids.contains(c.getId())).toList();
+        });
+        EmbeddingClient embeddingClient = Mockito.mock(EmbeddingClient.class);
+        Mockito.when(embeddingClient.embed(ArgumentMatchers.anyString())).thenReturn(new float[] { 1f, 0f });
+        vectorStore = Mockito.mock(VectorStore.class);
+        LLMClient llmClient = Mockito.mock(LLMClient.class);
+        Mockito.when(llmClient.chat(ArgumentMatchers.anyString())).thenReturn("answer");
+        webSearchService = Mockito.mock(WebSearchService.class);
+        Mockito.when(webSearchService.isEnabled()).thenReturn(true);
+        Mockito.when(webSearchService.search(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+                .thenReturn(List.of(new WebSearchService.SearchResultItem("Moon", "https://example.org", "...")));
+
+        ContextBuilder contextBuilder = new ContextBuilder(chunkRepo);
+        ReflectionTestUtils.setField(contextBuilder, "maxContextChars", 4000);
+        chatService = new ChatService(embeddingClient, vectorStore, chunkRepo, contextBuilder, new PromptBuilder(),
+                llmClient, webSearchService, lexicalStore, new RankFusion());
+        ReflectionTestUtils.setField(chatService, "defaultScoreThreshold", 0.5);
+        ReflectionTestUtils.setField(chatService, "webSearchFallbackEnabled", true);
+        ReflectionTestUtils.setField(chatService, "hybridEnabled", true);
+    }
+
+    private void vectorHits(SearchResult... hits) {
+        Mockito.when(vectorStore.search(ArgumentMatchers.<Collection<String>>any(), ArgumentMatchers.any(float[].class),
+                ArgumentMatchers.anyInt(), ArgumentMatchers.any())).thenReturn(List.of(hits));
+    }
+
+    private static QueryReq question(String text) {
+        QueryReq req = new QueryReq();
+        req.setQuestion(text);
+        return req;
+    }
+
+    @Test
+    public void testUnrelatedQuestionSharingCommonWordsFallsBackToWebSearch() {
+        // Only a weak vector hit, below the threshold; the only shared words ("the", "on") are stopwords
+        vectorHits(new SearchResult(1L, 0.12, Map.of("docId", 10L, "docName", "manual.pdf")));
+
+        QueryResp resp = chatService.query(question("What is the temperature on the moon?"));
+        Assertions.assertEquals("web_search", resp.getSourceType());
+        Mockito.verify(webSearchService).search(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    public void testExactTermQuestionIsAnsweredByKeywordHitWithoutPassingVectorHit() {
+        // The embedding blurs the error code: the only vector hit is the wrong chunk, below the threshold
+        vectorHits(new SearchResult(1L, 0.12, Map.of("docId", 10L, "docName", "manual.pdf")));
+
+        QueryResp resp = chatService.query(question("What is ERR-4012?"));
+        Assertions.assertEquals("knowledge_base", resp.getSourceType());
+        Assertions.assertEquals(List.of(2L), resp.getCitations().stream().map(c -> c.getChunkId()).toList());
+        Mockito.verify(webSearchService, Mockito.never()).search(ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    public void testKeywordHitsAreFusedBehindAPassingVectorHitAndCosineScoresAreKept() {
+        vectorHits(new SearchResult(1L, 0.83, Map.of("docId", 10L, "docName", "manual.pdf")));
+
+        QueryResp resp = chatService.query(question("Why does the router restart, and what is ERR-4012?"));
+        Assertions.assertEquals("knowledge_base", resp.getSourceType());
+        Map<Long, Double> scores = new HashMap<>();
+        resp.getCitations().forEach(c -> scores.put(c.getChunkId(), c.getScore()));
+        Assertions.assertEquals(0.83, scores.get(1L), 1e-9, "fusion must not replace the cosine score");
+        Assertions.assertTrue(scores.containsKey(2L), "ERR-4012 is found by keyword");
+        Mockito.verify(webSearchService, Mockito.never()).search(ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyInt());
+    }
+}
@@ -0,0 +1,576 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class FaissVectorStoreTest {
+
+    @TempDir
+    Path indexDir;
+
+    private FaissVectorStore newStore() {
+        return newStore(new MockEnvironment());
+    }
+
+    private FaissVectorStore newStore(MockEnvironment env) {
+        FaissVectorStore store = new FaissVectorStore(new VectorStoreSettings(env));
+        ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        return store;
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    private static float[] clustered(Random random, float[][] topics) {
+        float[] v = topics[random.nextInt(topics.length)].clone();
+        for (int i = 0; i < v.length; i++) {
+            v[i] += 0.8f * (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    private static Map<String, Object> meta(long docId, String docName) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("docId", docId);
+        m.put("docName", docName);
+        return m;
+    }
+
+    @Test
+    public void testSearchReturnsBestMatchesFirst() {
+        Random random = new Random(1);
+        FaissVectorStore store = newStore();
+        for (long i = 0; i < 500; i++) {
+            store.upsert("kb", i, randomVector(random, 24), meta(i % 10, "doc-" + (i % 10)));
+        }
+        float[] target = randomVector(random, 24);
+        store.upsert("kb", 7L, target, meta(99, "target"));
+
+        List<SearchResult> results = store.search("kb", target, 5);
+        Assertions.assertEquals(5, results.size());
+        Assertions.assertEquals(7L, results.get(0).getChunkId());
+        Assertions.assertEquals(1.0, results.get(0).getScore(), 1e-5);
+        Assertions.assertEquals("target", results.get(0).getMetadata().get("docName"));
+        for (int i = 1; i < results.size(); i++) {
+            Assertions.assertTrue(results.get(i - 1).getScore() >= results.get(i).getScore());
+        }
+        Assertions.assertTrue(store.search("missing", target, 5).isEmpty());
+    }
+
+    @Test
+    public void testSaveAndLoadRoundTrip() {
+        Random random = new Random(2);
+        FaissVectorStore store = newStore();
+        float[] target = null;
+        for (long i = 1; i <= 100; i++) {
+            float[] v = randomVector(random, 16);
+            if (i == 50) {
+                target = v;
+            }
+            store.upsert("kb", i, v, meta(i, "doc-" + i));
+        }
+        store.shutdown(); // checkpoints into kb.faiss
+
+        FaissVectorStore reloaded = newStore();
+        reloaded.load();
+        List<SearchResult> results = reloaded.search("kb", target, 3);
+        Assertions.assertEquals(50L, results.get(0).getChunkId());
+        Assertions.assertEquals(50L, ((Number) results.get(0).getMetadata().get("docId")).longValue());
+        Assertions.assertEquals("doc-50", results.get(0).getMetadata().get("docName"));
+
+        // Overwrite a mapped row and append past the mapped tail, then save over the mapped file.
+        float[] replacement = randomVector(random, 16);
+        reloaded.upsert("kb", 50L, replacement, meta(50, "doc-50-v2"));
+        float[] appended = randomVector(random, 16);
+        reloaded.upsert("kb", 101L, appended, meta(101, "doc-101"));
+        reloaded.shutdown();
+
+        FaissVectorStore again = newStore();
+        again.load();
+        Assertions.assertEquals("doc-50-v2", again.search("kb", replacement, 1).get(0).getMetadata().get("docName"));
+        Assertions.assertEquals(101L, again.search("kb", appended, 1).get(0).getChunkId());
+        Assertions.assertEquals("doc-7", again.search("kb", randomVectorAt(7), 1).get(0).getMetadata().get("docName"));
+    }
+
+    @Test
+    public void testWalReplayWithoutCheckpoint() throws Exception {
+        Random random = new Random(4);
+        FaissVectorStore store = newStore();
+        float[] first = randomVector(random, 8);
+        float[] second = randomVector(random, 8);
+        store.upsert("kb", 1L, first, meta(1, "one"));
+        store.upsert("kb", 2L, second, meta(2, "two"));
+        store.save(); // fsyncs the WAL only
+        Assertions.assertFalse(indexDir.resolve("kb.faiss").toFile().exists());
+
+        // Simulate a crash in the middle of appending a third record.
+        Files.write(indexDir.resolve("kb.wal"), new byte[] { 0, 0, 1, 0, 7 },
+                StandardOpenOption.APPEND);
+
+        FaissVectorStore recovered = newStore();
+        recovered.load();
+        Assertions.assertEquals(2L, recovered.search("kb", second, 1).get(0).getChunkId());
+        Assertions.assertEquals("one", recovered.search("kb", first, 1).get(0).getMetadata().get("docName"));
+
+        recovered.upsert("kb", 3L, randomVector(random, 8), meta(3, "three"));
+        recovered.shutdown();
+        Assertions.assertEquals(0L, Files.size(indexDir.resolve("kb.wal")));
+
+        FaissVectorStore reopened = newStore();
+        reopened.load();
+        Assertions.assertEquals(3, reopened.search("kb", first, 10).size());
+    }
+
+    @Test
+    public void testDeleteSurvivesReplayAndCompaction() throws Exception {
+        Random random = new Random(8);
+        FaissVectorStore store = newStore();
+        float[][] vectors = new float[50][];
+        for (int i = 0; i < 50; i++) {
+            vectors[i] = randomVector(random, 12);
+            store.upsert("kb", (long) i, vectors[i], meta(i, "doc-" + i));
+        }
+        store.delete("kb", List.of(3L, 4L, 99L));
+        Assertions.assertNotEquals(3L, store.search("kb", vectors[3], 1).get(0).getChunkId());
+        Assertions.assertEquals(48, store.search("kb", vectors[0], 100).size());
+        store.save(); // WAL only: the deletes have to come back from replay
+
+        FaissVectorStore recovered = newStore();
+        recovered.load();
+        Assertions.assertEquals(48, recovered.search("kb", vectors[0], 100).size());
+        recovered.shutdown(); // checkpoint compacts the tombstoned rows away
+        Assertions.assertEquals(0L, Files.size(indexDir.resolve("kb.wal")));
+
+        FaissVectorStore reopened = newStore();
+        reopened.load();
+        List<SearchResult> all = reopened.search("kb", vectors[4], 100);
+        Assertions.assertEquals(48, all.size());
+        Assertions.assertTrue(all.stream().noneMatch(r -> r.getChunkId() == 3L || r.getChunkId() == 4L));
+        Assertions.assertEquals("doc-5", reopened.search("kb", vectors[5], 1).get(0).getMetadata().get("docName"));
+
+        reopened.dropCollection("kb");
+        Assertions.assertTrue(reopened.search("kb", vectors[5], 1).isEmpty());
+        Assertions.assertFalse(indexDir.resolve("kb.faiss").toFile().exists());
+        Assertions.assertFalse(indexDir.resolve("kb.wal").toFile().exists());
+    }
+
+    @Test
+    public void testCollectionsLoadOnFirstUseAndColdOnesAreEvicted() {
+        Random random = new Random(10);
+        FaissVectorStore store = newStore();
+        Map<String, float[]> targets = new HashMap<>();
+        for (String collection : List.of("a", "b", "c")) {
+            for (long i = 0; i < 200; i++) {
+                float[] v = randomVector(random, 16);
+                store.upsert(collection, i, v, meta(i, collection + "-" + i));
+                if (i == 42) {
+                    targets.put(collection, v);
+                }
+            }
+        }
+        store.shutdown();
+
+        FaissVectorStore lazy = newStore();
+        lazy.load();
+        Assertions.assertEquals(0, lazy.memoryStats().get("loadedCollections"));
+        Assertions.assertEquals(3, lazy.memoryStats().get("unloadedCollections"));
+        Assertions.assertEquals("a-42", lazy.search("a", targets.get("a"), 1).get(0).getMetadata().get("docName"));
+        long oneCollection = (Long) lazy.memoryStats().get("residentBytes");
+        ReflectionTestUtils.setField(lazy, "memoryBudgetBytes", oneCollection * 3 / 2);
+
+        Assertions.assertEquals("b-42", lazy.search("b", targets.get("b"), 1).get(0).getMetadata().get("docName"));
+        Assertions.assertEquals(42L, lazy.search("b", targets.get("b"), 1).get(0).getChunkId());
+        Assertions.assertEquals(1, lazy.memoryStats().get("loadedCollections"));
+
+        // Writing to an evicted collection reads it back first, so nothing is lost
+        float[] added = randomVector(random, 16);
+        lazy.upsert("a", 500L, added, meta(500, "a-500"));
+        Assertions.assertEquals(201, lazy.search("a", added, 300).size());
+        // Evicting the written collection checkpoints it
+        Assertions.assertEquals(42L, lazy.search("c", targets.get("c"), 1).get(0).getChunkId());
+
+        Map<String, Object> stats = lazy.memoryStats();
+        Assertions.assertEquals(1, stats.get("loadedCollections"));
+        Assertions.assertEquals(4L, stats.get("misses"));
+        Assertions.assertEquals(3L, stats.get("evictions"));
+        Assertions.assertTrue((Long) stats.get("hits") >= 2);
+        Assertions.assertTrue((Long) stats.get("residentBytes") <= oneCollection * 3 / 2);
+
+        FaissVectorStore reopened = newStore();
+        reopened.load();
+        Assertions.assertEquals(500L, reopened.search("a", added, 1).get(0).getChunkId());
+        Assertions.assertEquals(201, reopened.search("a", added, 300).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSearchesSeeWholeReplacementsOnly() throws Exception {
+        Random random = new Random(16);
+        FaissVectorStore store = newStore();
+        float[][] vectors = new float[300][];
+        List<VectorStore.Entry> first = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomVector(random, 16);
+            first.add(new VectorStore.Entry((long) i, vectors[i], meta(1, "v0")));
+        }
+        store.replace("kb", List.of(), first);
+        FlatIndex.Snapshot before = ((Map<String, FlatIndex>) ReflectionTestUtils.getField(store, "indexes"))
+                .get("kb").snapshot();
+
+        // Re-index the same document over and over while another thread searches
+        int versions = 40;
+        Thread writer = new Thread(() -> {
+            for (int v = 1; v <= versions; v++) {
+                List<Long> old = new ArrayList<>();
+                List<VectorStore.Entry> entries = new ArrayList<>();
+                for (int i = 0; i < vectors.length; i++) {
+                    old.add((long) (v - 1) * vectors.length + i);
+                    entries.add(new VectorStore.Entry((long) v * vectors.length + i, vectors[i], meta(1, "v" + v)));
+                }
+                store.replace("kb", old, entries);
+            }
+        });
+        writer.start();
+        int searches = 0;
+        while (writer.isAlive() || searches == 0) {
+            List<SearchResult> results = store.search("kb", vectors[searches % vectors.length], 20);
+            Assertions.assertEquals(20, results.size());
+            Object version = results.get(0).getMetadata().get("docName");
+            Assertions.assertTrue(results.stream().allMatch(r -> version.equals(r.getMetadata().get("docName"))));
+            searches++;
+        }
+        writer.join();
+
+        Assertions.assertEquals("v" + versions, store.search("kb", vectors[0], 1).get(0).getMetadata().get("docName"));
+        Assertions.assertEquals(vectors.length, store.search("kb", vectors[0], 1000).size());
+        // An old snapshot still answers from the rows it was taken on
+        Assertions.assertEquals(vectors.length, before.liveCount());
+        Assertions.assertEquals(7L, before.id(7));
+        Assertions.assertTrue(before.isLive(7));
+        Assertions.assertEquals("v0", before.metadata(7).get("docName"));
+    }
+
+    @Test
+    public void testFilteredSearchesSeeWholeReplacementsOnly() throws Exception {
+        Random random = new Random(17);
+        FaissVectorStore store = newStore();
+        float[][] vectors = new float[300][];
+        List<VectorStore.Entry> first = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomVector(random, 16);
+            first.add(new VectorStore.Entry((long) i, vectors[i], meta(1, "v0")));
+        }
+        store.replace("kb", List.of(), first);
+        MetadataFilter filter = MetadataFilter.eq("docId", 1L);
+        // Builds the posting lists, so the replacements below update them
+        Assertions.assertEquals(20, store.search("kb", vectors[0], 20, filter).size());
+
+        int versions = 40;
+        Thread writer = new Thread(() -> {
+            for (int v = 1; v <= versions; v++) {
+                List<Long> old = new ArrayList<>();
+                List<VectorStore.Entry> entries = new ArrayList<>();
+                for (int i = 0; i < vectors.length; i++) {
+                    old.add((long) (v - 1) * vectors.length + i);
+                    entries.add(new VectorStore.Entry((long) v * vectors.length + i, vectors[i], meta(1, "v" + v)));
+                }
+                store.replace("kb", old, entries);
+            }
+        });
+        writer.start();
+        int searches = 0;
+        while (writer.isAlive() || searches == 0) {
+            List<SearchResult> results = store.search("kb", vectors[searches % vectors.length], 20, filter);
+            Assertions.assertEquals(20, results.size(), "a filtered search must see the old or the new chunks");
+            Object version = results.get(0).getMetadata().get("docName");
+            Assertions.assertTrue(results.stream().allMatch(r -> version.equals(r.getMetadata().get("docName"))));
+            searches++;
+        }
+        writer.join();
+
+        Assertions.assertEquals(vectors.length, store.search("kb", vectors[0], 1000, filter).size());
+        Assertions.assertEquals("v" + versions,
+                store.search("kb", vectors[0], 1, filter).get(0).getMetadata().get("docName"));
+    }
+
+    @Test
+    public void testFilteredSearchOnlyReturnsMatchingChunks() {
+        Random random = new Random(12);
+        FaissVectorStore store = newStore();
+        List<float[]> vectors = new ArrayList<>();
+        for (long i = 0; i < 400; i++) {
+            float[] v = randomVector(random, 16);
+            vectors.add(v);
+            store.upsert("kb", i, v, meta(i % 10, "doc-" + (i % 10)));
+        }
+        MetadataFilter filter = MetadataFilter.or(MetadataFilter.in("docId", List.of(2, 5)),
+                MetadataFilter.eq("docName", "doc-7"));
+        // Built lazily; later writes must keep the posting lists current
+        Assertions.assertEquals(5, store.search("kb", vectors.get(2), 5, filter).size());
+        store.upsert("kb", 2L, vectors.get(2), meta(3, "doc-3"));
+        store.delete("kb", List.of(5L));
+
+        for (int q = 0; q < 10; q++) {
+            float[] query = randomVector(random, 16);
+            List<SearchResult> filtered = store.search("kb", query, 8, filter);
+            List<Long> expected = store.search("kb", query, 400).stream()
+                    .filter(r -> filter.matches(r.getMetadata()))
+                    .limit(8)
+                    .map(SearchResult::getChunkId)
+                    .toList();
+            Assertions.assertEquals(expected, filtered.stream().map(SearchResult::getChunkId).toList());
+            Assertions.assertTrue(filtered.stream().noneMatch(r -> r.getChunkId() == 2L || r.getChunkId() == 5L));
+        }
+        Assertions.assertTrue(store.search("kb", vectors.get(0), 5, MetadataFilter.eq("docId", 42)).isEmpty());
+    }
+
+    @Test
+    public void testSearchBatchMatchesSingleQueries() {
+        Random random = new Random(14);
+        FaissVectorStore store = newStore();
+        ReflectionTestUtils.setField(store, "walEnabled", false);
+        ReflectionTestUtils.setField(store, "searchWorkers", 3);
+        ReflectionTestUtils.setField(store, "searchSegmentRows", 300);
+        for (long i = 0; i < 1000; i++) {
+            store.upsert("kb", i, randomVector(random, 20), meta(i, "doc-" + i));
+        }
+        store.save();
+        store.delete("kb", List.of(1L, 2L, 3L));
+        FaissVectorStore reloaded = newStore(); // mapped segments
+        ReflectionTestUtils.setField(reloaded, "walEnabled", false);
+        reloaded.load();
+
+        List<float[]> queries = new ArrayList<>();
+        for (int q = 0; q < 21; q++) {
+            queries.add(randomVector(random, 20));
+        }
+        queries.add(new float[7]);
+        for (FaissVectorStore s : List.of(store, reloaded)) {
+            List<List<SearchResult>> batch = s.searchBatch("kb", queries, 6);
+            Assertions.assertEquals(queries.size(), batch.size());
+            for (int q = 0; q < queries.size(); q++) {
+                Assertions.assertEquals(
+                        s.search("kb", queries.get(q), 6).stream().map(SearchResult::getChunkId).toList(),
+                        batch.get(q).stream().map(SearchResult::getChunkId).toList());
+            }
+            Assertions.assertTrue(batch.get(queries.size() - 1).isEmpty());
+        }
+        store.shutdown();
+    }
+
+    @Test
+    public void testParallelScanMatchesSingleThreadedScan() {
+        Random random = new Random(6);
+        FaissVectorStore serial = newStore();
+        FaissVectorStore parallel = newStore();
+        ReflectionTestUtils.setField(serial, "walEnabled", false);
+        ReflectionTestUtils.setField(parallel, "walEnabled", false);
+        ReflectionTestUtils.setField(serial, "searchSegmentRows", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(parallel, "searchWorkers", 4);
+        ReflectionTestUtils.setField(parallel, "searchSegmentRows", 64);
+        for (long i = 0; i < 2000; i++) {
+            float[] v = randomVector(random, 20);
+            serial.upsert("kb", i, v, meta(i, "doc-" + i));
+            parallel.upsert("kb", i, v, meta(i, "doc-" + i));
+        }
+        for (int q = 0; q < 20; q++) {
+            float[] query = randomVector(random, 20);
+            List<Long> expected = serial.search("kb", query, 8).stream().map(SearchResult::getChunkId).toList();
+            List<Long> actual = parallel.search("kb", query, 8).stream().map(SearchResult::getChunkId).toList();
+            Assertions.assertEquals(expected, actual);
+        }
+        parallel.shutdown();
+    }
+
+    @Test
+    public void testInt8RecallAgainstExactSearch() {
+        Random random = new Random(5);
+        int dim = 48;
+        FaissVectorStore exact = newStore();
+        FaissVectorStore int8 = newStore(new MockEnvironment().withProperty("vectorstore.quantization", "int8"));
+        ReflectionTestUtils.setField(exact, "walEnabled", false);
+        ReflectionTestUtils.setField(int8, "walEnabled", false);
+        for (long i = 0; i < 3000; i++) {
+            float[] v = randomVector(random, dim);
+            exact.upsert("exact", i, v, meta(i, "doc-" + i));
+            int8.upsert("kb", i, v, meta(i, "doc-" + i));
+        }
+        int8.shutdown(); // writes kb.sq8 and maps the float rows
+
+        FaissVectorStore reloaded = newStore(new MockEnvironment().withProperty("vectorstore.quantization", "int8"));
+        reloaded.load();
+        int hits = 0;
+        int queries = 50;
+        int k = 10;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, dim);
+            List<SearchResult> expected = exact.search("exact", query, k);
+            List<SearchResult> actual = reloaded.search("kb", query, k);
+            for (SearchResult r : expected) {
+                if (actual.stream().anyMatch(a -> a.getChunkId().equals(r.getChunkId()))) {
+                    hits++;
+                }
+            }
+        }
+        double recall = hits / (double) (queries * k);
+        Assertions.assertTrue(recall > 0.95, "int8 recall@10 with rescoring was " + recall);
+        Assertions.assertTrue(indexDir.resolve("kb.sq8").toFile().exists());
+    }
+
+    @Test
+    public void testCheckpointMapsTailRowsOfQuantizedCollections() {
+        Random random = new Random(15);
+        int dim = 64;
+        FaissVectorStore plain = newStore();
+        FaissVectorStore int8 = newStore(new MockEnvironment()
+                .withProperty("vectorstore.collections.kb.quantization", "int8"));
+        ReflectionTestUtils.setField(plain, "walEnabled", false);
+        ReflectionTestUtils.setField(int8, "walEnabled", false);
+        List<float[]> vectors = new ArrayList<>();
+        for (long i = 0; i < 5000; i++) {
+            float[] v = randomVector(random, dim);
+            vectors.add(v);
+            plain.upsert("plain", i, v, meta(i, "doc-" + i));
+            int8.upsert("kb", i, v, meta(i, "doc-" + i));
+        }
+        long beforeCheckpoint = (Long) int8.memoryStats().get("residentBytes");
+        plain.save();
+        int8.save();
+        long withCodes = (Long) int8.memoryStats().get("residentBytes");
+        long withoutCodes = (Long) plain.memoryStats().get("residentBytes");
+        // All 5000 rows fit in the tail segment; they must leave the heap too, not only full segments
+        Assertions.assertTrue(withCodes < beforeCheckpoint - 5000L * dim * 3, withCodes + " vs " + beforeCheckpoint);
+        Assertions.assertTrue(withCodes < withoutCodes, withCodes + " vs " + withoutCodes);
+
+        // Appending after the checkpoint grows the mapped tail on the heap without copying it back
+        float[] added = randomVector(random, dim);
+        int8.upsert("kb", 5000L, added, meta(5000, "doc-5000"));
+        Assertions.assertEquals(5000L, int8.search("kb", added, 1).get(0).getChunkId());
+        Assertions.assertEquals(7L, int8.search("kb", vectors.get(7), 1).get(0).getChunkId());
+        Assertions.assertTrue((Long) int8.memoryStats().get("residentBytes") < withoutCodes);
+        int8.save();
+        Assertions.assertEquals(5001, int8.search("kb", added, 6000).size());
+    }
+
+    @Test
+    public void testBinaryPrefilterRecallAgainstExactSearch() {
+        Random random = new Random(6);
+        int dim = 128;
+        MockEnvironment binaryEnv = new MockEnvironment().withProperty("vectorstore.quantization", "binary");
+        FaissVectorStore exact = newStore();
+        FaissVectorStore binary = newStore(binaryEnv);
+        ReflectionTestUtils.setField(exact, "walEnabled", false);
+        ReflectionTestUtils.setField(binary, "walEnabled", false);
+        // Clustered like real embeddings; isotropic noise is the worst case for sign codes
+        float[][] topics = new float[20][];
+        for (int t = 0; t < topics.length; t++) {
+            topics[t] = randomVector(random, dim);
+        }
+        for (long i = 0; i < 3000; i++) {
+            float[] v = clustered(random, topics);
+            exact.upsert("exact", i, v, meta(i, "doc-" + i));
+            binary.upsert("kb", i, v, meta(i, "doc-" + i));
+        }
+        binary.delete("kb", List.of(0L));
+        long heapRows = (Long) binary.memoryStats().get("residentBytes");
+        binary.shutdown(); // maps the float rows; the sign codes are rebuilt on load
+
+        FaissVectorStore reloaded = newStore(binaryEnv);
+        reloaded.load();
+        int hits = 0;
+        int queries = 50;
+        int k = 10;
+        for (int q = 0; q < queries; q++) {
+            float[] query = clustered(random, topics);
+            List<SearchResult> expected = exact.search("exact", query, k + 1).stream()
+                    .filter(r -> r.getChunkId() != 0L)
+                    .limit(k)
+                    .toList();
+            List<SearchResult> actual = reloaded.search("kb", query, k);
+            for (SearchResult r : expected) {
+                if (actual.stream().anyMatch(a -> a.getChunkId().equals(r.getChunkId()))) {
+                    hits++;
+                }
+            }
+        }
+        double recall = hits / (double) (queries * k);
+        Assertions.assertTrue(recall > 0.95, "binary recall@10 with re-ranking was " + recall);
+        // Only the sign codes stay on the heap; the float rows, tail segment included, are mapped
+        long mapped = (Long) reloaded.memoryStats().get("residentBytes");
+        Assertions.assertTrue(mapped < heapRows - 3000L * dim * 3, mapped + " vs " + heapRows);
+    }
+
+    @Test
+    public void testFloat16StorageConvertsFloat32FilesAndHalvesThem() throws Exception {
+        Random random = new Random(8);
+        int dim = 96;
+        FaissVectorStore store = newStore();
+        List<float[]> vectors = new ArrayList<>();
+        for (long i = 0; i < 2000; i++) {
+            float[] v = randomVector(random, dim);
+            vectors.add(v);
+            store.upsert("kb", i, v, meta(i, "doc-" + i));
+        }
+        store.shutdown();
+        long float32Bytes = Files.size(indexDir.resolve("kb.faiss"));
+
+        // Switching the collection to float16 converts the float32 file when it is opened
+        MockEnvironment halfEnv = new MockEnvironment()
+                .withProperty("vectorstore.collections.kb.quantization", "float16");
+        FaissVectorStore half = newStore(halfEnv);
+        half.load();
+        FaissVectorStore exact = newStore();
+        exact.load();
+        float[] query = randomVector(random, dim);
+        List<Long> expected = exact.search("kb", query, 10).stream().map(SearchResult::getChunkId).toList();
+        List<SearchResult> actual = half.search("kb", query, 10);
+        // Near-ties may swap places at half precision, but the same chunks are found
+        Assertions.assertEquals(Set.copyOf(expected), actual.stream().map(SearchResult::getChunkId)
+                .collect(Collectors.toSet()));
+        Assertions.assertEquals(VectorMath.dot(VectorMath.normalize(query), 0,
+                VectorMath.normalize(vectors.get(actual.get(0).getChunkId().intValue())), 0, dim),
+                actual.get(0).getScore(), 1e-3);
+
+        half.upsert("kb", 2000L, vectors.get(5), meta(2000, "doc-2000"));
+        half.shutdown();
+        long float16Bytes = Files.size(indexDir.resolve("kb.faiss"));
+        Assertions.assertTrue(float16Bytes < float32Bytes * 0.6, float16Bytes + " vs " + float32Bytes);
+
+        FaissVectorStore reopened = newStore(halfEnv);
+        reopened.load();
+        List<SearchResult> twins = reopened.search("kb", vectors.get(5), 2);
+        Assertions.assertEquals(Set.of(5L, 2000L), Set.of(twins.get(0).getChunkId(), twins.get(1).getChunkId()));
+        Assertions.assertEquals(1.0, twins.get(0).getScore(), 1e-3);
+        Assertions.assertEquals(Set.copyOf(expected), reopened.search("kb", query, 10).stream()
+                .map(SearchResult::getChunkId).collect(Collectors.toSet()));
+        Assertions.assertTrue((Long) reopened.memoryStats().get("residentBytes") < 2001L * dim * 3);
+    }
+
+    private static float[] randomVectorAt(int index) {
+        Random random = new Random(2);
+        float[] v = null;
+        for (int i = 1; i <= index; i++) {
+            v = randomVector(random, 16);
+        }
+        return v;
+    }
+}
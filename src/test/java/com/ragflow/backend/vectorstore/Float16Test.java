@@ -0,0 +1,53 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class Float16Test {
+
+    @Test
+    public void testEveryHalfRoundTripsExactly() {
+        for (int h = 0; h < 1 << 16; h++) {
+            float f = Float16.toFloat((short) h);
+            if (Float.isNaN(f)) {
+                Assertions.assertTrue(Float.isNaN(Float16.toFloat(Float16.fromFloat(f))));
+                continue;
+            }
+            Assertions.assertEquals((short) h, Float16.fromFloat(f), "half 0x" + Integer.toHexString(h));
+        }
+    }
+
+    @Test
+    public void testKnownValuesAndSpecials() {
+        Assertions.assertEquals(1.0f, Float16.toFloat((short) 0x3C00));
+        Assertions.assertEquals(-2.0f, Float16.toFloat((short) 0xC000));
+        Assertions.assertEquals(65504f, Float16.toFloat((short) 0x7BFF));
+        Assertions.assertEquals(0x1p-24f, Float16.toFloat((short) 0x0001));
+        Assertions.assertEquals((short) 0x7C00, Float16.fromFloat(1e6f));
+        Assertions.assertEquals((short) 0xFC00, Float16.fromFloat(Float.NEGATIVE_INFINITY));
+        Assertions.assertEquals((short) 0x8000, Float16.fromFloat(-1e-10f));
+        Assertions.assertTrue(Float.isNaN(Float16.toFloat(Float16.fromFloat(Float.NaN))));
+        // Ties go to the even neighbour: 1 + 2^-11 lies halfway between 1 and 1 + 2^-10
+        Assertions.assertEquals((short) 0x3C00, Float16.fromFloat(1f + 0x1p-11f));
+        Assertions.assertEquals((short) 0x3C02, Float16.fromFloat(1f + 3 * 0x1p-11f));
+        // Halfway between the two smallest subnormals rounds to even as well
+        Assertions.assertEquals((short) 0x0002, Float16.fromFloat(3 * 0x1p-25f));
+    }
+
+    @Test
+    public void testRoundsToNearest() {
+        Random random = new Random(4);
+        for (int i = 0; i < 100_000; i++) {
+            float f = (float) random.nextGaussian() * (random.nextBoolean() ? 1e-3f : 1f);
+            short h = Float16.fromFloat(f);
+            float back = Float16.toFloat(h);
+            // Neither neighbour of the chosen half is closer to the input
+            float below = Float16.toFloat((short) (h - 1));
+            float above = Float16.toFloat((short) (h + 1));
+            Assertions.assertTrue(Float.isNaN(below) || Math.abs(back - f) <= Math.abs(below - f), f + " -> " + back);
+            Assertions.assertTrue(Float.isNaN(above) || Math.abs(back - f) <= Math.abs(above - f), f + " -> " + back);
+        }
+    }
+}
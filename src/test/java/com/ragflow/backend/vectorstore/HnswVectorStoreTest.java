@@ -0,0 +1,233 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class HnswVectorStoreTest {
+
+    @TempDir
+    Path indexDir;
+
+    private HnswVectorStore newStore() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("vectorstore.hnsw.m", "12")
+                .withProperty("vectorstore.hnsw.ef-search", "64");
+        HnswVectorStore store = new HnswVectorStore(new VectorStoreSettings(env));
+        ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        return store;
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    private static Map<String, Object> meta(long id) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("chunkId", id);
+        m.put("docName", "doc-" + id);
+        return m;
+    }
+
+    @Test
+    public void testRecallAgainstBruteForce() {
+        int dim = 32;
+        int n = 3000;
+        Random random = new Random(7);
+        HnswVectorStore store = newStore();
+        float[][] data = new float[n][];
+        for (int i = 0; i < n; i++) {
+            data[i] = randomVector(random, dim);
+            store.upsert("kb", (long) i, data[i], meta(i));
+        }
+
+        int queries = 50;
+        int k = 10;
+        int hits = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, dim);
+            float[] nq = VectorMath.normalize(query);
+            Set<Long> exact = new HashSet<>();
+            Integer[] order = new Integer[n];
+            float[] scores = new float[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+                scores[i] = VectorMath.dot(nq, 0, VectorMath.normalize(data[i]), 0, dim);
+            }
+            java.util.Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+            for (int i = 0; i < k; i++) {
+                exact.add((long) order[i]);
+            }
+            for (SearchResult r : store.search("kb", query, k)) {
+                if (exact.contains(r.getChunkId())) {
+                    hits++;
+                }
+            }
+        }
+        double recall = hits / (double) (queries * k);
+        Assertions.assertTrue(recall > 0.9, "recall too low: " + recall);
+    }
+
+    @Test
+    public void testUpsertReplacesAndSurvivesReload() {
+        Random random = new Random(3);
+        HnswVectorStore store = newStore();
+        for (long i = 0; i < 200; i++) {
+            store.upsert("kb", i, randomVector(random, 16), meta(i));
+        }
+        float[] target = randomVector(random, 16);
+        store.upsert("kb", 42L, target, meta(42));
+
+        List<SearchResult> results = store.search("kb", target, 5);
+        Assertions.assertEquals(42L, results.get(0).getChunkId());
+        Assertions.assertEquals(1.0, results.get(0).getScore(), 1e-4);
+        Assertions.assertEquals(1, results.stream().filter(r -> r.getChunkId() == 42L).count());
+
+        store.save();
+        HnswVectorStore reloaded = newStore();
+        reloaded.load();
+        List<Long> ids = reloaded.search("kb", target, 5).stream().map(SearchResult::getChunkId)
+                .collect(Collectors.toList());
+        Assertions.assertEquals(results.stream().map(SearchResult::getChunkId).collect(Collectors.toList()), ids);
+        Assertions.assertEquals("doc-42", reloaded.search("kb", target, 1).get(0).getMetadata().get("docName"));
+    }
+
+    @Test
+    public void testFilteredSearchOnSmallAndLargeMatchSets() {
+        int dim = 24;
+        int n = 3000;
+        Random random = new Random(13);
+        HnswVectorStore store = newStore();
+        float[][] data = new float[n][];
+        for (int i = 0; i < n; i++) {
+            data[i] = randomVector(random, dim);
+            Map<String, Object> m = meta(i);
+            m.put("docId", (long) (i % 100));
+            m.put("shard", i % 3);
+            store.upsert("kb", (long) i, data[i], m);
+        }
+        // 30 matches are scored exhaustively, 2000 go through the graph
+        MetadataFilter small = MetadataFilter.in("docId", List.of(17L));
+        MetadataFilter large = MetadataFilter.in("shard", List.of(0, 1));
+        int k = 10;
+        for (MetadataFilter filter : List.of(small, large)) {
+            int hits = 0;
+            for (int q = 0; q < 20; q++) {
+                float[] query = randomVector(random, dim);
+                float[] nq = VectorMath.normalize(query);
+                Set<Long> exact = java.util.stream.IntStream.range(0, n)
+                        .filter(i -> filter == small ? i % 100 == 17 : i % 3 != 2)
+                        .boxed()
+                        .sorted((a, b) -> Float.compare(VectorMath.dot(nq, 0, VectorMath.normalize(data[b]), 0, dim),
+                                VectorMath.dot(nq, 0, VectorMath.normalize(data[a]), 0, dim)))
+                        .limit(k)
+                        .map(Integer::longValue)
+                        .collect(Collectors.toSet());
+                List<SearchResult> results = store.search("kb", query, k, filter);
+                Assertions.assertTrue(results.stream().allMatch(r -> filter.matches(r.getMetadata())));
+                hits += (int) results.stream().filter(r -> exact.contains(r.getChunkId())).count();
+            }
+            double recall = hits / (double) (20 * k);
+            Assertions.assertTrue(recall > (filter == small ? 0.999 : 0.9), filter + " recall " + recall);
+        }
+    }
+
+    @Test
+    public void testVectorsSpanManyBlocks() throws Exception {
+        Random random = new Random(21);
+        int dim = 16;
+        // Eight nodes per block, so every search and link crosses block boundaries
+        HnswIndex index = new HnswIndex(dim, 8, 64, 3);
+        float[][] data = new float[500][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = randomVector(random, dim);
+            index.insert(i, data[i], meta(i));
+        }
+        for (int i = 0; i < data.length; i += 37) {
+            List<SearchResult> results = index.search(VectorMath.normalize(data[i]), 1, 64, null);
+            Assertions.assertEquals((long) i, results.get(0).getChunkId());
+            Assertions.assertEquals(1.0, results.get(0).getScore(), 1e-4);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        HnswIndex read = HnswIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(499L, read.search(VectorMath.normalize(data[499]), 1, 64, null).get(0).getChunkId());
+    }
+
+    @Test
+    public void testReindexingRebuildsTombstonedGraphOnSave() throws Exception {
+        Random random = new Random(22);
+        int dim = 16;
+        HnswVectorStore store = newStore();
+        float[][] data = new float[300][];
+        for (int round = 0; round < 5; round++) {
+            // Like DocService.replace: every chunk of the document is written again
+            for (int i = 0; i < data.length; i++) {
+                data[i] = randomVector(random, dim);
+                store.upsert("kb", (long) i, data[i], meta(i));
+            }
+            store.save();
+        }
+        long fileBytes = Files.size(indexDir.resolve("kb.hnsw"));
+        long memoryBytes = store.memoryBytes("kb");
+
+        HnswVectorStore fresh = newStore();
+        ReflectionTestUtils.setField(fresh, "indexDir", indexDir.resolve("fresh").toString());
+        for (int i = 0; i < data.length; i++) {
+            fresh.upsert("kb", (long) i, data[i], meta(i));
+        }
+        fresh.save();
+        long freshBytes = Files.size(indexDir.resolve("fresh").resolve("kb.hnsw"));
+        Assertions.assertTrue(fileBytes < freshBytes * 1.3, fileBytes + " vs " + freshBytes);
+        long freshMemory = fresh.memoryBytes("kb");
+        Assertions.assertTrue(memoryBytes < freshMemory * 1.5, memoryBytes + " vs " + freshMemory);
+
+        for (int i = 0; i < data.length; i += 29) {
+            Assertions.assertEquals((long) i, store.search("kb", data[i], 1).get(0).getChunkId());
+        }
+        Assertions.assertEquals(10, store.search("kb", data[0], 10).size());
+    }
+
+    @Test
+    public void testSaveWritesOnlyChangedCollections() throws Exception {
+        Random random = new Random(23);
+        HnswVectorStore store = newStore();
+        for (long i = 0; i < 50; i++) {
+            store.upsert("a", i, randomVector(random, 8), meta(i));
+            store.upsert("b", i, randomVector(random, 8), meta(i));
+        }
+        store.save();
+        Files.delete(indexDir.resolve("a.hnsw"));
+        Files.delete(indexDir.resolve("b.hnsw"));
+
+        store.upsert("a", 50L, randomVector(random, 8), meta(50));
+        store.save();
+        Assertions.assertTrue(Files.exists(indexDir.resolve("a.hnsw")));
+        Assertions.assertFalse(Files.exists(indexDir.resolve("b.hnsw")), "b was not changed");
+
+        store.delete("b", List.of(3L));
+        store.save();
+        Assertions.assertTrue(Files.exists(indexDir.resolve("b.hnsw")));
+    }
+}
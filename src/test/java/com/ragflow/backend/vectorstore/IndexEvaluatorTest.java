@@ -0,0 +1,149 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class IndexEvaluatorTest {
+
+    @TempDir
+    Path indexDir;
+
+    private FaissVectorStore populatedStore(MockEnvironment env, int n, int dim) {
+        FaissVectorStore store = new FaissVectorStore(new VectorStoreSettings(env));
+        ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(store, "walEnabled", false);
+        Random random = new Random(3);
+        float[][] centers = new float[30][dim];
+        for (float[] c : centers) {
+            for (int i = 0; i < dim; i++) {
+                c[i] = (float) random.nextGaussian();
+            }
+        }
+        for (long id = 0; id < n; id++) {
+            float[] c = centers[random.nextInt(centers.length)];
+            float[] v = new float[dim];
+            for (int i = 0; i < dim; i++) {
+                v[i] = c[i] + 0.4f * (float) random.nextGaussian();
+            }
+            store.upsert("kb", id, v, Map.of("docId", id / 10));
+        }
+        return store;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReportsRecallAndLatencyPerMode() throws Exception {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("vectorstore.ivf-pq.nlist", "16")
+                .withProperty("vectorstore.ivf-pq.m", "8");
+        FaissVectorStore store = populatedStore(env, 3000, 32);
+        IndexEvaluator evaluator = new IndexEvaluator(store, env);
+
+        Map<String, Object> report = evaluator.evaluate("kb", 50, 10, null, null,
+                Map.of("hnsw.ef-search", "100"));
+        Assertions.assertEquals(2950, report.get("vectors"));
+        Assertions.assertEquals(50, report.get("queries"));
+
+        List<Map<String, Object>> modes = (List<Map<String, Object>>) report.get("modes");
+        Assertions.assertEquals(IndexEvaluator.MODES, modes.stream().map(m -> m.get("mode")).toList());
+        for (Map<String, Object> mode : modes) {
+            Assertions.assertNull(mode.get("error"), mode.toString());
+            Assertions.assertTrue((Long) mode.get("memoryBytes") > 0, mode.toString());
+            Map<String, Object> latency = (Map<String, Object>) mode.get("latencyMs");
+            Assertions.assertTrue((Double) latency.get("p50") <= (Double) latency.get("p99"), mode.toString());
+        }
+        Map<Object, Map<String, Object>> byMode = new HashMap<>();
+        modes.forEach(m -> byMode.put(m.get("mode"), m));
+        Assertions.assertEquals(1.0, byMode.get("flat").get("recall"));
+        Assertions.assertTrue((Double) byMode.get("float16").get("recall") > 0.95, "float16 " + byMode.get("float16"));
+        Assertions.assertTrue((Double) byMode.get("hnsw").get("recall") > 0.9, "hnsw " + byMode.get("hnsw"));
+        Assertions.assertTrue((Double) byMode.get("ivf-pq").get("recall") > 0.3, "ivf-pq " + byMode.get("ivf-pq"));
+        Assertions.assertTrue((Long) byMode.get("binary").get("codeBytes") * 8
+                < (Long) byMode.get("flat").get("memoryBytes"));
+        Assertions.assertTrue((Long) byMode.get("float16").get("memoryBytes")
+                < (Long) byMode.get("flat").get("memoryBytes"));
+
+        // The store being measured is left untouched
+        Assertions.assertEquals(List.of("kb"), List.copyOf(store.collections()));
+        try (var files = Files.list(indexDir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testQueryFileAndValidation() throws Exception {
+        MockEnvironment env = new MockEnvironment().withProperty("storage.index-dir", indexDir.toString());
+        FaissVectorStore store = populatedStore(env, 500, 4);
+        IndexEvaluator evaluator = new IndexEvaluator(store, env);
+
+        Path queryDir = Files.createDirectories(indexDir.resolve("eval-queries"));
+        Path queries = queryDir.resolve("queries.txt");
+        Files.writeString(queries, "[0.1, 0.2, 0.3, 0.4]\n\n1 0 0 0\n0,1,0,0\n");
+        Map<String, Object> report = evaluator.evaluate("kb", 0, 5, "queries.txt", List.of("binary"), null);
+        Assertions.assertEquals(500, report.get("vectors"));
+        Assertions.assertEquals(3, report.get("queries"));
+        List<Map<String, Object>> modes = (List<Map<String, Object>>) report.get("modes");
+        Assertions.assertEquals(List.of("flat", "binary"), modes.stream().map(m -> m.get("mode")).toList());
+
+        Files.writeString(queries, "1 0 0\n");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("kb", 0, 5, "queries.txt", null, null));
+
+        // Only files inside the query directory are read, and their content is never echoed
+        Files.writeString(indexDir.resolve("secret.txt"), "root:x:0:0\n");
+        for (String name : List.of("../secret.txt", indexDir.resolve("secret.txt").toString(), "/etc/passwd", ".")) {
+            IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> evaluator.evaluate("kb", 0, 5, name, null, null), name);
+            Assertions.assertFalse(e.getMessage().contains("root"), e.getMessage());
+        }
+        Files.writeString(queries, "root:x:0:0 1 2 3\n");
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("kb", 0, 5, "queries.txt", null, null));
+        Assertions.assertFalse(e.getMessage().contains("root"), e.getMessage());
+        Files.writeString(queries, "[\"root\", 1, 2, 3]\n");
+        e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("kb", 0, 5, "queries.txt", null, null));
+        Assertions.assertFalse(e.getMessage().contains("root"), e.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("kb", 500, 5, null, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("kb", 10, 5, null, List.of("lsh"), null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("missing", 10, 5, null, null, null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLargeCollectionsAreSampled() throws Exception {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("vectorstore.evaluation.max-vectors", "400")
+                .withProperty("vectorstore.evaluation.max-queries", "50");
+        FaissVectorStore store = populatedStore(env, 1000, 8);
+        IndexEvaluator evaluator = new IndexEvaluator(store, env);
+
+        Map<String, Object> report = evaluator.evaluate("kb", 20, 5, null, List.of("binary"), null);
+        Assertions.assertEquals(400, report.get("vectors"));
+        Assertions.assertEquals(1000L, report.get("collectionVectors"));
+        Assertions.assertEquals(true, report.get("sampled"));
+        List<Map<String, Object>> modes = (List<Map<String, Object>>) report.get("modes");
+        Assertions.assertEquals(1.0, modes.get(0).get("recall"));
+        // The sample is seeded, so a second run evaluates the same rows
+        Map<String, Object> again = evaluator.evaluate("kb", 20, 5, null, List.of("binary"), null);
+        List<Map<String, Object>> againModes = (List<Map<String, Object>>) again.get("modes");
+        Assertions.assertEquals(modes.get(1).get("recall"), againModes.get(1).get("recall"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate("kb", 51, 5, null, null, null));
+    }
+}
@@ -0,0 +1,202 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class IvfPqVectorStoreTest {
+
+    @TempDir
+    Path indexDir;
+
+    private IvfPqVectorStore newStore() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("vectorstore.ivf-pq.nlist", "32")
+                .withProperty("vectorstore.ivf-pq.m", "8")
+                .withProperty("vectorstore.ivf-pq.nprobe", "8")
+                .withProperty("vectorstore.ivf-pq.train-rows", "2000");
+        IvfPqVectorStore store = new IvfPqVectorStore(new VectorStoreSettings(env));
+        ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        return store;
+    }
+
+    /** Points scattered around a few dozen random centers, closer to real embeddings than pure noise. */
+    private static float[][] clusteredData(Random random, int n, int dim) {
+        float[][] centers = new float[40][dim];
+        for (float[] c : centers) {
+            for (int i = 0; i < dim; i++) {
+                c[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] data = new float[n][dim];
+        for (float[] v : data) {
+            float[] c = centers[random.nextInt(centers.length)];
+            for (int i = 0; i < dim; i++) {
+                v[i] = c[i] + 0.4f * (float) random.nextGaussian();
+            }
+        }
+        return data;
+    }
+
+    private static Map<String, Object> meta(long id) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("docName", "doc-" + id);
+        return m;
+    }
+
+    @Test
+    public void testRecallAgainstBruteForce() {
+        int dim = 32;
+        int n = 4000;
+        Random random = new Random(9);
+        float[][] data = clusteredData(random, n + 50, dim);
+        IvfPqVectorStore store = newStore();
+        for (int i = 0; i < n; i++) {
+            store.upsert("kb", (long) i, data[i], meta(i));
+        }
+
+        int queries = 50;
+        int k = 10;
+        int hits = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] nq = VectorMath.normalize(data[n + q]);
+            Integer[] order = new Integer[n];
+            float[] scores = new float[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+                scores[i] = VectorMath.dot(nq, 0, VectorMath.normalize(data[i]), 0, dim);
+            }
+            java.util.Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+            Set<Long> exact = new HashSet<>();
+            for (int i = 0; i < k; i++) {
+                exact.add((long) order[i]);
+            }
+            for (SearchResult r : store.search("kb", data[n + q], k)) {
+                if (exact.contains(r.getChunkId())) {
+                    hits++;
+                }
+            }
+        }
+        double recall = hits / (double) (queries * k);
+        Assertions.assertTrue(recall > 0.5, "recall too low: " + recall);
+    }
+
+    @Test
+    public void testTrainUpsertAndReload() {
+        Random random = new Random(4);
+        float[][] data = clusteredData(random, 600, 16);
+        IvfPqVectorStore store = newStore();
+        for (int i = 0; i < 500; i++) {
+            store.upsert("kb", (long) i, data[i], meta(i));
+        }
+        // Below train-rows: served exactly from the buffer, and persisted as such
+        Assertions.assertEquals(1.0, store.search("kb", data[10], 1).get(0).getScore(), 1e-5);
+        store.save();
+        IvfPqVectorStore buffered = newStore();
+        buffered.load();
+        Assertions.assertEquals(10L, buffered.search("kb", data[10], 1).get(0).getChunkId());
+
+        buffered.train("kb");
+        buffered.upsert("kb", 10L, data[550], meta(550));
+        List<SearchResult> results = buffered.search("kb", data[550], 5);
+        Assertions.assertEquals(1, results.stream().filter(r -> r.getChunkId() == 10L).count());
+        Assertions.assertTrue(results.stream().anyMatch(r -> "doc-550".equals(r.getMetadata().get("docName"))));
+
+        buffered.save();
+        Assertions.assertFalse(indexDir.resolve("kb.ivfraw").toFile().exists());
+        IvfPqVectorStore reloaded = newStore();
+        reloaded.load();
+        Assertions.assertEquals(results.stream().map(SearchResult::getChunkId).toList(),
+                reloaded.search("kb", data[550], 5).stream().map(SearchResult::getChunkId).toList());
+    }
+
+    @Test
+    public void testTrainsInTheBackgroundAndReplaysWritesMadeMeanwhile() throws Exception {
+        Random random = new Random(13);
+        float[][] data = clusteredData(random, 50_000, 16);
+        IvfPqVectorStore store = newStore();
+        Map<?, ?> indexes = (Map<?, ?>) ReflectionTestUtils.getField(store, "indexes");
+        // Holding the training lock keeps the scheduled training from starting
+        synchronized (ReflectionTestUtils.getField(store, "trainLock")) {
+            for (int i = 0; i < 2000; i++) {
+                store.upsert("kb", (long) i, data[i], meta(i));
+            }
+            Assertions.assertNull(indexes.get("kb"), "the upsert reaching train-rows must not train inline");
+            Assertions.assertEquals(1.0, store.search("kb", data[42], 1).get(0).getScore(), 1e-5);
+        }
+
+        // Keep writing while the index trains; whatever lands after its snapshot is replayed
+        Set<Long> deleted = new HashSet<>();
+        int next = 2000;
+        while (indexes.get("kb") == null && next < data.length) {
+            store.upsert("kb", (long) next, data[next], meta(next));
+            if (next % 10 == 0) {
+                long victim = next - 1500;
+                store.delete("kb", List.of(victim));
+                deleted.add(victim);
+            }
+            next++;
+        }
+        store.awaitTraining("kb");
+        Assertions.assertNotNull(indexes.get("kb"));
+        IvfPqIndex index = (IvfPqIndex) indexes.get("kb");
+        Assertions.assertEquals(next - deleted.size(), index.liveCount());
+        for (int i = 0; i < next; i += 7) {
+            long id = i;
+            List<SearchResult> results = store.search("kb", data[i], 10);
+            Assertions.assertEquals(!deleted.contains(id), results.stream().anyMatch(r -> r.getChunkId() == id),
+                    "chunk " + id);
+        }
+    }
+
+    @Test
+    public void testMetadataIsServedFromTheMappedFileAfterSave() throws Exception {
+        Random random = new Random(11);
+        float[][] data = clusteredData(random, 2100, 16);
+        IvfPqVectorStore store = newStore();
+        for (int i = 0; i < 2000; i++) {
+            store.upsert("kb", (long) i, data[i], meta(i));
+        }
+        store.awaitTraining("kb");
+        Map<?, ?> indexes = (Map<?, ?>) ReflectionTestUtils.getField(store, "indexes");
+        IvfPqIndex index = (IvfPqIndex) indexes.get("kb");
+        Assertions.assertNotNull(index, "trained at train-rows");
+        Object[] heap = (Object[]) ReflectionTestUtils.getField(index, "metadata");
+        Assertions.assertEquals(2000, Arrays.stream(heap).filter(Objects::nonNull).count());
+
+        store.save();
+        heap = (Object[]) ReflectionTestUtils.getField(index, "metadata");
+        Assertions.assertEquals(0, Arrays.stream(heap).filter(Objects::nonNull).count(),
+                "written entries must not keep their maps on the heap");
+        Assertions.assertEquals("doc-7", store.search("kb", data[7], 1).get(0).getMetadata().get("docName"));
+
+        // Mixed heap and mapped metadata survive another save and a reload
+        store.upsert("kb", 2000L, data[2000], meta(2000));
+        store.upsert("kb", 7L, data[2001], meta(2001));
+        store.delete("kb", List.of(8L));
+        Assertions.assertEquals("doc-2001", store.search("kb", data[2001], 1).get(0).getMetadata().get("docName"));
+        store.save();
+        IvfPqVectorStore reloaded = newStore();
+        reloaded.load();
+        Assertions.assertEquals("doc-2000",
+                reloaded.search("kb", data[2000], 1).get(0).getMetadata().get("docName"));
+        SearchResult moved = reloaded.search("kb", data[2001], 1).get(0);
+        Assertions.assertEquals(7L, moved.getChunkId());
+        Assertions.assertEquals("doc-2001", moved.getMetadata().get("docName"));
+        Assertions.assertTrue(reloaded.search("kb", data[8], 20).stream().noneMatch(r -> r.getChunkId() == 8L));
+        Assertions.assertEquals(1, reloaded.search("kb", data[9], 1, MetadataFilter.in("docName", List.of("doc-9")))
+                .size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+public class OrdinalBitmapTest {
+
+    private static OrdinalBitmap fill(BitSet expected, Random random, int count, int bound) {
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        for (int i = 0; i < count; i++) {
+            int v = random.nextInt(bound);
+            bitmap.add(v);
+            expected.set(v);
+        }
+        return bitmap;
+    }
+
+    private static void assertSame(BitSet expected, OrdinalBitmap actual) {
+        List<Integer> values = new ArrayList<>();
+        actual.forEach(values::add);
+        Assertions.assertEquals(expected.stream().boxed().toList(), values);
+        Assertions.assertEquals(expected.cardinality(), actual.cardinality());
+    }
+
+    @Test
+    public void testSetOperationsAcrossContainerKinds() {
+        Random random = new Random(1);
+        // Sparse (array containers) and dense (bitmap containers) over several high halves
+        BitSet sparse = new BitSet();
+        BitSet dense = new BitSet();
+        OrdinalBitmap a = fill(sparse, random, 3000, 1 << 18);
+        OrdinalBitmap b = fill(dense, random, 120_000, 1 << 17);
+        assertSame(sparse, a);
+        assertSame(dense, b);
+
+        BitSet and = (BitSet) sparse.clone();
+        and.and(dense);
+        assertSame(and, OrdinalBitmap.and(a, b));
+        BitSet or = (BitSet) sparse.clone();
+        or.or(dense);
+        assertSame(or, OrdinalBitmap.or(a, b));
+
+        // Removing shrinks dense containers back to arrays without losing values
+        for (int v = dense.nextSetBit(0); v >= 0; v = dense.nextSetBit(v + 1)) {
+            if (v % 7 != 0) {
+                b.remove(v);
+                dense.clear(v);
+            }
+        }
+        assertSame(dense, b);
+        Assertions.assertTrue(b.contains(dense.nextSetBit(0)));
+        Assertions.assertFalse(b.contains(dense.nextSetBit(0) + 1));
+    }
+}
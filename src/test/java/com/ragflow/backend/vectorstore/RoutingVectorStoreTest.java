@@ -0,0 +1,73 @@
+package com.ragflow.backend.vectorstore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RoutingVectorStoreTest {
+
+    @TempDir
+    Path indexDir;
+
+    private RoutingVectorStore newStore() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("vectorstore.collections.manuals.type", "hnsw");
+        VectorStoreSettings settings = new VectorStoreSettings(env);
+        FaissVectorStore flat = new FaissVectorStore(settings);
+        HnswVectorStore hnsw = new HnswVectorStore(settings);
+        IvfPqVectorStore ivfPq = new IvfPqVectorStore(settings);
+        for (VectorStore store : List.of(flat, hnsw, ivfPq)) {
+            ReflectionTestUtils.setField(store, "indexDir", indexDir.toString());
+        }
+        ReflectionTestUtils.setField(flat, "walEnabled", false);
+        RoutingVectorStore store = new RoutingVectorStore(flat, hnsw, ivfPq, settings);
+        ReflectionTestUtils.setField(store, "collectionWorkers", 3);
+        return store;
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    @Test
+    public void testMultiCollectionSearchMatchesMergedPerCollectionResults() {
+        Random random = new Random(11);
+        RoutingVectorStore store = newStore();
+        List<String> collections = List.of("default", "manuals", "logs", "empty");
+        long id = 0;
+        for (String collection : collections.subList(0, 3)) {
+            for (int i = 0; i < 300; i++) {
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("docName", collection + "-" + id);
+                store.upsert(collection, id++, randomVector(random, 16), metadata);
+            }
+        }
+
+        for (int q = 0; q < 10; q++) {
+            float[] query = randomVector(random, 16);
+            List<SearchResult> expected = new ArrayList<>();
+            for (String collection : collections) {
+                expected.addAll(store.search(collection, query, 7));
+            }
+            expected.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+            List<Long> expectedIds = expected.subList(0, 7).stream().map(SearchResult::getChunkId).toList();
+            Assertions.assertEquals(expectedIds,
+                    store.search(collections, query, 7).stream().map(SearchResult::getChunkId).toList());
+        }
+        Assertions.assertTrue(store.search(List.of("empty", "missing"), randomVector(random, 16), 5).isEmpty());
+        store.shutdown();
+    }
+}